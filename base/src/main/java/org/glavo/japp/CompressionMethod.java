@@ -21,7 +21,13 @@ import java.nio.ByteBuffer;
 public enum CompressionMethod {
     NONE,
     CLASSFILE,
-    ZSTD;
+    ZSTD,
+
+    /**
+     * The resource is a part of a zstd frame shared with adjacent resources,
+     * see {@code JAppResourceField#BLOCK_SIZE} and {@code JAppResourceField#BLOCK_OFFSET}.
+     */
+    SOLID;
 
     private static final CompressionMethod[] METHODS = values();
 
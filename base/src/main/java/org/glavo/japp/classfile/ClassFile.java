@@ -42,6 +42,29 @@ public final class ClassFile {
     public static final byte CONSTANT_EXTERNAL_STRING_Descriptor = -3;
     public static final byte CONSTANT_EXTERNAL_STRING_Signature = -4;
 
+    /**
+     * Takes the place of the first tag in a compressed class file whose constant pool is stored in columns.
+     * No constant pool entry has this tag.
+     */
+    public static final byte CONSTANT_POOL_COLUMNS = 0;
+
+    /*
+     * Columns of the structural part of a compressed constant pool.
+     * References are stored as the zigzag encoded difference to the index of the entry.
+     * Numeric constants are stored in the pool, like strings.
+     */
+    public static final int COLUMN_TAG = 0;
+    public static final int COLUMN_REFERENCE = 1; // Class, String, MethodType, Module and Package
+    public static final int COLUMN_MEMBER_CLASS = 2;
+    public static final int COLUMN_MEMBER_NAME_AND_TYPE = 3;
+    public static final int COLUMN_NAME = 4;
+    public static final int COLUMN_DESCRIPTOR = 5;
+    public static final int COLUMN_BOOTSTRAP_METHOD = 6; // Not a constant pool reference, stored as is
+    public static final int COLUMN_DYNAMIC_NAME_AND_TYPE = 7;
+    public static final int COLUMN_REFERENCE_KIND = 8;
+    public static final int COLUMN_METHOD_HANDLE_REFERENCE = 9;
+    public static final int COLUMN_COUNT = 10;
+
     public static final byte[] CONSTANT_SIZE = new byte[32];
     static {
         CONSTANT_SIZE[CONSTANT_Integer] = 4;
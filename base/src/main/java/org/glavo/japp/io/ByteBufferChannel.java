@@ -61,7 +61,12 @@ public final class ByteBufferChannel implements SeekableByteChannel {
             return -1;
         }
 
-        int n = Math.min(dst.remaining(), remaining);
+        if (dst.remaining() >= remaining) {
+            dst.put(buffer);
+            return remaining;
+        }
+
+        int n = dst.remaining();
         int end = buffer.position() + n;
         dst.put(buffer.duplicate().limit(end));
         buffer.position(end);
@@ -16,8 +16,10 @@
 package org.glavo.japp.io;
 
 import java.io.EOFException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.InvalidMarkException;
 import java.util.Objects;
@@ -73,6 +75,47 @@ public final class ByteBufferInputStream extends InputStream {
         return res;
     }
 
+    // @Override
+    public byte[] readNBytes(int len) throws IOException {
+        if (len < 0) {
+            throw new IllegalArgumentException("len < 0");
+        }
+
+        byte[] res = new byte[Math.min(len, buffer.remaining())];
+        buffer.get(res);
+        return res;
+    }
+
+    /**
+     * Writes the remaining bytes without intermediate copies when the target allows it.
+     */
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        Objects.requireNonNull(out);
+
+        int remaining = buffer.remaining();
+        if (remaining == 0) {
+            return 0;
+        }
+
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), remaining);
+            buffer.position(buffer.limit());
+        } else if (out instanceof FileOutputStream) {
+            IOUtils.writeFully(((FileOutputStream) out).getChannel(), buffer);
+        } else if (out instanceof LittleEndianDataOutput) {
+            ((LittleEndianDataOutput) out).writeBytes(buffer);
+        } else {
+            byte[] chunk = new byte[Math.min(remaining, 64 * 1024)];
+            while (buffer.hasRemaining()) {
+                int n = Math.min(buffer.remaining(), chunk.length);
+                buffer.get(chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+        }
+        return remaining;
+    }
+
     @Override
     public long skip(long n) throws IOException {
         if (n <= 0) {
@@ -95,6 +95,12 @@ public final class ByteBufferOutputStream extends LittleEndianDataOutput {
         buffer.put(array, offset, len);
     }
 
+    @Override
+    public void writeBytes(ByteBuffer src) {
+        prepare(src.remaining());
+        buffer.put(src);
+    }
+
     public void writeTo(OutputStream out) throws IOException {
         out.write(buffer.array(), 0, buffer.position());
     }
@@ -18,6 +18,7 @@ package org.glavo.japp.io;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
@@ -72,6 +73,23 @@ public abstract class LittleEndianDataOutput extends OutputStream implements Clo
 
     public abstract void writeBytes(byte[] array, int offset, int len) throws IOException;
 
+    /**
+     * Writes all remaining bytes of the buffer.
+     */
+    public void writeBytes(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            writeBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+        } else {
+            byte[] chunk = new byte[Math.min(buffer.remaining(), 8192)];
+            while (buffer.hasRemaining()) {
+                int n = Math.min(buffer.remaining(), chunk.length);
+                buffer.get(chunk, 0, n);
+                writeBytes(chunk, 0, n);
+            }
+        }
+    }
+
     public void writeString(String str) throws IOException {
         if (str != null) {
             byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
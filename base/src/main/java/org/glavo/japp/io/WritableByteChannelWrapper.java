@@ -102,6 +102,25 @@ final class WritableByteChannelWrapper extends LittleEndianDataOutput {
         totalBytes += len;
     }
 
+    @Override
+    public void writeBytes(ByteBuffer src) throws IOException {
+        int len = src.remaining();
+        if (len == 0) {
+            return;
+        }
+
+        if (len < buffer.capacity()) {
+            if (len > buffer.remaining()) {
+                flushBuffer();
+            }
+            buffer.put(src);
+        } else {
+            flushBuffer();
+            IOUtils.writeFully(channel, src);
+        }
+        totalBytes += len;
+    }
+
     @Override
     public void close() throws IOException {
         try {
@@ -60,6 +60,41 @@ public final class CompressedNumber {
         return res | (bv << (7 * 4));
     }
 
+    /**
+     * Reads a number from memory without going through a buffer.
+     *
+     * @return the number in the low 32 bits and its encoded length in the high 32 bits,
+     * or {@code -1} if the number is malformed or exceeds the limit
+     */
+    public static long getIntAndLength(Object base, long address, long limit) {
+        int res = 0;
+        for (int i = 0; i < 4; i++) {
+            if (address + i >= limit) {
+                return -1;
+            }
+
+            int b = MemoryAccess.getUnsignedByte(base, address + i);
+            int bv = b & VALUE_MASK;
+
+            res = res | (bv << (7 * i));
+            if (b == bv) {
+                return ((long) (i + 1) << 32) | res;
+            }
+        }
+
+        if (address + 4 >= limit) {
+            return -1;
+        }
+
+        int b = MemoryAccess.getUnsignedByte(base, address + 4);
+        int bv = b & TAIL_VALUE_MASK;
+        if (b != bv) {
+            return -1;
+        }
+
+        return (5L << 32) | (res | (bv << (7 * 4)));
+    }
+
     private CompressedNumber() {
     }
 }
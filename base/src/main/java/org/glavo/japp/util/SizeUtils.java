@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.util;
+
+import java.util.Locale;
+
+public final class SizeUtils {
+
+    /**
+     * Parses a size in bytes, optionally followed by a unit ({@code k}, {@code m} or {@code g}, case-insensitive).
+     *
+     * @throws IllegalArgumentException if the value is not a valid size
+     */
+    public static long parseSize(String value) {
+        String str = value.trim().toLowerCase(Locale.ROOT);
+        if (str.isEmpty()) {
+            throw new IllegalArgumentException("Invalid size: " + value);
+        }
+
+        long unit;
+        switch (str.charAt(str.length() - 1)) {
+            case 'k':
+                unit = 1024L;
+                break;
+            case 'm':
+                unit = 1024L * 1024;
+                break;
+            case 'g':
+                unit = 1024L * 1024 * 1024;
+                break;
+            default:
+                unit = 1L;
+        }
+
+        if (unit != 1L) {
+            str = str.substring(0, str.length() - 1);
+        }
+
+        try {
+            return Math.multiplyExact(Long.parseLong(str), unit);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid size: " + value, e);
+        }
+    }
+
+    private SizeUtils() {
+    }
+}
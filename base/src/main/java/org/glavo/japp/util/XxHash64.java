@@ -41,7 +41,7 @@ public final class XxHash64 {
             inputAddress = ARRAY_BYTE_BASE_OFFSET + buffer.arrayOffset() + buffer.position();
         } else {
             inputBase = null;
-            inputAddress = MemoryAccess.getDirectBufferAddress(buffer);
+            inputAddress = MemoryAccess.getDirectBufferAddress(buffer) + buffer.position();
         }
         inputLimit = inputAddress + buffer.remaining();
 
@@ -123,6 +123,119 @@ public final class XxHash64 {
         return finalize(hash);
     }
 
+    /**
+     * Computes the same hash as {@link #hash(long, Object, long, long)} over data supplied in pieces.
+     */
+    public static final class Hasher {
+        private final long seed;
+        private final byte[] buffer = new byte[32];
+        private int bufferSize;
+        private long totalLength;
+
+        private long v1;
+        private long v2;
+        private long v3;
+        private long v4;
+
+        public Hasher() {
+            this(0L);
+        }
+
+        public Hasher(long seed) {
+            this.seed = seed;
+            this.v1 = seed + P1 + P2;
+            this.v2 = seed + P2;
+            this.v3 = seed;
+            this.v4 = seed - P1;
+        }
+
+        private void processStripe(Object base, long address) {
+            v1 = mix(v1, MemoryAccess.getLong(base, address));
+            v2 = mix(v2, MemoryAccess.getLong(base, address + 8));
+            v3 = mix(v3, MemoryAccess.getLong(base, address + 16));
+            v4 = mix(v4, MemoryAccess.getLong(base, address + 24));
+        }
+
+        public void update(byte[] array, int offset, int length) {
+            update(array, (long) ARRAY_BYTE_BASE_OFFSET + offset, (long) ARRAY_BYTE_BASE_OFFSET + offset + length);
+        }
+
+        public void update(Object inputBase, long inputAddress, long inputLimit) {
+            long address = inputAddress;
+            totalLength += inputLimit - inputAddress;
+
+            if (bufferSize > 0) {
+                int n = (int) Math.min(32 - bufferSize, inputLimit - address);
+                MemoryAccess.copyMemory(inputBase, address, buffer, ARRAY_BYTE_BASE_OFFSET + bufferSize, n);
+                bufferSize += n;
+                address += n;
+
+                if (bufferSize < 32) {
+                    return;
+                }
+
+                processStripe(buffer, ARRAY_BYTE_BASE_OFFSET);
+                bufferSize = 0;
+            }
+
+            while (inputLimit - address >= 32) {
+                processStripe(inputBase, address);
+                address += 32;
+            }
+
+            if (address < inputLimit) {
+                bufferSize = (int) (inputLimit - address);
+                MemoryAccess.copyMemory(inputBase, address, buffer, ARRAY_BYTE_BASE_OFFSET, bufferSize);
+            }
+        }
+
+        public long getValue() {
+            long hash;
+            if (totalLength >= 32) {
+                hash = Long.rotateLeft(v1, 1)
+                       + Long.rotateLeft(v2, 7)
+                       + Long.rotateLeft(v3, 12)
+                       + Long.rotateLeft(v4, 18);
+
+                hash = XxHash64.update(hash, v1);
+                hash = XxHash64.update(hash, v2);
+                hash = XxHash64.update(hash, v3);
+                hash = XxHash64.update(hash, v4);
+            } else {
+                hash = seed + P5;
+            }
+
+            hash += totalLength;
+
+            long address = ARRAY_BYTE_BASE_OFFSET;
+            long limit = address + bufferSize;
+
+            while (address <= limit - 8) {
+                long k1 = MemoryAccess.getLong(buffer, address);
+                k1 *= P2;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= P1;
+                hash ^= k1;
+                hash = Long.rotateLeft(hash, 27) * P1 + P4;
+                address += 8;
+            }
+
+            if (address <= limit - 4) {
+                hash ^= MemoryAccess.getUnsignedInt(buffer, address) * P1;
+                hash = Long.rotateLeft(hash, 23) * P2 + P3;
+                address += 4;
+            }
+
+            while (address < limit) {
+                hash ^= MemoryAccess.getUnsignedByte(buffer, address) * P5;
+                hash = Long.rotateLeft(hash, 11) * P1;
+                address++;
+            }
+
+            return XxHash64.finalize(hash);
+        }
+    }
+
     private static long mix(long current, long value) {
         return Long.rotateLeft(current + value * P2, 31) * P1;
     }
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free pool of direct buffers, bucketed by power-of-two capacity.
+ * <p>
+ * Requests larger than the largest bucket are served by fresh allocations that are never pooled.
+ */
+public final class DirectBufferPool {
+
+    private static final int MIN_SHIFT = 12; // 4 KiB
+    private static final int MAX_SHIFT = 22; // 4 MiB
+
+    private static final int DEFAULT_BUCKET_CAPACITY = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private final AtomicReferenceArray<ByteBuffer>[] buckets;
+
+    public DirectBufferPool() {
+        this(DEFAULT_BUCKET_CAPACITY);
+    }
+
+    @SuppressWarnings("unchecked")
+    public DirectBufferPool(int bucketCapacity) {
+        if (bucketCapacity <= 0) {
+            throw new IllegalArgumentException("bucketCapacity: " + bucketCapacity);
+        }
+
+        this.buckets = (AtomicReferenceArray<ByteBuffer>[]) new AtomicReferenceArray<?>[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new AtomicReferenceArray<>(bucketCapacity);
+        }
+    }
+
+    private static int bucketIndex(int capacity) {
+        if (capacity <= (1 << MIN_SHIFT)) {
+            return 0;
+        }
+
+        int shift = Integer.SIZE - Integer.numberOfLeadingZeros(capacity - 1);
+        return shift <= MAX_SHIFT ? shift - MIN_SHIFT : -1;
+    }
+
+    /**
+     * Returns a cleared direct buffer with at least {@code length} bytes of capacity, whose limit is {@code length}.
+     */
+    public ByteBuffer acquire(int length) {
+        int index = bucketIndex(length);
+        if (index < 0) {
+            return ByteBuffer.allocateDirect(length);
+        }
+
+        AtomicReferenceArray<ByteBuffer> bucket = buckets[index];
+        for (int i = 0; i < bucket.length(); i++) {
+            if (bucket.get(i) != null) {
+                ByteBuffer buffer = bucket.getAndSet(i, null);
+                if (buffer != null) {
+                    buffer.clear().limit(length);
+                    return buffer;
+                }
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << (index + MIN_SHIFT));
+        buffer.limit(length);
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (!buffer.isDirect() || buffer.isReadOnly() || capacity < (1 << MIN_SHIFT) || Integer.bitCount(capacity) != 1) {
+            return;
+        }
+
+        int index = bucketIndex(capacity);
+        if (index < 0) {
+            return;
+        }
+
+        AtomicReferenceArray<ByteBuffer> bucket = buckets[index];
+        for (int i = 0; i < bucket.length(); i++) {
+            if (bucket.get(i) == null && bucket.compareAndSet(i, null, buffer)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The order in which resources were first read during a training run.
+ * <p>
+ * The boot module records it when {@value #PROPERTY_FILE} is set,
+ * and the packer uses it to place the resources needed at startup at the front of the file, next to each other.
+ * <p>
+ * Each line of the file is a group name and a resource path separated by a tab.
+ * The group name is empty for anonymous groups, their resources are matched by path only.
+ */
+public final class JAppAccessProfile {
+
+    public static final String PROPERTY_FILE = "org.glavo.japp.boot.profile";
+
+    private static final String HEADER = "# JApp access profile";
+
+    private final Map<String, Integer> entries = new LinkedHashMap<>();
+    private final Map<String, Integer> anonymousEntries = new HashMap<>();
+
+    private static String key(String group, String path) {
+        return group + '\t' + path;
+    }
+
+    public void add(String group, String path) {
+        if (group == null) {
+            group = "";
+        }
+
+        int index = entries.size();
+        if (entries.putIfAbsent(key(group, path), index) == null && group.isEmpty()) {
+            anonymousEntries.putIfAbsent(path, index);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param group the name of the group, or {@code null} if the group is anonymous
+     * @return the position of the resource in the access order, or {@code -1} if it has not been accessed
+     */
+    public int indexOf(String group, String path) {
+        Integer index = group != null ? entries.get(key(group, path)) : anonymousEntries.get(path);
+        return index != null ? index : -1;
+    }
+
+    public static JAppAccessProfile read(Path file) throws IOException {
+        JAppAccessProfile profile = new JAppAccessProfile();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            int idx = line.indexOf('\t');
+            if (idx < 0 || idx == line.length() - 1) {
+                throw new IOException(String.format("Invalid access profile entry at %s:%d: %s", file, i + 1, line));
+            }
+
+            profile.add(line.substring(0, idx), line.substring(idx + 1));
+        }
+
+        return profile;
+    }
+
+    public void writeTo(Path file) throws IOException {
+        List<String> lines = new ArrayList<>(entries.size() + 1);
+        lines.add(HEADER);
+        lines.addAll(entries.keySet());
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+}
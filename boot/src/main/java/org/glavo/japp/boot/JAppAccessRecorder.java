@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the resources read through a reader in the order they are first read.
+ */
+final class JAppAccessRecorder {
+
+    static JAppAccessRecorder fromSystemProperties() {
+        String file = System.getProperty(JAppAccessProfile.PROPERTY_FILE);
+        return file == null || file.isEmpty() ? null : new JAppAccessRecorder(Paths.get(file));
+    }
+
+    private final Path file;
+
+    private final Map<JAppResource, Boolean> accessed = new IdentityHashMap<>();
+    private final List<JAppResource> order = new ArrayList<>();
+
+    JAppAccessRecorder(Path file) {
+        this.file = file;
+    }
+
+    synchronized void record(JAppResource resource) {
+        if (accessed.putIfAbsent(resource, Boolean.TRUE) == null) {
+            order.add(resource);
+        }
+    }
+
+    private static void addGroups(Map<JAppResource, String> groups, Map<String, JAppResourceGroup> root) {
+        for (JAppResourceGroup group : root.values()) {
+            String name = group.getName();
+            if (name == null || name.startsWith(JAppReader.UNNAMED_GROUP_PREFIX)) {
+                name = "";
+            }
+
+            for (JAppResource resource : group.getResources()) {
+                groups.putIfAbsent(resource, name);
+            }
+        }
+    }
+
+    JAppAccessProfile toProfile(JAppReader reader) {
+        Map<JAppResource, String> groups = new IdentityHashMap<>();
+        addGroups(groups, reader.getRoot(JAppResourceRoot.MODULES));
+        addGroups(groups, reader.getRoot(JAppResourceRoot.CLASSPATH));
+
+        List<JAppResource> order;
+        synchronized (this) {
+            order = new ArrayList<>(this.order);
+        }
+
+        JAppAccessProfile profile = new JAppAccessProfile();
+        for (JAppResource resource : order) {
+            String group = groups.get(resource);
+            if (group != null) {
+                profile.add(group, resource.getName());
+            }
+        }
+        return profile;
+    }
+
+    void writeProfile(JAppReader reader) throws IOException {
+        toProfile(reader).writeTo(file);
+    }
+}
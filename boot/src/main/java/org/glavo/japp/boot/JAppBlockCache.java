@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.util.SizeUtils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A size-bounded LRU cache of decompressed solid blocks.
+ * <p>
+ * Adjacent resources are usually read together (for example, the classes of a package),
+ * so keeping a few recently decompressed blocks avoids decompressing the same block for each of them.
+ */
+public final class JAppBlockCache {
+
+    public static final String PROPERTY_SIZE = "org.glavo.japp.boot.block.cache.size";
+
+    public static final long DEFAULT_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * @return the block cache, or {@code null} if it is disabled
+     */
+    public static JAppBlockCache fromSystemProperties() {
+        String size = System.getProperty(PROPERTY_SIZE);
+        long maxBytes = size != null ? SizeUtils.parseSize(size) : DEFAULT_SIZE;
+        return maxBytes > 0 ? new JAppBlockCache(maxBytes) : null;
+    }
+
+    private final long maxBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Long, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes = 0L;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    public JAppBlockCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes: " + maxBytes);
+        }
+
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @param offset the offset of the compressed block in the data pool
+     * @return the decompressed block, which must not be modified
+     */
+    public byte[] get(long offset) {
+        byte[] block;
+        lock.lock();
+        try {
+            block = entries.get(offset);
+        } finally {
+            lock.unlock();
+        }
+
+        if (block != null) {
+            hitCount.increment();
+        } else {
+            missCount.increment();
+        }
+        return block;
+    }
+
+    public void put(long offset, byte[] block) {
+        if (block.length > maxBytes) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            byte[] existing = entries.put(offset, block);
+            if (existing != null) {
+                currentBytes -= existing.length;
+            }
+            currentBytes += block.length;
+
+            Iterator<Map.Entry<Long, byte[]>> it = entries.entrySet().iterator();
+            while (currentBytes > maxBytes && it.hasNext()) {
+                currentBytes -= it.next().getValue().length;
+                it.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            currentBytes = 0L;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getCurrentBytes() {
+        lock.lock();
+        try {
+            return currentBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("JAppBlockCache[maxBytes=%d, currentBytes=%d, hits=%d, misses=%d]",
+                maxBytes, getCurrentBytes(), getHitCount(), getMissCount());
+    }
+}
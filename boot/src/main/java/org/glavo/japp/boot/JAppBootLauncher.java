@@ -179,7 +179,9 @@ public final class JAppBootLauncher {
             Modules.addOpens(mainModule, mainClass.getPackageName(), JAppBootLauncher.class.getModule());
         }
 
-        return mainClass.getMethod("main", String[].class);
+        Method mainMethod = mainClass.getMethod("main", String[].class);
+        reader.startBackgroundVerification();
+        return mainMethod;
     }
 
     public static void main(String[] args) throws Throwable {
@@ -15,22 +15,20 @@
  */
 package org.glavo.japp.boot;
 
-import org.glavo.japp.CompressionMethod;
+import org.glavo.japp.boot.decompressor.ZstdDecompressorPool;
 import org.glavo.japp.boot.decompressor.classfile.ByteArrayPool;
-import org.glavo.japp.boot.decompressor.zstd.ZstdFrameDecompressor;
-import org.glavo.japp.util.ByteBufferUtils;
-import org.glavo.japp.util.XxHash64;
+import org.glavo.japp.boot.decompressor.zstd.MalformedInputException;
+import org.glavo.japp.boot.decompressor.zstd.ZstdDictionary;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.List;
 
 public final class JAppBootMetadata {
     public static final int MAGIC_NUMBER = 0x544f4f42;
 
-    public static JAppBootMetadata readFrom(ByteBuffer buffer, ZstdFrameDecompressor decompressor) throws IOException {
+    public static JAppBootMetadata readFrom(ByteBuffer buffer, ZstdDecompressorPool decompressors) throws IOException {
         int bootMagic = buffer.getInt();
         if (bootMagic != MAGIC_NUMBER) {
             throw new IOException(String.format("Wrong boot magic: 0x%02x", bootMagic));
@@ -38,87 +36,49 @@ public final class JAppBootMetadata {
 
         int groupCount = buffer.getInt();
 
-        ByteArrayPool pool = ByteArrayPool.readFrom(buffer, decompressor);
-
-        JAppResourceGroup[] groups = new JAppResourceGroup[groupCount];
-
-        ByteBuffer uncompressedBuffer = ByteBuffer.allocate(8192).order(ByteOrder.LITTLE_ENDIAN);
-        for (int i = 0; i < groupCount; i++) {
-            byte magic = buffer.get();
-            if (magic != JAppResourceGroup.MAGIC_NUMBER) {
-                throw new IOException(String.format("Wrong resource group magic: 0x%02x", magic));
-            }
-
-            CompressionMethod compressionMethod = CompressionMethod.readFrom(buffer);
-
-            short reserved = buffer.getShort();
-            if (reserved != 0) {
-                throw new IOException("Reserved is not 0");
-            }
-
-            int uncompressedSize = buffer.getInt();
-            int compressedSize = buffer.getInt();
-            int resourcesCount = buffer.getInt();
-            long checksum = buffer.getLong();
-
-            JAppResourceGroup group = new JAppResourceGroup();
-
-            ByteBuffer compressedBuffer = ByteBufferUtils.slice(buffer, buffer.position(), compressedSize).order(ByteOrder.LITTLE_ENDIAN);
-            buffer.position(buffer.position() + compressedSize);
-
-            ByteBuffer uncompressed;
-            if (compressionMethod == CompressionMethod.NONE) {
-                uncompressed = compressedBuffer;
-            } else {
-                if (uncompressedBuffer.capacity() >= uncompressedSize) {
-                    uncompressedBuffer.clear();
-                } else {
-                    int nextLen = Math.max(uncompressedSize, uncompressedBuffer.capacity() * 2);
-                    uncompressedBuffer = ByteBuffer.allocate(nextLen).order(ByteOrder.LITTLE_ENDIAN);
+        int dictionaryCount = buffer.getInt();
+        if (dictionaryCount > 0) {
+            ZstdDictionary[] dictionaries = new ZstdDictionary[dictionaryCount];
+            for (int i = 0; i < dictionaryCount; i++) {
+                int size = buffer.getInt();
+                ByteBuffer slice = buffer.slice();
+                slice.limit(size);
+                try {
+                    dictionaries[i] = ZstdDictionary.readFrom(slice);
+                } catch (MalformedInputException e) {
+                    throw new IOException("Invalid dictionary", e);
                 }
-                uncompressedBuffer.limit(uncompressedSize);
-
-                if (compressionMethod == CompressionMethod.ZSTD) {
-                    decompressor.decompress(compressedBuffer, uncompressedBuffer);
-                    if (uncompressedBuffer.hasRemaining()) {
-                        throw new IOException();
-                    }
-                    uncompressedBuffer.flip();
-                } else {
-                    throw new IOException("Unsupported compression method: " + compressionMethod);
-                }
-                uncompressed = uncompressedBuffer;
-            }
-
-            long actualChecksum = XxHash64.hashByteBufferWithoutUpdate(uncompressed);
-            if (actualChecksum != checksum) {
-                throw new IOException(String.format(
-                        "Failed while verifying resource group at index %d (expected=%x, actual=%x)",
-                        i, checksum, actualChecksum
-                ));
+                buffer.position(buffer.position() + size);
             }
+            decompressors.setDictionaries(dictionaries);
+        }
 
-            for (int j = 0; j < resourcesCount; j++) {
-                JAppResource resource = JAppResource.readFrom(uncompressed);
-                group.put(resource.getName(), resource);
-            }
+        // Pool chunks are decoded lazily when they are first referenced
+        ByteArrayPool pool = ByteArrayPool.readFrom(buffer, decompressors);
 
-            if (uncompressedBuffer.hasRemaining()) {
-                throw new IOException();
-            }
+        // Group bodies are decoded lazily when the group is first accessed
+        JAppResourceGroup[] groups = new JAppResourceGroup[groupCount];
+        for (int i = 0; i < groupCount; i++) {
+            groups[i] = JAppResourceGroup.readFrom(buffer, i, decompressors);
+        }
 
-            groups[i] = group;
+        int profileCount = buffer.getInt();
+        int[] profile = new int[profileCount * 2];
+        for (int i = 0; i < profile.length; i++) {
+            profile[i] = buffer.getInt();
         }
 
-        return new JAppBootMetadata(Arrays.asList(groups), pool);
+        return new JAppBootMetadata(Arrays.asList(groups), pool, profile);
     }
 
     private final List<JAppResourceGroup> groups;
     private final ByteArrayPool pool;
+    private final int[] profile;
 
-    public JAppBootMetadata(List<JAppResourceGroup> groups, ByteArrayPool pool) {
+    public JAppBootMetadata(List<JAppResourceGroup> groups, ByteArrayPool pool, int[] profile) {
         this.groups = groups;
         this.pool = pool;
+        this.profile = profile;
     }
 
     public List<JAppResourceGroup> getGroups() {
@@ -128,4 +88,12 @@ public final class JAppBootMetadata {
     public ByteArrayPool getPool() {
         return pool;
     }
+
+    /**
+     * Returns the resources of the access profile in load order,
+     * each as the index of the group holding it followed by its index in the group body.
+     */
+    public int[] getProfile() {
+        return profile;
+    }
 }
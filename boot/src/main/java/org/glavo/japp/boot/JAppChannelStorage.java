@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads resources on demand with positional reads, so that nothing but the resources in use occupies memory.
+ */
+public final class JAppChannelStorage implements JAppStorage {
+
+    private final FileChannel channel;
+    private final long position;
+    private final long size;
+    private final DirectBufferPool bufferPool;
+
+    public JAppChannelStorage(FileChannel channel, long position, long size, DirectBufferPool bufferPool) {
+        this.channel = channel;
+        this.position = position;
+        this.size = size;
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    private void readFully(long offset, ByteBuffer buffer) throws IOException {
+        if (offset < 0 || offset > size - buffer.remaining()) {
+            throw new IOException(String.format("Range out of bounds (offset=%d, length=%d, size=%d)", offset, buffer.remaining(), size));
+        }
+
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + offset + buffer.position() - start);
+            if (n <= 0) {
+                throw new EOFException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+    }
+
+    @Override
+    public ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        readFully(offset, buffer);
+        return buffer;
+    }
+
+    @Override
+    public ByteBuffer readTemporary(long offset, int length) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire(length);
+        try {
+            readFully(offset, buffer);
+        } catch (Throwable e) {
+            bufferPool.release(buffer);
+            throw e;
+        }
+        return buffer;
+    }
+
+    @Override
+    public void release(ByteBuffer buffer) {
+        bufferPool.release(buffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
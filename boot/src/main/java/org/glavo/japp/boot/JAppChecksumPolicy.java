@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import java.util.Locale;
+
+/**
+ * Controls when the checksums of resources are verified.
+ */
+public enum JAppChecksumPolicy {
+    /**
+     * Verify each resource the first time it is read.
+     */
+    ALWAYS,
+    /**
+     * Never verify resources.
+     */
+    NEVER,
+    /**
+     * Verify all resources in a low priority background thread after the main class is loaded.
+     */
+    BACKGROUND,
+    /**
+     * Verify each resource the first time it is read, and all resources in the background.
+     * Once the whole file has been verified, later launches of the same unchanged file skip verification.
+     */
+    ONCE;
+
+    public static final String PROPERTY_POLICY = "org.glavo.japp.boot.checksum";
+
+    public static JAppChecksumPolicy fromSystemProperties() {
+        String value = System.getProperty(PROPERTY_POLICY);
+        if (value == null) {
+            return ALWAYS;
+        }
+
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown checksum policy: " + value, e);
+        }
+    }
+}
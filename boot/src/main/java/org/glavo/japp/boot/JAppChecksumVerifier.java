@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Verifies every resource reachable from the reader.
+ * <p>
+ * When a resource fails verification, the reader refuses to read any more resources.
+ */
+final class JAppChecksumVerifier implements Runnable {
+
+    private final JAppReader reader;
+    private final Runnable onSuccess;
+
+    JAppChecksumVerifier(JAppReader reader, Runnable onSuccess) {
+        this.reader = reader;
+        this.onSuccess = onSuccess;
+    }
+
+    private void verify(JAppResourceRoot root) throws IOException {
+        for (JAppResourceGroup group : reader.getRoot(root).values()) {
+            for (JAppResource resource : group.getResources()) {
+                if (!reader.isOpen()) {
+                    throw new IOException("Reader has been closed");
+                }
+
+                reader.verifyResource(resource);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            verify(JAppResourceRoot.MODULES);
+            verify(JAppResourceRoot.CLASSPATH);
+        } catch (IOException | UncheckedIOException e) {
+            if (reader.isOpen()) {
+                reader.reportCorruption(e.getMessage());
+            }
+            return;
+        }
+
+        if (onSuccess != null) {
+            onSuccess.run();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.util.ByteBufferUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The data region of a JApp file held in memory, either mapped or read in advance.
+ * <p>
+ * Mapped data is split into a sequence of segments so that it is not limited to 2 GiB.
+ * Segment {@code i} starts at {@code i << segmentShift} and extends up to twice the segment stride,
+ * so every range no longer than the stride lies entirely within a single segment and can be sliced without copying.
+ */
+public final class JAppMappedStorage implements JAppStorage {
+
+    public static final int DEFAULT_SEGMENT_SHIFT = 30;
+
+    public static JAppMappedStorage map(FileChannel channel, long position, long size) throws IOException {
+        return map(channel, position, size, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    static JAppMappedStorage map(FileChannel channel, long position, long size, int segmentShift) throws IOException {
+        if (segmentShift <= 0 || segmentShift > DEFAULT_SEGMENT_SHIFT) {
+            throw new IllegalArgumentException("segmentShift: " + segmentShift);
+        }
+
+        long stride = 1L << segmentShift;
+        long maxSegmentSize = (stride << 1) - 1;
+
+        ByteBuffer[] segments = new ByteBuffer[Math.toIntExact((size + stride - 1) >>> segmentShift)];
+        for (int i = 0; i < segments.length; i++) {
+            long segmentOffset = (long) i << segmentShift;
+            long segmentSize = Math.min(maxSegmentSize, size - segmentOffset);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + segmentOffset, segmentSize);
+        }
+        return new JAppMappedStorage(segments, segmentShift, size);
+    }
+
+    private final ByteBuffer[] segments;
+    private final int segmentShift;
+    private final long segmentMask;
+    private final long size;
+
+    public JAppMappedStorage(ByteBuffer buffer) {
+        this(new ByteBuffer[]{buffer}, Integer.SIZE - 1, buffer.limit());
+    }
+
+    private JAppMappedStorage(ByteBuffer[] segments, int segmentShift, long size) {
+        this.segments = segments;
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1L << segmentShift) - 1;
+        this.size = size;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Returns a view of the given range, or a copy of it if the range spans multiple segments.
+     */
+    @Override
+    public ByteBuffer read(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset > size - length) {
+            throw new IOException(String.format("Range out of bounds (offset=%d, length=%d, size=%d)", offset, length, size));
+        }
+
+        if (length == 0) {
+            return ByteBuffer.allocate(0);
+        }
+
+        ByteBuffer segment = segments[(int) (offset >>> segmentShift)];
+        int position = (int) (offset & segmentMask);
+
+        if (length <= segment.limit() - position) {
+            return ByteBufferUtils.slice(segment, position, length);
+        }
+
+        // Only ranges longer than the segment stride can get here
+        ByteBuffer result = ByteBuffer.allocateDirect(length);
+        while (result.hasRemaining()) {
+            long current = offset + result.position();
+            segment = segments[(int) (current >>> segmentShift)];
+            position = (int) (current & segmentMask);
+
+            int n = Math.min(result.remaining(), segment.limit() - position);
+            result.put(ByteBufferUtils.slice(segment, position, n));
+        }
+        result.flip();
+        return result.asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Loads a range of the data region into the page cache in a background thread,
+ * so the resources read during startup do not fault on a cold page cache.
+ * <p>
+ * The range is mapped and {@linkplain MappedByteBuffer#load() loaded},
+ * which advises the kernel that the pages will be needed ({@code MADV_WILLNEED}) and then touches them in order.
+ */
+final class JAppPrefetcher implements Runnable {
+
+    public static final String PROPERTY_PREFETCH = "org.glavo.japp.boot.prefetch";
+
+    enum Mode {
+        /**
+         * Do not prefetch.
+         */
+        NONE,
+        /**
+         * Prefetch the range holding the resources read at startup, as recorded by the packer from an access profile.
+         */
+        HOT,
+        /**
+         * Prefetch the whole data region.
+         */
+        ALL;
+
+        static Mode fromSystemProperties() {
+            String value = System.getProperty(PROPERTY_PREFETCH);
+            if (value == null) {
+                return HOT;
+            }
+
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown prefetch mode: " + value, e);
+            }
+        }
+    }
+
+    /**
+     * Starts prefetching the given range of the file.
+     * The mapping is created before this method returns, so the channel may be closed afterwards.
+     */
+    static void start(FileChannel channel, long position, long size) throws IOException {
+        if (size <= 0) {
+            return;
+        }
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size, Integer.MAX_VALUE));
+
+        Thread thread = new Thread(new JAppPrefetcher(buffer), "JApp Prefetcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private final MappedByteBuffer buffer;
+
+    private JAppPrefetcher(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void run() {
+        try {
+            buffer.load();
+        } catch (Throwable ignored) {
+            // Prefetching is only a hint
+        }
+    }
+}
@@ -19,9 +19,12 @@ import jdk.internal.loader.BuiltinClassLoader;
 import jdk.internal.loader.URLClassPath;
 import org.glavo.japp.CompressionMethod;
 import org.glavo.japp.boot.decompressor.DecompressContext;
+import org.glavo.japp.boot.decompressor.ZstdDecompressorPool;
 import org.glavo.japp.boot.decompressor.classfile.ClassFileDecompressor;
 import org.glavo.japp.boot.decompressor.classfile.ByteArrayPool;
-import org.glavo.japp.boot.decompressor.zstd.ZstdFrameDecompressor;
+import org.glavo.japp.boot.decompressor.zstd.ZstdInputStream;
+import org.glavo.japp.boot.decompressor.zstd.ZstdSeekTable;
+import org.glavo.japp.io.ByteBufferChannel;
 import org.glavo.japp.io.ByteBufferInputStream;
 import org.glavo.japp.util.ByteBufferUtils;
 import org.glavo.japp.io.IOUtils;
@@ -34,13 +37,21 @@ import java.lang.invoke.MethodHandles;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 
 public final class JAppReader implements DecompressContext, Closeable {
     private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
-    private static final int READ_ALL_THRESHOLD = 16 * 1024 * 1024;
+
+    /**
+     * Zstd resources larger than this are decompressed incrementally when opened as a stream or channel,
+     * so that they never have to be materialized in a single array.
+     */
+    static final long STREAMING_THRESHOLD = 4 * 1024 * 1024;
+
+    static final String UNNAMED_GROUP_PREFIX = "unnamed@";
 
     private static JAppReader systemReader;
 
@@ -57,30 +68,47 @@ public final class JAppReader implements DecompressContext, Closeable {
         long baseOffset = bootArgs.getLong();
         long metadataOffset = bootArgs.getLong();
         long metadataSize = bootArgs.getLong();
+        long prefetchOffset = bootArgs.getLong();
+        long prefetchSize = bootArgs.getLong();
 
-        ZstdFrameDecompressor decompressor = new ZstdFrameDecompressor();
+        ZstdDecompressorPool decompressors = new ZstdDecompressorPool();
 
         FileChannel channel = FileChannel.open(Paths.get(file));
         ByteBuffer metadataBuffer = ByteBuffer.allocateDirect(Math.toIntExact(metadataSize)).order(ByteOrder.LITTLE_ENDIAN);
         IOUtils.readFully(channel.position(baseOffset + metadataOffset), metadataBuffer);
         metadataBuffer.flip();
-        JAppBootMetadata metadata = JAppBootMetadata.readFrom(metadataBuffer, decompressor);
 
-        ByteBuffer mappedBuffer = null;
-        if (metadataOffset < READ_ALL_THRESHOLD) {
-            mappedBuffer = ByteBuffer.allocateDirect((int) metadataOffset);
-            IOUtils.readFully(channel.position(baseOffset), mappedBuffer);
-            mappedBuffer.flip();
-            mappedBuffer = mappedBuffer.asReadOnlyBuffer();
-        } else if (metadataOffset < Integer.MAX_VALUE) {
-            mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, baseOffset, metadataOffset);
+        JAppChecksumPolicy checksumPolicy = JAppChecksumPolicy.fromSystemProperties();
+        JAppVerifiedFiles verifiedFiles = null;
+        String verifiedFileKey = null;
+        if (checksumPolicy == JAppChecksumPolicy.ONCE) {
+            verifiedFiles = JAppVerifiedFiles.fromSystemProperties();
+            if (verifiedFiles == null) {
+                checksumPolicy = JAppChecksumPolicy.ALWAYS;
+            } else {
+                verifiedFileKey = JAppVerifiedFiles.fileKey(Paths.get(file), XxHash64.hashByteBufferWithoutUpdate(metadataBuffer));
+                if (verifiedFiles.isVerified(verifiedFileKey)) {
+                    checksumPolicy = JAppChecksumPolicy.NEVER;
+                }
+            }
         }
 
-        if (mappedBuffer != null) {
-            channel.close();
-            channel = null;
+        JAppBootMetadata metadata = JAppBootMetadata.readFrom(metadataBuffer, decompressors);
+
+        JAppStorage.Kind storageKind = JAppStorage.resolve(JAppStorage.Kind.fromSystemProperties(), metadataOffset);
+        if (storageKind != JAppStorage.Kind.READ) {
+            switch (JAppPrefetcher.Mode.fromSystemProperties()) {
+                case HOT:
+                    JAppPrefetcher.start(channel, baseOffset + prefetchOffset, prefetchSize);
+                    break;
+                case ALL:
+                    JAppPrefetcher.start(channel, baseOffset, metadataOffset);
+                    break;
+            }
         }
 
+        JAppStorage storage = JAppStorage.open(storageKind, channel, baseOffset, metadataOffset);
+
         JAppBootArgs args = new JAppBootArgs();
         Map<String, JAppResourceGroup> modules = new HashMap<>();
         Map<String, JAppResourceGroup> classPath = new LinkedHashMap<>();
@@ -136,11 +164,11 @@ public final class JAppReader implements DecompressContext, Closeable {
                                     throw new IOException("Modules cannot be anonymous");
                                 }
 
-                                group.initName("unnamed@" + unnamedCount++);
+                                group.initName(UNNAMED_GROUP_PREFIX + unnamedCount++);
                             }
 
                             while ((index = bootArgs.getInt()) != -1) {
-                                group.putAll(metadata.getGroups().get(index));
+                                group.addOverlay(metadata.getGroups().get(index));
                             }
 
                             map.put(group.getName(), group);
@@ -187,35 +215,83 @@ public final class JAppReader implements DecompressContext, Closeable {
             }
         }
 
-        JAppReader.systemReader = new JAppReader(channel, baseOffset, mappedBuffer, metadata.getPool(), decompressor, modules, classPath);
+        JAppReader reader = new JAppReader(storage, metadata.getPool(), decompressors,
+                JAppResourceCache.fromSystemProperties(), modules, classPath);
+
+        switch (checksumPolicy) {
+            case NEVER:
+                reader.verifyOnRead = false;
+                break;
+            case BACKGROUND:
+                reader.verifyOnRead = false;
+                reader.backgroundVerifier = new JAppChecksumVerifier(reader, null);
+                break;
+            case ONCE: {
+                JAppVerifiedFiles records = verifiedFiles;
+                String key = verifiedFileKey;
+                reader.backgroundVerifier = new JAppChecksumVerifier(reader, () -> {
+                    try {
+                        records.markVerified(key);
+                    } catch (IOException ignored) {
+                        // The file will be verified again on the next launch
+                    }
+                });
+                break;
+            }
+        }
+
+        JAppAccessRecorder accessRecorder = JAppAccessRecorder.fromSystemProperties();
+        if (accessRecorder != null) {
+            reader.accessRecorder = accessRecorder;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    accessRecorder.writeProfile(reader);
+                } catch (Throwable e) {
+                    System.err.println("Warning: Failed to write access profile: " + e);
+                }
+            }, "JApp Access Profile Writer"));
+        }
+
+        int speculativeThreads = JAppSpeculativeDecoder.threadsFromSystemProperties();
+        if (speculativeThreads > 0 && metadata.getProfile().length > 0) {
+            reader.speculativeDecoder = new JAppSpeculativeDecoder(reader, metadata.getProfile());
+            reader.speculativeDecoder.start(speculativeThreads);
+        }
+
+        JAppReader.systemReader = reader;
         return args;
     }
 
-    private final FileChannel channel;
-    private final long baseOffset;
-
-    private final ByteBuffer mappedBuffer;
+    private final JAppStorage storage;
 
     private final Map<String, JAppResourceGroup> modules;
     private final Map<String, JAppResourceGroup> classpath;
     private final Map<String, JAppResourceGroup> resources;
 
     private final ByteArrayPool pool;
-    private final ZstdFrameDecompressor decompressor;
+    private final ZstdDecompressorPool decompressors;
+    private final JAppResourceCache cache;
+    private final JAppBlockCache blockCache = JAppBlockCache.fromSystemProperties();
+
+    private boolean verifyOnRead = true;
+    private JAppChecksumVerifier backgroundVerifier;
+    private volatile String corruptionMessage;
+
+    JAppAccessRecorder accessRecorder;
+    JAppSpeculativeDecoder speculativeDecoder;
 
     private volatile boolean isClosed = false;
 
-    public JAppReader(FileChannel channel, long baseOffset,
-                      ByteBuffer mappedBuffer,
+    public JAppReader(JAppStorage storage,
                       ByteArrayPool pool,
-                      ZstdFrameDecompressor decompressor,
+                      ZstdDecompressorPool decompressors,
+                      JAppResourceCache cache,
                       Map<String, JAppResourceGroup> modules,
                       Map<String, JAppResourceGroup> classpath) throws IOException {
-        this.channel = channel;
-        this.baseOffset = baseOffset;
-        this.mappedBuffer = mappedBuffer;
+        this.storage = storage;
         this.pool = pool;
-        this.decompressor = decompressor;
+        this.decompressors = decompressors;
+        this.cache = cache;
         this.modules = modules;
         this.classpath = classpath;
         this.resources = new LinkedHashMap<>();
@@ -232,9 +308,7 @@ public final class JAppReader implements DecompressContext, Closeable {
         }
 
         isClosed = true;
-        if (channel != null) {
-            channel.close();
-        }
+        storage.close();
     }
 
     @Override
@@ -243,8 +317,50 @@ public final class JAppReader implements DecompressContext, Closeable {
     }
 
     @Override
-    public synchronized void decompressZstd(ByteBuffer input, ByteBuffer output) {
-        decompressor.decompress(input, output);
+    public void decompressZstd(ByteBuffer input, ByteBuffer output) {
+        decompressors.decompress(input, output);
+    }
+
+    @Override
+    public int decompressZstd(ByteBuffer input, byte[] output, int outputOffset, int maxOutputLength) {
+        return decompressors.decompress(input, output, outputOffset, maxOutputLength);
+    }
+
+    /**
+     * @return the decompressed resource cache, or {@code null} if caching is disabled
+     */
+    public JAppResourceCache getResourceCache() {
+        return cache;
+    }
+
+    /**
+     * @return the decompressed solid block cache, or {@code null} if caching is disabled
+     */
+    public JAppBlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    /**
+     * Starts verifying all resources in a background thread if the checksum policy requires it.
+     */
+    public void startBackgroundVerification() {
+        JAppChecksumVerifier verifier = this.backgroundVerifier;
+        if (verifier == null) {
+            return;
+        }
+        this.backgroundVerifier = null;
+
+        Thread thread = new Thread(verifier, "JApp Checksum Verifier");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    void reportCorruption(String message) {
+        if (corruptionMessage == null) {
+            corruptionMessage = message;
+            System.err.println("Error: " + message);
+        }
     }
 
     public Map<String, JAppResourceGroup> getRoot(JAppResourceRoot root) {
@@ -299,50 +415,215 @@ public final class JAppReader implements DecompressContext, Closeable {
         return (int) value;
     }
 
-    public ByteBuffer readResource(JAppResource resource) throws IOException {
-        int size = castArrayLength(resource.getSize());
-        if (size == 0) {
-            return ByteBuffer.allocate(0);
+    private byte[] readBlock(JAppResource resource) throws IOException {
+        JAppBlockCache blockCache = this.blockCache;
+        byte[] block = blockCache != null ? blockCache.get(resource.getOffset()) : null;
+        if (block != null) {
+            return block;
+        }
+
+        block = new byte[castArrayLength(resource.getBlockSize())];
+        ByteBuffer compressed = storage.readTemporary(resource.getOffset(), castArrayLength(resource.getCompressedSize()));
+        try {
+            int n = decompressZstd(compressed, block, 0, block.length);
+            if (n != block.length) {
+                throw new IOException(String.format("Wrong block size of resource %s (expected=%d, actual=%d)",
+                        resource.getName(), block.length, n));
+            }
+        } finally {
+            storage.release(compressed);
         }
 
+        if (blockCache != null) {
+            blockCache.put(resource.getOffset(), block);
+        }
+        return block;
+    }
+
+    private ByteBuffer decodeResource(JAppResource resource, int size) throws IOException {
         CompressionMethod method = resource.getMethod();
-        int offset = Math.toIntExact(resource.getOffset());
+        if (method == CompressionMethod.SOLID) {
+            int blockOffset = castArrayLength(resource.getBlockOffset());
+            return ByteBuffer.wrap(Arrays.copyOfRange(readBlock(resource), blockOffset, blockOffset + size));
+        }
+
         int compressedSize = castArrayLength(resource.getCompressedSize());
+        if (method == CompressionMethod.NONE) {
+            return storage.read(resource.getOffset(), compressedSize);
+        }
 
-        ByteBuffer compressed;
-        if (mappedBuffer != null) {
-            compressed = ByteBufferUtils.slice(mappedBuffer, offset, compressedSize);
-        } else {
-            compressed = ByteBuffer.allocateDirect(compressedSize);
+        ByteBuffer compressed = storage.readTemporary(resource.getOffset(), compressedSize);
+        try {
+            return decompressResource(method, compressed, size);
+        } finally {
+            storage.release(compressed);
+        }
+    }
 
-            while (compressed.hasRemaining()) {
-                int n = channel.read(compressed, offset + baseOffset + compressed.position());
-                if (n <= 0) {
-                    throw new IOException("Unexpected end of file");
-                }
-            }
+    private static void checkResource(JAppResource resource, ByteBuffer uncompressed) throws IOException {
+        checkResource(resource, XxHash64.hashByteBufferWithoutUpdate(uncompressed));
+    }
 
-            compressed.flip();
+    static void checkResource(JAppResource resource, long checksum) throws IOException {
+        if (resource.checksum != checksum) {
+            throw new IOException(String.format(
+                    "Failed while verifying resource %s (expected=%x, actual=%x)",
+                    resource.getName(), resource.checksum, checksum
+            ));
         }
 
-        ByteBuffer uncompressed = method == CompressionMethod.NONE ? compressed : decompressResource(method, compressed, size);
+        resource.needCheck = false;
+    }
 
+    /**
+     * Verifies the resource regardless of the checksum policy, unless it has already been verified.
+     */
+    void verifyResource(JAppResource resource) throws IOException {
         if (resource.needCheck) {
-            long checksum = XxHash64.hashByteBufferWithoutUpdate(uncompressed);
-            if (resource.checksum != checksum) {
-                throw new IOException(String.format(
-                        "Failed while verifying resource (expected=%x, actual=%x)",
-                        resource.checksum, checksum
-                ));
+            if (isStreamed(resource)) {
+                try (InputStream input = openStream(resource, true)) {
+                    byte[] buffer = new byte[8192];
+                    //noinspection StatementWithEmptyBody
+                    while (input.read(buffer) >= 0) {
+                    }
+                }
+            } else {
+                checkResource(resource, decodeResource(resource, castArrayLength(resource.getSize())));
             }
+        }
+    }
+
+    private void ensureNotCorrupted() throws IOException {
+        String corruptionMessage = this.corruptionMessage;
+        if (corruptionMessage != null) {
+            throw new IOException(corruptionMessage);
+        }
+    }
+
+    private void recordAccess(JAppResource resource) {
+        JAppAccessRecorder recorder = this.accessRecorder;
+        if (recorder != null) {
+            recorder.record(resource);
+        }
+    }
+
+    private static boolean isStreamed(JAppResource resource) {
+        return resource.getMethod() == CompressionMethod.ZSTD && resource.getSize() > STREAMING_THRESHOLD;
+    }
+
+    private InputStream openStream(JAppResource resource, boolean verify) throws IOException {
+        ZstdInputStream input;
+        if (storage instanceof JAppMappedStorage) {
+            ByteBuffer compressed = storage.read(resource.getOffset(), castArrayLength(resource.getCompressedSize()));
+            input = new ZstdInputStream(compressed, verify);
+        } else {
+            // Read the compressed resource a chunk at a time instead of copying all of it into memory
+            long resourceOffset = resource.getOffset();
+            input = new ZstdInputStream(new ZstdInputStream.Source() {
+                @Override
+                public ByteBuffer read(long offset, int length) throws IOException {
+                    return storage.readTemporary(resourceOffset + offset, length);
+                }
 
-            resource.needCheck = false;
+                @Override
+                public void release(ByteBuffer buffer) {
+                    storage.release(buffer);
+                }
+            }, resource.getCompressedSize(), verify);
         }
+        return new JAppResourceInputStream(resource, input, verify);
+    }
 
+    ByteBuffer decodeAndCheck(JAppResource resource) throws IOException {
+        ByteBuffer uncompressed = decodeResource(resource, castArrayLength(resource.getSize()));
+        if (verifyOnRead && resource.needCheck) {
+            checkResource(resource, uncompressed);
+        }
         return uncompressed;
     }
 
+    public ByteBuffer readResource(JAppResource resource) throws IOException {
+        ensureNotCorrupted();
+        recordAccess(resource);
+
+        int size = castArrayLength(resource.getSize());
+        if (size == 0) {
+            return ByteBuffer.allocate(0);
+        }
+
+        // Resources stored uncompressed in memory are zero-copy slices, caching them saves nothing.
+        // Solid resources are served by the block cache.
+        CompressionMethod method = resource.getMethod();
+        boolean cacheable = cache != null && method != CompressionMethod.SOLID
+                && (method != CompressionMethod.NONE || !(storage instanceof JAppMappedStorage));
+        if (cacheable) {
+            ByteBuffer cached = cache.get(resource);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        JAppSpeculativeDecoder decoder = this.speculativeDecoder;
+        ByteBuffer uncompressed = decoder != null ? decoder.take(resource) : null;
+        if (uncompressed == null) {
+            uncompressed = decodeAndCheck(resource);
+        }
+
+        return cacheable ? cache.put(resource, uncompressed) : uncompressed;
+    }
+
     public InputStream openResource(JAppResource resource) throws IOException {
+        if (isStreamed(resource)) {
+            ensureNotCorrupted();
+            recordAccess(resource);
+            return openStream(resource, verifyOnRead && resource.needCheck);
+        }
+
         return new ByteBufferInputStream(readResource(resource));
     }
+
+    /**
+     * @return the seek table of a zstd resource packed in the seekable format, or {@code null} if it is not seekable
+     */
+    private ZstdSeekTable readSeekTable(JAppResource resource) throws IOException {
+        long compressedSize = resource.getCompressedSize();
+        if (resource.getMethod() != CompressionMethod.ZSTD || compressedSize < ZstdSeekTable.FOOTER_SIZE) {
+            return null;
+        }
+
+        ByteBuffer footer = storage.read(resource.getOffset() + compressedSize - ZstdSeekTable.FOOTER_SIZE, ZstdSeekTable.FOOTER_SIZE);
+        long frameSize = ZstdSeekTable.getSeekTableFrameSize(footer);
+        if (frameSize < 0 || frameSize > compressedSize) {
+            return null;
+        }
+
+        ByteBuffer frame = storage.read(resource.getOffset() + compressedSize - frameSize, castArrayLength(frameSize));
+        ZstdSeekTable seekTable = ZstdSeekTable.readFrom(frame, compressedSize - frameSize);
+        return seekTable != null && seekTable.getDecompressedSize() == resource.getSize() ? seekTable : null;
+    }
+
+    ByteBuffer readCompressedTemporary(JAppResource resource, long offset, int length) throws IOException {
+        return storage.readTemporary(resource.getOffset() + offset, length);
+    }
+
+    void releaseTemporary(ByteBuffer buffer) {
+        storage.release(buffer);
+    }
+
+    public SeekableByteChannel openChannel(JAppResource resource) throws IOException {
+        recordAccess(resource);
+
+        ZstdSeekTable seekTable = readSeekTable(resource);
+        if (seekTable != null) {
+            ensureNotCorrupted();
+            return new JAppSeekableResourceChannel(this, resource, seekTable, verifyOnRead);
+        }
+
+        if (isStreamed(resource)) {
+            ensureNotCorrupted();
+            return new JAppResourceChannel(this, resource);
+        }
+
+        return new ByteBufferChannel(readResource(resource));
+    }
 }
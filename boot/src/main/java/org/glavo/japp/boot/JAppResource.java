@@ -25,6 +25,7 @@ import java.nio.file.attribute.FileTime;
 public final class JAppResource {
 
     public static final byte MAGIC_NUMBER = (byte) 0x1b;
+    public static final int HEADER_LENGTH = 32; // 1 + 1 + 2 + 4 + 8 + 8 + 8
     public static final long NO_TIME = Long.MIN_VALUE;
 
     private final String name;
@@ -42,6 +43,10 @@ public final class JAppResource {
     boolean needCheck;
     long checksum;
 
+    // Only for solid resources
+    long blockSize = -1L;
+    long blockOffset = -1L;
+
     public JAppResource(String name, long offset, long size, CompressionMethod method, long compressedSize) {
         this.name = name;
         this.offset = offset;
@@ -82,6 +87,20 @@ public final class JAppResource {
         return compressedSize;
     }
 
+    /**
+     * @return the decompressed size of the solid block containing this resource, or {@code -1} if it is not a solid resource
+     */
+    public long getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return the offset of this resource in the decompressed solid block, or {@code -1} if it is not a solid resource
+     */
+    public long getBlockOffset() {
+        return blockOffset;
+    }
+
     public static JAppResource readFrom(ByteBuffer buffer) throws IOException {
         byte magic = buffer.get();
         if (magic != MAGIC_NUMBER) {
@@ -91,11 +110,7 @@ public final class JAppResource {
         CompressionMethod compressionMethod = CompressionMethod.readFrom(buffer);
 
         int pathLength = Short.toUnsignedInt(buffer.getShort());
-
-        int reserved = buffer.getInt();
-        if (reserved != 0) {
-            throw new IOException("Reserved is not zero");
-        }
+        int pathHash = buffer.getInt();
 
         long uncompressedSize = buffer.getLong();
         long compressedSize = buffer.getLong();
@@ -104,6 +119,9 @@ public final class JAppResource {
         byte[] pathBuffer = new byte[pathLength];
         buffer.get(pathBuffer);
         String path = new String(pathBuffer, StandardCharsets.UTF_8);
+        if (path.hashCode() != pathHash) {
+            throw new IOException(String.format("Wrong path hash for %s (expected=%08x, actual=%08x)", path, pathHash, path.hashCode()));
+        }
 
         JAppResource resource = new JAppResource(path, offset, uncompressedSize, compressionMethod, compressedSize);
 
@@ -156,18 +174,74 @@ public final class JAppResource {
                     }
                     break;
                 }
+                case BLOCK_SIZE:
+                case BLOCK_OFFSET: {
+                    long value = buffer.getLong();
+                    if (value < 0) {
+                        throw new IOException(String.format("Invalid %s: %d", field, value));
+                    }
+
+                    if (field == JAppResourceField.BLOCK_SIZE) {
+                        if (resource.blockSize >= 0) {
+                            throw new IOException("Duplicate field: " + field);
+                        }
+                        resource.blockSize = value;
+                    } else {
+                        if (resource.blockOffset >= 0) {
+                            throw new IOException("Duplicate field: " + field);
+                        }
+                        resource.blockOffset = value;
+                    }
+                    break;
+                }
                 default:
                     throw new AssertionError("Field: " + field);
             }
         }
 
+        if (compressionMethod == CompressionMethod.SOLID) {
+            if (resource.blockSize < 0 || resource.blockOffset < 0) {
+                throw new IOException("Missing block fields for solid resource " + path);
+            }
+            if (resource.blockOffset + uncompressedSize > resource.blockSize) {
+                throw new IOException(String.format("Resource %s is out of its block (offset=%d, size=%d, blockSize=%d)",
+                        path, resource.blockOffset, uncompressedSize, resource.blockSize));
+            }
+        }
+
         return resource;
     }
 
+    /**
+     * Skips the resource starting at the given position without decoding it.
+     *
+     * @return the position of the next resource
+     */
+    static int skip(ByteBuffer buffer, int position) throws IOException {
+        byte magic = buffer.get(position);
+        if (magic != MAGIC_NUMBER) {
+            throw new IOException(String.format("Wrong resource magic: 0x%02x", magic));
+        }
+
+        position += HEADER_LENGTH + Short.toUnsignedInt(buffer.getShort(position + 2));
+
+        int fieldId;
+        while ((fieldId = Byte.toUnsignedInt(buffer.get(position++))) != 0) {
+            if (JAppResourceField.of(fieldId) == null) {
+                throw new IOException(String.format("Unknown field: 0x%02x", fieldId));
+            }
+
+            // All fields currently have an 8-byte body
+            position += 8;
+        }
+
+        return position;
+    }
+
     @Override
     public String toString() {
         return String.format(
-                "JAppResource[name=%s, offset=%d, size=%d, method=%s, compressedSize=%d, creationTime=%d, lastModifiedTime=%d, lastAccessTime=%d, needCheck=%s, checksum=%d]",
-                name, offset, size, method, compressedSize, creationTime, lastModifiedTime, lastAccessTime, needCheck, checksum);
+                "JAppResource[name=%s, offset=%d, size=%d, method=%s, compressedSize=%d, blockSize=%d, blockOffset=%d, creationTime=%d, lastModifiedTime=%d, lastAccessTime=%d, needCheck=%s, checksum=%d]",
+                name, offset, size, method, compressedSize, blockSize, blockOffset, creationTime, lastModifiedTime, lastAccessTime, needCheck, checksum);
     }
 }
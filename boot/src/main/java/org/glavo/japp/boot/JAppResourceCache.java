@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.util.SizeUtils;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A size-bounded LRU cache of decompressed resources.
+ * <p>
+ * A resource is admitted only when it is read for the second time,
+ * so resources that are only read once (most class files) do not evict the frequently read ones.
+ * Cached buffers are read-only and shared, every hit returns a new view of the same buffer.
+ */
+public final class JAppResourceCache {
+
+    public static final String PROPERTY_SIZE = "org.glavo.japp.boot.cache.size";
+    public static final String PROPERTY_DIRECT = "org.glavo.japp.boot.cache.direct";
+
+    public static JAppResourceCache fromSystemProperties() {
+        String size = System.getProperty(PROPERTY_SIZE);
+        if (size == null) {
+            return null;
+        }
+
+        long maxBytes = SizeUtils.parseSize(size);
+        if (maxBytes <= 0) {
+            return null;
+        }
+
+        return new JAppResourceCache(maxBytes, Boolean.getBoolean(PROPERTY_DIRECT));
+    }
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final boolean direct;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Long, ByteBuffer> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Set<Long> doorkeeper = new HashSet<>();
+    private final int maxDoorkeeperSize;
+    private long currentBytes = 0L;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public JAppResourceCache(long maxBytes, boolean direct) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes: " + maxBytes);
+        }
+
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.max(1L, maxBytes / 4);
+        this.direct = direct;
+        this.maxDoorkeeperSize = (int) Math.min(1 << 16, Math.max(256, maxBytes / 1024));
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    // Resources are identified by their position in the data pool
+    private static Long keyOf(JAppResource resource) {
+        return resource.getOffset();
+    }
+
+    public ByteBuffer get(JAppResource resource) {
+        if (resource.getSize() > maxEntryBytes) {
+            return null;
+        }
+
+        ByteBuffer buffer;
+        lock.lock();
+        try {
+            buffer = entries.get(keyOf(resource));
+        } finally {
+            lock.unlock();
+        }
+
+        if (buffer != null) {
+            hitCount.increment();
+            return buffer.duplicate();
+        } else {
+            missCount.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Offers a freshly read resource to the cache.
+     *
+     * @return the buffer that should be handed to the caller, which is {@code data} if it was not admitted
+     */
+    public ByteBuffer put(JAppResource resource, ByteBuffer data) {
+        int size = data.remaining();
+        if (size == 0 || size > maxEntryBytes) {
+            return data;
+        }
+
+        Long key = keyOf(resource);
+
+        lock.lock();
+        try {
+            ByteBuffer existing = entries.get(key);
+            if (existing != null) {
+                return existing.duplicate();
+            }
+
+            if (doorkeeper.add(key)) {
+                if (doorkeeper.size() > maxDoorkeeperSize) {
+                    doorkeeper.clear();
+                }
+                return data;
+            }
+            doorkeeper.remove(key);
+        } finally {
+            lock.unlock();
+        }
+
+        ByteBuffer cached;
+        if (direct) {
+            cached = ByteBuffer.allocateDirect(size);
+            cached.put(data.duplicate());
+            cached.flip();
+            cached = cached.asReadOnlyBuffer();
+        } else {
+            cached = data.asReadOnlyBuffer();
+        }
+
+        lock.lock();
+        try {
+            ByteBuffer existing = entries.putIfAbsent(key, cached);
+            if (existing != null) {
+                return existing.duplicate();
+            }
+
+            currentBytes += size;
+            evict();
+        } finally {
+            lock.unlock();
+        }
+
+        return cached.duplicate();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Long, ByteBuffer>> it = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            ByteBuffer buffer = it.next().getValue();
+            it.remove();
+            currentBytes -= buffer.remaining();
+            evictionCount.increment();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            doorkeeper.clear();
+            currentBytes = 0L;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public long getCurrentBytes() {
+        lock.lock();
+        try {
+            return currentBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getEntryCount() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("JAppResourceCache[maxBytes=%d, direct=%s, currentBytes=%d, entries=%d, hits=%d, misses=%d, evictions=%d]",
+                maxBytes, direct, getCurrentBytes(), getEntryCount(), getHitCount(), getMissCount(), getEvictionCount());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A channel over a large compressed resource that decompresses it incrementally.
+ * <p>
+ * Moving forward skips the decompressed bytes, moving backward restarts decompression from the beginning.
+ */
+final class JAppResourceChannel implements SeekableByteChannel {
+    private final JAppReader reader;
+    private final JAppResource resource;
+
+    private InputStream input;
+    private long inputPosition;
+    private long position;
+    private byte[] transferBuffer;
+    private boolean closed;
+
+    JAppResourceChannel(JAppReader reader, JAppResource resource) {
+        this.reader = reader;
+        this.resource = resource;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Prepares {@link #input} to read from {@link #position}.
+     */
+    private void seekInput() throws IOException {
+        if (input != null && inputPosition > position) {
+            input.close();
+            input = null;
+        }
+
+        if (input == null) {
+            input = reader.openResource(resource);
+            inputPosition = 0;
+        }
+
+        while (inputPosition < position) {
+            long n = input.skip(position - inputPosition);
+            if (n <= 0) {
+                break;
+            }
+            inputPosition += n;
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position >= resource.getSize()) {
+            return -1;
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+
+        seekInput();
+
+        int total = 0;
+        while (dst.hasRemaining()) {
+            int n;
+            if (dst.hasArray()) {
+                n = input.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                if (n > 0) {
+                    dst.position(dst.position() + n);
+                }
+            } else {
+                if (transferBuffer == null) {
+                    transferBuffer = new byte[8192];
+                }
+                n = input.read(transferBuffer, 0, Math.min(dst.remaining(), transferBuffer.length));
+                if (n > 0) {
+                    dst.put(transferBuffer, 0, n);
+                }
+            }
+
+            if (n <= 0) {
+                break;
+            }
+
+            total += n;
+            inputPosition += n;
+            position += n;
+        }
+        return total == 0 ? -1 : total;
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Illegal position " + newPosition);
+        }
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return resource.getSize();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (input != null) {
+                input.close();
+                input = null;
+            }
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+}
@@ -25,7 +25,17 @@ public enum JAppResourceField {
 
     FILE_CREATE_TIME,
     FILE_LAST_MODIFIED_TIME,
-    FILE_LAST_ACCESS_TIME
+    FILE_LAST_ACCESS_TIME,
+
+    /**
+     * Decompressed size of the solid block containing the resource (8byte)
+     */
+    BLOCK_SIZE,
+
+    /**
+     * Offset of the resource in the decompressed solid block (8byte)
+     */
+    BLOCK_OFFSET
     ;
 
     private static final JAppResourceField[] FIELDS = values();
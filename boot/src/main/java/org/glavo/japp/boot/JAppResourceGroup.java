@@ -15,16 +15,93 @@
  */
 package org.glavo.japp.boot;
 
-import java.util.LinkedHashMap;
+import org.glavo.japp.CompressionMethod;
+import org.glavo.japp.boot.decompressor.ZstdDecompressorPool;
+import org.glavo.japp.util.ByteBufferUtils;
+import org.glavo.japp.util.XxHash64;
 
-public final class JAppResourceGroup extends LinkedHashMap<String, JAppResource> {
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A resource group in the boot metadata.
+ * <p>
+ * Only the header of the group is read with the boot metadata, the body is decoded on first access.
+ * Resources are looked up through a flat hash index over the decoded body instead of a map of decoded resources.
+ */
+public final class JAppResourceGroup {
 
     public static final byte MAGIC_NUMBER = (byte) 0xeb;
     public static final int HEADER_LENGTH = 24; // 1 + 1 + 2 + 4 + 4 + 4 + 8
 
+    public static JAppResourceGroup readFrom(ByteBuffer buffer, int index, ZstdDecompressorPool decompressors) throws IOException {
+        byte magic = buffer.get();
+        if (magic != MAGIC_NUMBER) {
+            throw new IOException(String.format("Wrong resource group magic: 0x%02x", magic));
+        }
+
+        CompressionMethod method = CompressionMethod.readFrom(buffer);
+
+        short reserved = buffer.getShort();
+        if (reserved != 0) {
+            throw new IOException("Reserved is not 0");
+        }
+
+        int uncompressedSize = buffer.getInt();
+        int compressedSize = buffer.getInt();
+        int resourcesCount = buffer.getInt();
+        long checksum = buffer.getLong();
+
+        if (method != CompressionMethod.NONE && method != CompressionMethod.ZSTD) {
+            throw new IOException("Unsupported compression method: " + method);
+        }
+
+        int bodyOffset = buffer.position();
+        ByteBuffer body = ByteBufferUtils.slice(buffer, bodyOffset, compressedSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(bodyOffset + compressedSize);
+
+        return new JAppResourceGroup(index, bodyOffset, method, uncompressedSize, resourcesCount, checksum, body, decompressors);
+    }
+
+    private final int index;
+    private final int bodyOffset;
+    private final CompressionMethod method;
+    private final int uncompressedSize;
+    private final int resourcesCount;
+    private final long checksum;
+    private final ByteBuffer body;
+    private final ZstdDecompressorPool decompressors;
+
+    private final List<JAppResourceGroup> overlays = new ArrayList<>();
+
     private String name;
 
-    public JAppResourceGroup() {
+    // The index of this group followed by the indexes of the overlays
+    private volatile Index[] layers;
+    private volatile List<JAppResource> mergedResources;
+
+    private JAppResourceGroup(int index, int bodyOffset,
+                              CompressionMethod method, int uncompressedSize, int resourcesCount, long checksum,
+                              ByteBuffer body, ZstdDecompressorPool decompressors) {
+        this.index = index;
+        this.bodyOffset = bodyOffset;
+        this.method = method;
+        this.uncompressedSize = uncompressedSize;
+        this.resourcesCount = resourcesCount;
+        this.checksum = checksum;
+        this.body = body;
+        this.decompressors = decompressors;
     }
 
     public void initName(String name) {
@@ -39,9 +116,346 @@ public final class JAppResourceGroup extends LinkedHashMap<String, JAppResource>
         return name;
     }
 
+    int getIndex() {
+        return index;
+    }
+
+    List<JAppResourceGroup> getOverlays() {
+        return overlays;
+    }
+
+    /**
+     * Returns the checksum of the uncompressed group body, which covers the name, size, offset and checksum of every resource.
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Returns the offset of the group body relative to the start of the boot metadata.
+     */
+    public int getBodyOffset() {
+        return bodyOffset;
+    }
+
+    /**
+     * Adds a group whose resources replace the resources of this group with the same name,
+     * e.g. a versioned directory of a multi-release jar.
+     */
+    public void addOverlay(JAppResourceGroup overlay) {
+        if (layers != null) {
+            throw new IllegalStateException("Group has been resolved");
+        }
+
+        overlays.add(overlay);
+    }
+
+    public boolean isResolved() {
+        return layers != null;
+    }
+
+    private Index readIndex() throws IOException {
+        ByteBuffer compressed = body.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        ByteBuffer uncompressed;
+        if (method == CompressionMethod.NONE) {
+            uncompressed = compressed;
+        } else {
+            uncompressed = ByteBuffer.allocate(uncompressedSize).order(ByteOrder.LITTLE_ENDIAN);
+            decompressors.decompress(compressed, uncompressed);
+            if (uncompressed.hasRemaining()) {
+                throw new IOException(String.format("Failed to decompress resource group at index %d", index));
+            }
+            uncompressed.flip();
+        }
+
+        long actualChecksum = XxHash64.hashByteBufferWithoutUpdate(uncompressed);
+        if (actualChecksum != checksum) {
+            throw new IOException(String.format(
+                    "Failed while verifying resource group at index %d (expected=%x, actual=%x)",
+                    index, checksum, actualChecksum
+            ));
+        }
+
+        return new Index(uncompressed, resourcesCount, index);
+    }
+
+    private Index[] layers() {
+        Index[] layers = this.layers;
+        if (layers != null) {
+            return layers;
+        }
+
+        synchronized (this) {
+            if (this.layers != null) {
+                return this.layers;
+            }
+
+            layers = new Index[overlays.size() + 1];
+            try {
+                layers[0] = readIndex();
+                for (int i = 0; i < overlays.size(); i++) {
+                    layers[i + 1] = overlays.get(i).readIndex();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return this.layers = layers;
+        }
+    }
+
+    public JAppResource get(String path) {
+        Index[] layers = layers();
+        int hash = path.hashCode();
+        for (int i = layers.length - 1; i >= 0; i--) {
+            Index layer = layers[i];
+            int entry = layer.find(hash, path);
+            if (entry >= 0) {
+                return layer.getResource(entry);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the resource at the given position of a group body without looking it up by path.
+     *
+     * @param layer {@code 0} for the body of this group, or the index of the overlay plus one
+     * @return the resource, or {@code null} if there is no such entry
+     */
+    JAppResource getResource(int layer, int entry) {
+        Index[] layers = layers();
+        if (layer < 0 || layer >= layers.length || entry < 0 || entry >= layers[layer].size()) {
+            return null;
+        }
+        return layers[layer].getResource(entry);
+    }
+
+    public Collection<JAppResource> getResources() {
+        Index[] layers = layers();
+        if (layers.length == 1) {
+            return layers[0];
+        }
+
+        List<JAppResource> resources = this.mergedResources;
+        if (resources == null) {
+            this.mergedResources = resources = Collections.unmodifiableList(mergeLayers(layers));
+        }
+        return resources;
+    }
+
+    // Same order as putting all layers into a LinkedHashMap one by one
+    private static List<JAppResource> mergeLayers(Index[] layers) {
+        List<JAppResource> result = new ArrayList<>();
+        for (int i = 0; i < layers.length; i++) {
+            Index layer = layers[i];
+
+            entries:
+            for (int entry = 0; entry < layer.size(); entry++) {
+                for (int j = 0; j < i; j++) {
+                    if (layers[j].find(layer, entry) >= 0) {
+                        continue entries;
+                    }
+                }
+
+                Index owner = layer;
+                int ownerEntry = entry;
+                for (int j = layers.length - 1; j > i; j--) {
+                    int e = layers[j].find(layer, entry);
+                    if (e >= 0) {
+                        owner = layers[j];
+                        ownerEntry = e;
+                        break;
+                    }
+                }
+                result.add(owner.getResource(ownerEntry));
+            }
+        }
+        return result;
+    }
+
     @Override
     public String toString() {
-        return getClass().getSimpleName() + super.toString();
+        return getClass().getSimpleName() + "[name=" + name + ", index=" + index + ", "
+               + (layers == null ? "<unresolved>" : getResources().toString()) + "]";
     }
 
+    /**
+     * An open addressing hash index over the raw resource records of a group body.
+     * <p>
+     * {@link JAppResource} instances are only created for resources that are actually looked up.
+     */
+    private static final class Index extends AbstractCollection<JAppResource> {
+        private static final int PATH_HASH_OFFSET = 4;
+
+        private final ByteBuffer data;
+        private final int[] offsets;
+
+        // Entry index + 1, 0 means empty
+        private final int[] table;
+        private final AtomicReferenceArray<JAppResource> resources;
+
+        private final int groupIndex;
+
+        Index(ByteBuffer data, int count, int groupIndex) throws IOException {
+            this.data = data;
+            this.offsets = new int[count];
+            this.table = new int[tableSize(count)];
+            this.resources = new AtomicReferenceArray<>(count);
+            this.groupIndex = groupIndex;
+
+            int mask = table.length - 1;
+            int position = data.position();
+            for (int i = 0; i < count; i++) {
+                offsets[i] = position;
+
+                int slot = spread(data.getInt(position + PATH_HASH_OFFSET)) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = i + 1;
+
+                position = JAppResource.skip(data, position);
+            }
+
+            if (position != data.limit()) {
+                throw new IOException(String.format("Unexpected data at the end of resource group at index %d", groupIndex));
+            }
+        }
+
+        private static int tableSize(int count) {
+            int size = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+            return Math.max(size, 2);
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private int pathLength(int entry) {
+            return Short.toUnsignedInt(data.getShort(offsets[entry] + 2));
+        }
+
+        private int pathHash(int entry) {
+            return data.getInt(offsets[entry] + PATH_HASH_OFFSET);
+        }
+
+        private boolean pathEquals(int entry, String path) {
+            int length = pathLength(entry);
+            int start = offsets[entry] + JAppResource.HEADER_LENGTH;
+
+            if (length == path.length()) {
+                for (int i = 0; i < length; i++) {
+                    char ch = path.charAt(i);
+                    if (ch >= 0x80) {
+                        return pathEquals(entry, path.getBytes(StandardCharsets.UTF_8));
+                    }
+                    if (data.get(start + i) != (byte) ch) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            // The UTF-8 encoding of a string is never shorter than the string
+            return length > path.length() && pathEquals(entry, path.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private boolean pathEquals(int entry, byte[] path) {
+            int length = pathLength(entry);
+            if (length != path.length) {
+                return false;
+            }
+
+            int start = offsets[entry] + JAppResource.HEADER_LENGTH;
+            for (int i = 0; i < length; i++) {
+                if (data.get(start + i) != path[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean pathEquals(int entry, Index other, int otherEntry) {
+            int length = pathLength(entry);
+            if (length != other.pathLength(otherEntry)) {
+                return false;
+            }
+
+            int start = offsets[entry] + JAppResource.HEADER_LENGTH;
+            int otherStart = other.offsets[otherEntry] + JAppResource.HEADER_LENGTH;
+            for (int i = 0; i < length; i++) {
+                if (data.get(start + i) != other.data.get(otherStart + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int find(int hash, String path) {
+            int mask = table.length - 1;
+            for (int slot = spread(hash) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                int entry = table[slot] - 1;
+                if (pathHash(entry) == hash && pathEquals(entry, path)) {
+                    return entry;
+                }
+            }
+            return -1;
+        }
+
+        int find(Index other, int otherEntry) {
+            int hash = other.pathHash(otherEntry);
+            int mask = table.length - 1;
+            for (int slot = spread(hash) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                int entry = table[slot] - 1;
+                if (pathHash(entry) == hash && pathEquals(entry, other, otherEntry)) {
+                    return entry;
+                }
+            }
+            return -1;
+        }
+
+        JAppResource getResource(int entry) {
+            JAppResource resource = resources.get(entry);
+            if (resource != null) {
+                return resource;
+            }
+
+            ByteBuffer buffer = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(offsets[entry]);
+            try {
+                resource = JAppResource.readFrom(buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(String.format("Failed to read resource %d of resource group at index %d", entry, groupIndex), e);
+            }
+
+            return resources.compareAndSet(entry, null, resource) ? resource : resources.get(entry);
+        }
+
+        @Override
+        public Iterator<JAppResource> iterator() {
+            return new Iterator<JAppResource>() {
+                private int entry = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return entry < offsets.length;
+                }
+
+                @Override
+                public JAppResource next() {
+                    if (entry >= offsets.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return getResource(entry++);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return offsets.length;
+        }
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.boot.decompressor.zstd.ZstdInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streams a compressed resource without materializing it.
+ * The checksum and size of the resource are checked when the end of the stream is reached.
+ */
+final class JAppResourceInputStream extends InputStream {
+    private final JAppResource resource;
+    private final ZstdInputStream input;
+    private final boolean verify;
+
+    private long position;
+    private boolean finished;
+
+    JAppResourceInputStream(JAppResource resource, ZstdInputStream input, boolean verify) {
+        this.resource = resource;
+        this.input = input;
+        this.verify = verify;
+    }
+
+    private void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+
+        finished = true;
+        if (position != resource.getSize()) {
+            throw new IOException(String.format(
+                    "Size mismatch of resource %s (expected=%d, actual=%d)",
+                    resource.getName(), resource.getSize(), position
+            ));
+        }
+        if (verify) {
+            JAppReader.checkResource(resource, input.getContentChecksum());
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = input.read();
+        if (b < 0) {
+            finish();
+        } else {
+            position++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = input.read(b, off, len);
+        if (n < 0) {
+            finish();
+        } else {
+            position += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = input.skip(n);
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return input.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.boot.decompressor.zstd.MalformedInputException;
+import org.glavo.japp.boot.decompressor.zstd.ZstdSeekTable;
+import org.glavo.japp.util.XxHash64;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.stream.IntStream;
+
+/**
+ * A channel over a resource packed in the zstd seekable format.
+ * <p>
+ * Only the frames that are touched by a read are decompressed.
+ * Frames fully covered by a read are decompressed directly into the destination, in parallel if there are several of them.
+ */
+final class JAppSeekableResourceChannel implements SeekableByteChannel {
+    private final JAppReader reader;
+    private final JAppResource resource;
+    private final ZstdSeekTable seekTable;
+    private final boolean verify;
+
+    private long position;
+    private boolean closed;
+
+    // The last frame decompressed for a partial read
+    private int cachedFrame = -1;
+    private ByteBuffer cachedFrameData;
+
+    JAppSeekableResourceChannel(JAppReader reader, JAppResource resource, ZstdSeekTable seekTable, boolean verify) {
+        this.reader = reader;
+        this.resource = resource;
+        this.seekTable = seekTable;
+        this.verify = verify && seekTable.hasChecksum();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length);
+        slice.position(offset);
+        return slice;
+    }
+
+    /**
+     * Decompresses the frame into the remaining space of the output.
+     */
+    private void decodeFrame(int frame, ByteBuffer output) throws IOException {
+        int size = seekTable.getDecompressedSize(frame);
+        int start = output.position();
+
+        ByteBuffer compressed = reader.readCompressedTemporary(resource, seekTable.getCompressedOffset(frame), seekTable.getCompressedSize(frame));
+        try {
+            if (output.hasRemaining()) {
+                reader.decompressZstd(compressed, output);
+            }
+
+            int n = output.position() - start;
+            if (n != size) {
+                throw new IOException(String.format(
+                        "Size mismatch of frame %d of resource %s (expected=%d, actual=%d)",
+                        frame, resource.getName(), size, n
+                ));
+            }
+        } catch (MalformedInputException e) {
+            throw new IOException(String.format("Failed to decompress frame %d of resource %s", frame, resource.getName()), e);
+        } finally {
+            reader.releaseTemporary(compressed);
+        }
+
+        if (verify) {
+            int checksum = (int) XxHash64.hashByteBufferWithoutUpdate(slice(output, start, size));
+            if (checksum != seekTable.getChecksum(frame)) {
+                throw new IOException(String.format(
+                        "Failed while verifying frame %d of resource %s (expected=%x, actual=%x)",
+                        frame, resource.getName(), seekTable.getChecksum(frame), checksum
+                ));
+            }
+        }
+    }
+
+    /**
+     * Decompresses the frames in {@code [first, end)} directly into the destination.
+     */
+    private void decodeFrames(int first, int end, ByteBuffer dst) throws IOException {
+        int base = dst.position();
+        if (end - first == 1) {
+            decodeFrame(first, slice(dst, base, seekTable.getDecompressedSize(first)));
+        } else {
+            long firstOffset = seekTable.getDecompressedOffset(first);
+            try {
+                IntStream.range(first, end).parallel().forEach(frame -> {
+                    int offset = base + (int) (seekTable.getDecompressedOffset(frame) - firstOffset);
+                    try {
+                        decodeFrame(frame, slice(dst, offset, seekTable.getDecompressedSize(frame)));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        dst.position(base + (int) (seekTable.getDecompressedOffset(end) - seekTable.getDecompressedOffset(first)));
+    }
+
+    private ByteBuffer getFrameData(int frame) throws IOException {
+        if (cachedFrame != frame) {
+            int size = seekTable.getDecompressedSize(frame);
+            if (cachedFrameData == null || cachedFrameData.capacity() < size) {
+                cachedFrameData = ByteBuffer.allocate(size);
+            }
+
+            cachedFrame = -1;
+            cachedFrameData.clear().limit(size);
+            decodeFrame(frame, cachedFrameData);
+            cachedFrameData.flip();
+            cachedFrame = frame;
+        }
+        return cachedFrameData;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+
+        long size = seekTable.getDecompressedSize();
+        if (position >= size) {
+            return -1;
+        }
+
+        int total = 0;
+        while (dst.hasRemaining() && position < size) {
+            int frame = seekTable.findFrame(position);
+            long frameOffset = seekTable.getDecompressedOffset(frame);
+
+            int n;
+            if (position == frameOffset && dst.remaining() >= seekTable.getDecompressedSize(frame)) {
+                int end = frame + 1;
+                while (end < seekTable.getFrameCount()
+                       && seekTable.getDecompressedOffset(end + 1) - frameOffset <= dst.remaining()) {
+                    end++;
+                }
+
+                n = (int) (seekTable.getDecompressedOffset(end) - frameOffset);
+                decodeFrames(frame, end, dst);
+            } else {
+                ByteBuffer data = getFrameData(frame);
+                int offset = (int) (position - frameOffset);
+                n = Math.min(dst.remaining(), data.limit() - offset);
+                dst.put(slice(data, offset, n));
+            }
+
+            position += n;
+            total += n;
+        }
+        return total;
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Illegal position " + newPosition);
+        }
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return seekTable.getDecompressedSize();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        cachedFrameData = null;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+}
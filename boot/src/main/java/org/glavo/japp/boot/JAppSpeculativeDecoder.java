@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.CompressionMethod;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decompresses the resources that are likely to be read next on a small pool of worker threads.
+ * <p>
+ * The packer records the resources of the access profile in the order they were read in the training run,
+ * and only those entries are looked up, so the other resources and groups stay undecoded.
+ * The workers decode them in that order, staying at most {@link #WINDOW} resources ahead of the latest resource
+ * the reader has asked for, and the reader takes the decoded bytes instead of decoding them itself.
+ */
+final class JAppSpeculativeDecoder {
+
+    public static final String PROPERTY_THREADS = "org.glavo.japp.boot.speculative.threads";
+
+    private static final int WINDOW = 256;
+
+    static int threadsFromSystemProperties() {
+        String value = System.getProperty(PROPERTY_THREADS);
+        if (value == null) {
+            return Math.min(2, Runtime.getRuntime().availableProcessors() - 1);
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number of threads: " + value, e);
+        }
+    }
+
+    private final class Task extends FutureTask<ByteBuffer> {
+        final int index;
+        final JAppResource resource;
+
+        Task(int index, JAppResource resource) {
+            super(() -> reader.decodeAndCheck(resource));
+            this.index = index;
+            this.resource = resource;
+        }
+    }
+
+    private final JAppReader reader;
+    private final int[] profile;
+
+    private volatile Task[] tasks;
+    private final Map<JAppResource, Task> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTask = new AtomicInteger();
+
+    // Guarded by this
+    private int requested = -1;
+    private int dropped = 0;
+
+    /**
+     * @param profile the profiled resources in load order, as returned by {@link JAppBootMetadata#getProfile()}
+     */
+    JAppSpeculativeDecoder(JAppReader reader, int[] profile) {
+        this.reader = reader;
+        this.profile = profile;
+    }
+
+    int pendingCount() {
+        return pending.size();
+    }
+
+    void start(int threads) {
+        Thread thread = new Thread(() -> {
+            try {
+                collectTasks();
+            } catch (UncheckedIOException e) {
+                return;
+            }
+
+            for (int i = 1; i < threads; i++) {
+                Thread worker = new Thread(this::runTasks, "JApp Speculative Decoder-" + i);
+                worker.setDaemon(true);
+                worker.start();
+            }
+            runTasks();
+        }, "JApp Speculative Decoder-0");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void collectGroups(Map<Integer, JAppResourceGroup> owners, Map<Integer, Integer> layers,
+                                      Map<String, JAppResourceGroup> root) {
+        for (JAppResourceGroup group : root.values()) {
+            owners.put(group.getIndex(), group);
+            layers.put(group.getIndex(), 0);
+
+            List<JAppResourceGroup> overlays = group.getOverlays();
+            for (int i = 0; i < overlays.size(); i++) {
+                owners.put(overlays.get(i).getIndex(), group);
+                layers.put(overlays.get(i).getIndex(), i + 1);
+            }
+        }
+    }
+
+    void collectTasks() {
+        // The group holding each body and the layer of the body in that group
+        Map<Integer, JAppResourceGroup> owners = new HashMap<>();
+        Map<Integer, Integer> layers = new HashMap<>();
+        collectGroups(owners, layers, reader.getRoot(JAppResourceRoot.MODULES));
+        collectGroups(owners, layers, reader.getRoot(JAppResourceRoot.CLASSPATH));
+
+        // Only the groups holding profiled resources are decoded, and only the profiled entries are materialized
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i + 1 < profile.length; i += 2) {
+            JAppResourceGroup owner = owners.get(profile[i]);
+            if (owner == null) {
+                // The group is not used by this launch
+                continue;
+            }
+
+            JAppResource resource = owner.getResource(layers.get(profile[i]), profile[i + 1]);
+            if (resource != null
+                && resource.getMethod() != CompressionMethod.NONE
+                && resource.getSize() > 0 && resource.getSize() < JAppReader.STREAMING_THRESHOLD
+                && !pending.containsKey(resource)) {
+                Task task = new Task(tasks.size(), resource);
+                tasks.add(task);
+                pending.put(resource, task);
+            }
+        }
+        this.tasks = tasks.toArray(new Task[0]);
+    }
+
+    private synchronized void awaitWindow(int index) throws InterruptedException {
+        while (index > requested + WINDOW && reader.isOpen()) {
+            wait();
+        }
+    }
+
+    void runTasks() {
+        Task[] tasks = this.tasks;
+        int index;
+        while ((index = nextTask.getAndIncrement()) < tasks.length) {
+            try {
+                awaitWindow(index);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (!reader.isOpen()) {
+                return;
+            }
+
+            Task task = tasks[index];
+            if (task != null) {
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * Drops the results of the resources that the reader has skipped, so they do not pile up in memory.
+     */
+    private synchronized void onRequest(int index) {
+        if (index <= requested) {
+            return;
+        }
+
+        requested = index;
+        Task[] tasks = this.tasks;
+        for (; dropped < index - WINDOW; dropped++) {
+            Task task = tasks[dropped];
+            if (task != null) {
+                tasks[dropped] = null;
+                pending.remove(task.resource, task);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Takes the decoded content of the resource, decoding it on the current thread if no worker has started on it yet.
+     *
+     * @return the decoded content, or {@code null} if the resource is not handled by this decoder
+     */
+    ByteBuffer take(JAppResource resource) throws IOException {
+        if (tasks == null) {
+            return null;
+        }
+
+        Task task = pending.remove(resource);
+        if (task == null) {
+            return null;
+        }
+
+        onRequest(task.index);
+
+        // Runs the task on the current thread if it has not been started, otherwise waits for it
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        } finally {
+            synchronized (this) {
+                if (tasks[task.index] == task) {
+                    tasks[task.index] = null;
+                }
+            }
+        }
+    }
+}
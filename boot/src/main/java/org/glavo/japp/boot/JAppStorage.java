@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Provides access to the data region of a JApp file.
+ */
+public interface JAppStorage extends Closeable {
+
+    String PROPERTY_STORAGE = "org.glavo.japp.boot.storage";
+
+    enum Kind {
+        /**
+         * Read small files into memory and map large files.
+         */
+        AUTO,
+        /**
+         * Map the data region, so that the page cache is shared by all processes running the same file.
+         */
+        MMAP,
+        /**
+         * Read the whole data region into direct memory on startup.
+         */
+        READ,
+        /**
+         * Read each resource on demand with positional reads into pooled direct buffers.
+         */
+        PREAD;
+
+        public static Kind fromSystemProperties() {
+            String value = System.getProperty(PROPERTY_STORAGE);
+            if (value == null) {
+                return AUTO;
+            }
+
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown storage kind: " + value, e);
+            }
+        }
+    }
+
+    int READ_ALL_THRESHOLD = 16 * 1024 * 1024;
+
+    /**
+     * Returns the kind of storage that {@link #open(Kind, FileChannel, long, long)} actually uses for a data region of the given size.
+     */
+    static Kind resolve(Kind kind, long size) {
+        if (kind == Kind.AUTO) {
+            kind = size < READ_ALL_THRESHOLD ? Kind.READ : Kind.MMAP;
+        }
+
+        // A single direct buffer cannot hold more than 2 GiB
+        if (kind == Kind.READ && size > Integer.MAX_VALUE - 8) {
+            kind = Kind.MMAP;
+        }
+
+        return kind;
+    }
+
+    /**
+     * Opens the storage. The channel is owned by the returned storage if it keeps using it,
+     * otherwise it is closed before this method returns.
+     */
+    static JAppStorage open(Kind kind, FileChannel channel, long position, long size) throws IOException {
+        kind = resolve(kind, size);
+
+        try {
+            switch (kind) {
+                case MMAP:
+                    return JAppMappedStorage.map(channel, position, size);
+                case READ: {
+                    ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+                    IOUtils.readFully(channel.position(position), buffer);
+                    buffer.flip();
+                    return new JAppMappedStorage(buffer.asReadOnlyBuffer());
+                }
+                case PREAD: {
+                    JAppStorage storage = new JAppChannelStorage(channel, position, size, new DirectBufferPool());
+                    channel = null;
+                    return storage;
+                }
+                default:
+                    throw new AssertionError("Kind: " + kind);
+            }
+        } finally {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    long size();
+
+    /**
+     * Reads the given range. The returned buffer may be kept by the caller indefinitely.
+     */
+    ByteBuffer read(long offset, int length) throws IOException;
+
+    /**
+     * Reads the given range into a buffer that is only used until it is passed to {@link #release(ByteBuffer)}.
+     */
+    default ByteBuffer readTemporary(long offset, int length) throws IOException {
+        return read(offset, length);
+    }
+
+    default void release(ByteBuffer buffer) {
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+}
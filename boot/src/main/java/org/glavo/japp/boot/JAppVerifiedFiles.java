@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.util.XxHash64;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+/**
+ * Records JApp files whose resources have all been verified.
+ * <p>
+ * A file is identified by its real path, size, last modified time and the checksum of its boot metadata.
+ * Each verified file is recorded as a small marker file in the cache directory.
+ */
+public final class JAppVerifiedFiles {
+
+    public static final String PROPERTY_CACHE_DIRECTORY = "org.glavo.japp.boot.checksum.cache";
+
+    /**
+     * @return the records in the configured cache directory, or {@code null} if it is not configured
+     */
+    public static JAppVerifiedFiles fromSystemProperties() {
+        String dir = System.getProperty(PROPERTY_CACHE_DIRECTORY);
+        return dir == null || dir.isEmpty() ? null : new JAppVerifiedFiles(Paths.get(dir));
+    }
+
+    private final Path directory;
+
+    public JAppVerifiedFiles(Path directory) {
+        this.directory = directory;
+    }
+
+    public static String fileKey(Path file, long metadataChecksum) throws IOException {
+        Path realPath = file.toRealPath();
+        BasicFileAttributes attributes = Files.readAttributes(realPath, BasicFileAttributes.class);
+        return String.format("%s\n%d\n%d\n%016x\n",
+                realPath, attributes.size(), attributes.lastModifiedTime().toMillis(), metadataChecksum);
+    }
+
+    private Path markerFile(byte[] key) {
+        return directory.resolve(String.format("%016x.verified", XxHash64.hash(key)));
+    }
+
+    public boolean isVerified(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        try {
+            return Arrays.equals(keyBytes, Files.readAllBytes(markerFile(keyBytes)));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void markVerified(String key) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "marker", ".tmp");
+        try {
+            Files.write(temp, keyBytes);
+            Files.move(temp, markerFile(keyBytes), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -22,5 +22,19 @@ import java.nio.ByteBuffer;
 public interface DecompressContext {
     ByteArrayPool getPool();
 
+    /**
+     * Implementations must allow this method to be called concurrently from multiple threads.
+     */
     void decompressZstd(ByteBuffer input, ByteBuffer output);
+
+    /**
+     * Decompresses the remaining bytes of the input straight into the output array.
+     *
+     * @return the number of bytes written to the output
+     */
+    default int decompressZstd(ByteBuffer input, byte[] output, int outputOffset, int maxOutputLength) {
+        ByteBuffer outputBuffer = ByteBuffer.wrap(output, outputOffset, maxOutputLength);
+        decompressZstd(input, outputBuffer);
+        return outputBuffer.position() - outputOffset;
+    }
 }
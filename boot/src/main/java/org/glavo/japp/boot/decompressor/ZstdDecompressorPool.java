@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot.decompressor;
+
+import org.glavo.japp.boot.decompressor.zstd.ZstdDictionary;
+import org.glavo.japp.boot.decompressor.zstd.ZstdFrameDecompressor;
+import org.glavo.japp.util.MemoryAccess;
+
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.glavo.japp.util.MemoryAccess.ARRAY_BYTE_BASE_OFFSET;
+
+/**
+ * A lock-free pool of {@link ZstdFrameDecompressor}.
+ * <p>
+ * Decompressors are not thread-safe, so each decompression borrows one from the pool.
+ * When the pool is empty, a new decompressor is created; when it is full, the returned decompressor is dropped.
+ */
+public final class ZstdDecompressorPool {
+
+    private static final int DEFAULT_CAPACITY = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private final AtomicReferenceArray<ZstdFrameDecompressor> slots;
+
+    private volatile ZstdDictionary[] dictionaries = new ZstdDictionary[0];
+
+    public ZstdDecompressorPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ZstdDecompressorPool(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    /**
+     * Sets the dictionaries available to the decompressors acquired from this pool.
+     */
+    public void setDictionaries(ZstdDictionary[] dictionaries) {
+        this.dictionaries = dictionaries.clone();
+    }
+
+    private int startIndex() {
+        // Spread threads over the slots to reduce CAS collisions
+        @SuppressWarnings("deprecation")
+        long id = Thread.currentThread().getId();
+        return (int) (id % slots.length());
+    }
+
+    public ZstdFrameDecompressor acquire() {
+        int length = slots.length();
+        int start = startIndex();
+        for (int i = 0; i < length; i++) {
+            int index = (start + i) % length;
+            if (slots.get(index) != null) {
+                ZstdFrameDecompressor decompressor = slots.getAndSet(index, null);
+                if (decompressor != null) {
+                    decompressor.setDictionaries(dictionaries);
+                    return decompressor;
+                }
+            }
+        }
+
+        ZstdFrameDecompressor decompressor = new ZstdFrameDecompressor();
+        decompressor.setDictionaries(dictionaries);
+        return decompressor;
+    }
+
+    public void release(ZstdFrameDecompressor decompressor) {
+        int length = slots.length();
+        int start = startIndex();
+        for (int i = 0; i < length; i++) {
+            int index = (start + i) % length;
+            if (slots.get(index) == null && slots.compareAndSet(index, null, decompressor)) {
+                return;
+            }
+        }
+    }
+
+    public int decompress(ByteBuffer input, ByteBuffer output) {
+        ZstdFrameDecompressor decompressor = acquire();
+        try {
+            return decompressor.decompress(input, output);
+        } finally {
+            release(decompressor);
+        }
+    }
+
+    /**
+     * Decompresses the remaining bytes of the input, which can be a heap or direct buffer,
+     * without allocating any intermediate buffer.
+     */
+    public int decompress(ByteBuffer input, byte[] output, int outputOffset, int maxOutputLength) {
+        Objects.checkFromIndexSize(outputOffset, maxOutputLength, output.length);
+
+        Object inputBase;
+        long inputBaseAddress;
+        if (input.hasArray()) {
+            inputBase = input.array();
+            inputBaseAddress = ARRAY_BYTE_BASE_OFFSET + input.arrayOffset();
+        } else {
+            inputBase = null;
+            inputBaseAddress = MemoryAccess.getDirectBufferAddress(input);
+        }
+
+        long outputAddress = ARRAY_BYTE_BASE_OFFSET + outputOffset;
+
+        ZstdFrameDecompressor decompressor = acquire();
+        try {
+            int n = decompressor.decompress(
+                    inputBase, inputBaseAddress + input.position(), inputBaseAddress + input.limit(),
+                    output, outputAddress, outputAddress + maxOutputLength);
+            input.position(input.limit());
+            return n;
+        } finally {
+            release(decompressor);
+            Reference.reachabilityFence(input);
+        }
+    }
+
+    public int decompress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int maxOutputLength) {
+        ZstdFrameDecompressor decompressor = acquire();
+        try {
+            return decompressor.decompress(input, inputOffset, inputLength, output, outputOffset, maxOutputLength);
+        } finally {
+            release(decompressor);
+        }
+    }
+}
@@ -16,80 +16,282 @@
 package org.glavo.japp.boot.decompressor.classfile;
 
 import org.glavo.japp.CompressionMethod;
-import org.glavo.japp.boot.decompressor.zstd.ZstdFrameDecompressor;
+import org.glavo.japp.boot.decompressor.ZstdDecompressorPool;
+import org.glavo.japp.util.CompressedNumber;
+import org.glavo.japp.util.MemoryAccess;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * The pool is split into independently compressed chunks, each chunk is decoded when it is first referenced.
+ * <p>
+ * Uncompressed chunks are read straight from the metadata buffer without copying.
+ */
 public final class ByteArrayPool {
     public static final byte MAGIC_NUMBER = (byte) 0xf0;
 
-    private final byte[] bytes;
+    public static final int CHUNK_HEADER_SIZE = 16;
+
+    private final ZstdDecompressorPool decompressors;
+
+    // The index of the first entry of each chunk
+    private final int[] chunkStarts;
+    private final CompressionMethod[] chunkMethods;
+    private final int[] chunkSizes;
+    private final ByteBuffer[] chunkData;
+    private final AtomicReferenceArray<ByteBuffer> chunks;
+
+    // The offset in the chunk and the size of each entry
     private final long[] offsetAndSize;
 
-    private ByteArrayPool(byte[] bytes, long[] offsetAndSize) {
-        this.bytes = bytes;
+    private ByteArrayPool(ZstdDecompressorPool decompressors,
+                          int[] chunkStarts, CompressionMethod[] chunkMethods, int[] chunkSizes, ByteBuffer[] chunkData,
+                          long[] offsetAndSize) {
+        this.decompressors = decompressors;
+        this.chunkStarts = chunkStarts;
+        this.chunkMethods = chunkMethods;
+        this.chunkSizes = chunkSizes;
+        this.chunkData = chunkData;
+        this.chunks = new AtomicReferenceArray<>(chunkStarts.length);
         this.offsetAndSize = offsetAndSize;
+
+        for (int i = 0; i < chunkMethods.length; i++) {
+            if (chunkMethods[i] == CompressionMethod.NONE) {
+                chunks.set(i, chunkData[i]);
+            }
+        }
     }
 
-    public static ByteArrayPool readFrom(ByteBuffer buffer, ZstdFrameDecompressor decompressor) throws IOException {
+    public static ByteArrayPool readFrom(ByteBuffer buffer, ZstdDecompressorPool decompressors) throws IOException {
         byte magic = buffer.get();
         if (magic != MAGIC_NUMBER) {
             throw new IOException(String.format("Wrong boot magic: 0x%02x", Byte.toUnsignedInt(magic)));
         }
 
-        CompressionMethod compressionMethod = CompressionMethod.readFrom(buffer);
-
-        short reserved = buffer.getShort();
-        if (reserved != 0) {
+        byte reserved0 = buffer.get();
+        short reserved1 = buffer.getShort();
+        if (reserved0 != 0 || reserved1 != 0) {
             throw new IOException("Reserved is not zero");
         }
 
         int count = buffer.getInt();
-        int uncompressedBytesSize = buffer.getInt();
-        int compressedBytesSize = buffer.getInt();
+        int chunkCount = buffer.getInt();
+
+        int[] chunkStarts = new int[chunkCount];
+        CompressionMethod[] chunkMethods = new CompressionMethod[chunkCount];
+        int[] chunkSizes = new int[chunkCount];
+        int[] chunkCompressedSizes = new int[chunkCount];
+
+        int start = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            CompressionMethod method = CompressionMethod.readFrom(buffer);
+            if (method != CompressionMethod.NONE && method != CompressionMethod.ZSTD) {
+                throw new IOException("Unsupported compression method: " + method);
+            }
+
+            byte chunkReserved0 = buffer.get();
+            short chunkReserved1 = buffer.getShort();
+            if (chunkReserved0 != 0 || chunkReserved1 != 0) {
+                throw new IOException("Reserved is not zero");
+            }
+
+            int entryCount = buffer.getInt();
+            int size = buffer.getInt();
+            int compressedSize = buffer.getInt();
+            if (entryCount <= 0 || size < 0 || compressedSize < 0
+                    || method == CompressionMethod.NONE && size != compressedSize) {
+                throw new IOException(String.format("Invalid chunk %d: entries=%d, size=%d, compressed size=%d",
+                        i, entryCount, size, compressedSize));
+            }
+
+            chunkStarts[i] = start;
+            chunkMethods[i] = method;
+            chunkSizes[i] = size;
+            chunkCompressedSizes[i] = compressedSize;
+            start += entryCount;
+        }
+
+        if (start != count) {
+            throw new IOException(String.format("Chunks contain %d entries, expected %d", start, count));
+        }
 
         long[] offsetAndSize = new long[count];
 
+        int chunk = -1;
         int offset = 0;
         for (int i = 0; i < count; i++) {
+            if (chunk + 1 < chunkCount && chunkStarts[chunk + 1] == i) {
+                chunk++;
+                offset = 0;
+            }
+
             int s = Short.toUnsignedInt(buffer.getShort());
             offsetAndSize[i] = (((long) s) << 32) | (long) offset;
             offset += s;
+
+            if (offset > chunkSizes[chunk]) {
+                throw new IOException(String.format("Entry %d is out of chunk %d", i, chunk));
+            }
         }
 
-        byte[] compressedBytes = new byte[compressedBytesSize];
-        buffer.get(compressedBytes);
-
-        byte[] uncompressedBytes;
-        if (compressionMethod == CompressionMethod.NONE) {
-            uncompressedBytes = compressedBytes;
-        } else {
-            uncompressedBytes = new byte[uncompressedBytesSize];
-            if (compressionMethod == CompressionMethod.ZSTD) {
-                decompressor.decompress(compressedBytes, 0, compressedBytesSize, uncompressedBytes, 0, uncompressedBytesSize);
-            } else {
-                throw new IOException("Unsupported compression method: " + compressionMethod);
+        ByteBuffer[] chunkData = new ByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            int limit = buffer.position() + chunkCompressedSizes[i];
+            ByteBuffer data = buffer.duplicate();
+            data.limit(limit);
+            chunkData[i] = data.slice();
+            buffer.position(limit);
+        }
+
+        return new ByteArrayPool(decompressors, chunkStarts, chunkMethods, chunkSizes, chunkData, offsetAndSize);
+    }
+
+    private ByteBuffer getChunk(int index) {
+        int chunk = Arrays.binarySearch(chunkStarts, index);
+        if (chunk < 0) {
+            chunk = -chunk - 2;
+        }
+
+        ByteBuffer res = chunks.get(chunk);
+        if (res == null) {
+            res = decodeChunk(chunk);
+            if (!chunks.compareAndSet(chunk, null, res)) {
+                res = chunks.get(chunk);
             }
         }
+        return res;
+    }
 
-        return new ByteArrayPool(uncompressedBytes, offsetAndSize);
+    private ByteBuffer decodeChunk(int chunk) {
+        byte[] bytes = new byte[chunkSizes[chunk]];
+        int n = decompressors.decompress(chunkData[chunk].duplicate(), ByteBuffer.wrap(bytes));
+        if (n != bytes.length) {
+            throw new UncheckedIOException(new IOException(String.format(
+                    "Chunk %d decompressed to %d bytes, expected %d", chunk, n, bytes.length)));
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    public int getChunkCount() {
+        return chunkStarts.length;
+    }
+
+    /**
+     * Returns the number of chunks that have been decoded or can be read without decoding.
+     */
+    public int getAvailableChunkCount() {
+        int n = 0;
+        for (int i = 0; i < chunks.length(); i++) {
+            if (chunks.get(i) != null) {
+                n++;
+            }
+        }
+        return n;
     }
 
-    public ByteBuffer get(int index) {
-        long l = offsetAndSize[index];
+    private static Object chunkBase(ByteBuffer chunk) {
+        return chunk.hasArray() ? chunk.array() : null;
+    }
+
+    private static long chunkAddress(ByteBuffer chunk) {
+        return chunk.hasArray()
+                ? MemoryAccess.ARRAY_BYTE_BASE_OFFSET + chunk.arrayOffset()
+                : MemoryAccess.getDirectBufferAddress(chunk);
+    }
+
+    private long entry(int index) throws IOException {
+        if (index < 0 || index >= offsetAndSize.length) {
+            throw new IOException("Invalid pool index: " + index);
+        }
+        return offsetAndSize[index];
+    }
+
+    private static void checkOutput(byte[] output, int outputOffset, int size) throws IOException {
+        if (outputOffset < 0 || size > output.length - outputOffset) {
+            throw new IOException("Output overflow");
+        }
+    }
+
+    /**
+     * Copies the entry into the output array without allocating.
+     *
+     * @return the size of the entry
+     */
+    public int get(int index, byte[] output, int outputOffset) throws IOException {
+        long l = entry(index);
         int offset = (int) (l & 0xffff_ffffL);
         int size = (int) (l >>> 32);
 
-        return ByteBuffer.wrap(bytes, offset, size);
+        checkOutput(output, outputOffset, size);
+
+        ByteBuffer chunk = getChunk(index);
+        MemoryAccess.copyMemory(chunkBase(chunk), chunkAddress(chunk) + offset,
+                output, MemoryAccess.ARRAY_BYTE_BASE_OFFSET + outputOffset, size);
+        Reference.reachabilityFence(chunk);
+        return size;
     }
 
-    public int get(int index, ByteBuffer output) {
-        long l = offsetAndSize[index];
+    /**
+     * Expands an encoded descriptor or signature into the output array without allocating.
+     * Each {@code 'L'} in the entry is followed by the indices of a package name and a class name.
+     *
+     * @param descriptor whether the entry is a descriptor, in which the {@code ';'} after each class name is implicit
+     * @return the number of bytes written to the output
+     */
+    public int getEncoded(int index, byte[] output, int outputOffset, boolean descriptor) throws IOException {
+        long l = entry(index);
         int offset = (int) (l & 0xffff_ffffL);
         int size = (int) (l >>> 32);
 
-        output.put(bytes, offset, size);
-        return size;
+        ByteBuffer chunk = getChunk(index);
+        Object base = chunkBase(chunk);
+        long address = chunkAddress(chunk) + offset;
+        long limit = address + size;
+
+        int out = outputOffset;
+        try {
+            while (address < limit) {
+                byte b = MemoryAccess.getByte(base, address++);
+                checkOutput(output, out, 1);
+                output[out++] = b;
+
+                if (b == 'L') {
+                    long packageIndex = CompressedNumber.getIntAndLength(base, address, limit);
+                    if (packageIndex < 0) {
+                        throw new IOException("Invalid encoded entry: " + index);
+                    }
+                    address += packageIndex >>> 32;
+
+                    long classIndex = CompressedNumber.getIntAndLength(base, address, limit);
+                    if (classIndex < 0) {
+                        throw new IOException("Invalid encoded entry: " + index);
+                    }
+                    address += classIndex >>> 32;
+
+                    int n = get((int) packageIndex, output, out);
+                    out += n;
+                    if (n > 0) {
+                        checkOutput(output, out, 1);
+                        output[out++] = '/';
+                    }
+
+                    out += get((int) classIndex, output, out);
+
+                    if (descriptor) {
+                        checkOutput(output, out, 1);
+                        output[out++] = ';';
+                    }
+                }
+            }
+        } finally {
+            Reference.reachabilityFence(chunk);
+        }
+
+        return out - outputOffset;
     }
 }
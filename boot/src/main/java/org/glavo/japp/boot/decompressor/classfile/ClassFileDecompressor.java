@@ -19,125 +19,188 @@ import org.glavo.japp.CompressionMethod;
 import org.glavo.japp.boot.decompressor.DecompressContext;
 import org.glavo.japp.classfile.ClassFile;
 import org.glavo.japp.util.CompressedNumber;
+import org.glavo.japp.util.MemoryAccess;
 
 import java.io.IOException;
+import java.lang.ref.Reference;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.Arrays;
 
 import static org.glavo.japp.classfile.ClassFile.*;
+import static org.glavo.japp.util.MemoryAccess.ARRAY_BYTE_BASE_OFFSET;
 
+/**
+ * Decodes compressed class files straight into the output array.
+ * <p>
+ * The input is read through {@link MemoryAccess}, so it can be a heap, direct or mapped buffer,
+ * and pool references are resolved without allocating.
+ */
 public final class ClassFileDecompressor {
-    public static void decompress(DecompressContext context, ByteBuffer compressed, byte[] output) throws IOException {
-        compressed.order(ByteOrder.BIG_ENDIAN);
-        ByteBuffer outputBuffer = ByteBuffer.wrap(output);
-        ByteArrayPool pool = context.getPool();
 
-        int magic = compressed.getInt();
-        if (magic != ClassFile.MAGIC_NUMBER) {
-            throw new IOException("Invalid magic number: " + Integer.toHexString(magic));
+    private static void checkInput(long input, long inputLimit, int size) throws IOException {
+        if (size > inputLimit - input) {
+            throw new IOException("Unexpected end of input");
+        }
+    }
+
+    private static void checkOutput(int outputLimit, int out, int size) throws IOException {
+        if (size > outputLimit - out) {
+            throw new IOException("Output overflow");
+        }
+    }
+
+    private static int getUnsignedShort(Object base, long address) {
+        return (MemoryAccess.getUnsignedByte(base, address) << 8) | MemoryAccess.getUnsignedByte(base, address + 1);
+    }
+
+    private static void putShort(byte[] output, int out, int value) {
+        output[out] = (byte) (value >>> 8);
+        output[out + 1] = (byte) value;
+    }
+
+    private static long getNumber(Object base, long input, long inputLimit) throws IOException {
+        long number = CompressedNumber.getIntAndLength(base, input, inputLimit);
+        if (number < 0) {
+            throw new IOException("Malformed number");
+        }
+        return number;
+    }
+
+    private static long getIndex(Object base, long input, long inputLimit) throws IOException {
+        long index = CompressedNumber.getIntAndLength(base, input, inputLimit);
+        if (index < 0) {
+            throw new IOException("Invalid pool index");
         }
-        outputBuffer.putInt(magic);
+        return index;
+    }
 
-        // minor version and major version
-        outputBuffer.putInt(compressed.getInt());
+    /**
+     * Reads a constant pool reference of the entry {@code index} from a column and moves the column forward.
+     */
+    private static int getReference(Object base, long[] columns, long[] columnLimits, int column, int index) throws IOException {
+        long number = CompressedNumber.getIntAndLength(base, columns[column], columnLimits[column]);
+        if (number < 0) {
+            throw new IOException("Invalid constant pool reference");
+        }
+        columns[column] += number >>> 32;
 
-        int constantPoolCount = Short.toUnsignedInt(compressed.getShort());
-        outputBuffer.putShort((short) constantPoolCount);
+        int zigzag = (int) number;
+        int reference = index + ((zigzag >>> 1) ^ -(zigzag & 1));
+        if (reference < 0 || reference > 0xffff) {
+            throw new IOException("Constant pool reference out of range: " + reference);
+        }
+        return reference;
+    }
 
+    public static void decompress(DecompressContext context, ByteBuffer compressed, byte[] output) throws IOException {
+        Object base;
+        long baseAddress;
+        if (compressed.hasArray()) {
+            base = compressed.array();
+            baseAddress = ARRAY_BYTE_BASE_OFFSET + compressed.arrayOffset();
+        } else {
+            base = null;
+            baseAddress = MemoryAccess.getDirectBufferAddress(compressed);
+        }
+
+        try {
+            long input = baseAddress + compressed.position();
+            long inputLimit = baseAddress + compressed.limit();
+
+            checkInput(input, inputLimit, 10);
+            checkOutput(output.length, 0, 10);
+
+            int magic = (getUnsignedShort(base, input) << 16) | getUnsignedShort(base, input + 2);
+            if (magic != ClassFile.MAGIC_NUMBER) {
+                throw new IOException("Invalid magic number: " + Integer.toHexString(magic));
+            }
+
+            // magic number, minor version, major version and constant pool count
+            MemoryAccess.copyMemory(base, input, output, ARRAY_BYTE_BASE_OFFSET, 10);
+            int constantPoolCount = getUnsignedShort(base, input + 8);
+            input += 10;
+
+            checkInput(input, inputLimit, 1);
+            if (MemoryAccess.getByte(base, input) == CONSTANT_POOL_COLUMNS) {
+                decompressColumns(context, compressed, base, baseAddress, input + 1, inputLimit, output, constantPoolCount);
+            } else {
+                decompressInline(context, compressed, base, baseAddress, input, inputLimit, output, constantPoolCount);
+            }
+        } finally {
+            Reference.reachabilityFence(compressed);
+        }
+    }
+
+    private static void decompressInline(DecompressContext context, ByteBuffer compressed,
+                                         Object base, long baseAddress, long input, long inputLimit,
+                                         byte[] output, int constantPoolCount) throws IOException {
+        ByteArrayPool pool = context.getPool();
+
+        int out = 10;
         for (int i = 1; i < constantPoolCount; i++) {
-            byte tag = compressed.get();
+            checkInput(input, inputLimit, 1);
+            byte tag = MemoryAccess.getByte(base, input++);
+
+            checkOutput(output.length, out, 1);
             if (tag > 0) {
-                outputBuffer.put(tag);
+                output[out++] = tag;
             } else if (tag < 0) {
-                outputBuffer.put(CONSTANT_Utf8);
+                output[out++] = CONSTANT_Utf8;
             } else {
                 throw new IOException("tag is 0");
             }
 
             switch (tag) {
                 case CONSTANT_Utf8: {
-                    int len = Short.toUnsignedInt(compressed.getShort());
-                    outputBuffer.putShort((short) len);
-                    outputBuffer.put(compressed.array(), compressed.arrayOffset() + compressed.position(), len);
-                    compressed.position(compressed.position() + len);
+                    checkInput(input, inputLimit, 2);
+                    int size = 2 + getUnsignedShort(base, input);
+                    checkInput(input, inputLimit, size);
+                    checkOutput(output.length, out, size);
+                    MemoryAccess.copyMemory(base, input, output, ARRAY_BYTE_BASE_OFFSET + out, size);
+                    input += size;
+                    out += size;
                     break;
                 }
                 case CONSTANT_EXTERNAL_STRING: {
-                    int index = CompressedNumber.getInt(compressed);
+                    long index = getIndex(base, input, inputLimit);
+                    input += index >>> 32;
 
-                    int position = outputBuffer.position();
-                    outputBuffer.position(position + 2);
-                    int len = pool.get(index, outputBuffer);
-                    outputBuffer.putShort(position, (short) len);
+                    int lengthPosition = out;
+                    checkOutput(output.length, out, 2);
+                    out += 2;
+                    out += pool.get((int) index, output, out);
+                    putShort(output, lengthPosition, out - lengthPosition - 2);
                     break;
                 }
                 case CONSTANT_EXTERNAL_STRING_Class: {
-                    int packageIndex = CompressedNumber.getInt(compressed);
-                    int classIndex = CompressedNumber.getInt(compressed);
+                    long packageIndex = getIndex(base, input, inputLimit);
+                    input += packageIndex >>> 32;
+                    long classIndex = getIndex(base, input, inputLimit);
+                    input += classIndex >>> 32;
 
-                    int position = outputBuffer.position();
-                    outputBuffer.position(position + 2);
-                    if (pool.get(packageIndex, outputBuffer) > 0) {
-                        outputBuffer.put((byte) '/');
+                    int lengthPosition = out;
+                    checkOutput(output.length, out, 2);
+                    out += 2;
+                    int n = pool.get((int) packageIndex, output, out);
+                    out += n;
+                    if (n > 0) {
+                        checkOutput(output.length, out, 1);
+                        output[out++] = '/';
                     }
-
-                    pool.get(classIndex, outputBuffer);
-
-                    outputBuffer.putShort(position, (short) (outputBuffer.position() - position - 2));
-                    break;
-                }
-                case CONSTANT_EXTERNAL_STRING_Descriptor: {
-                    int index = CompressedNumber.getInt(compressed);
-                    ByteBuffer compressedDescriptor = pool.get(index);
-
-                    int lengthPosition = outputBuffer.position();
-                    outputBuffer.position(lengthPosition + 2);
-
-                    while (compressedDescriptor.hasRemaining()) {
-                        byte b = compressedDescriptor.get();
-                        outputBuffer.put(b);
-                        if (b == 'L') {
-                            int packageIndex = CompressedNumber.getInt(compressedDescriptor);
-                            int classIndex = CompressedNumber.getInt(compressedDescriptor);
-
-                            if (pool.get(packageIndex, outputBuffer) > 0) {
-                                outputBuffer.put((byte) '/');
-                            }
-
-                            pool.get(classIndex, outputBuffer);
-                            outputBuffer.put((byte) ';');
-                        }
-                    }
-
-                    int len = outputBuffer.position() - lengthPosition - 2;
-                    outputBuffer.putShort(lengthPosition, (short) len);
+                    out += pool.get((int) classIndex, output, out);
+                    putShort(output, lengthPosition, out - lengthPosition - 2);
                     break;
                 }
+                case CONSTANT_EXTERNAL_STRING_Descriptor:
                 case CONSTANT_EXTERNAL_STRING_Signature: {
-                    int index = CompressedNumber.getInt(compressed);
-                    ByteBuffer compressedSignature = pool.get(index);
-
-                    int lengthPosition = outputBuffer.position();
-                    outputBuffer.position(lengthPosition + 2);
-
-                    while (compressedSignature.hasRemaining()) {
-                        byte b = compressedSignature.get();
-                        outputBuffer.put(b);
-                        if (b == 'L') {
-                            int p = outputBuffer.position();
-                            int packageIndex = CompressedNumber.getInt(compressedSignature);
-                            int classIndex = CompressedNumber.getInt(compressedSignature);
-
-                            if (pool.get(packageIndex, outputBuffer) > 0) {
-                                outputBuffer.put((byte) '/');
-                            }
-
-                            pool.get(classIndex, outputBuffer);
-                        }
-                    }
+                    long index = getIndex(base, input, inputLimit);
+                    input += index >>> 32;
 
-                    int len = outputBuffer.position() - lengthPosition - 2;
-                    outputBuffer.putShort(lengthPosition, (short) len);
+                    int lengthPosition = out;
+                    checkOutput(output.length, out, 2);
+                    out += 2;
+                    out += pool.getEncoded((int) index, output, out, tag == CONSTANT_EXTERNAL_STRING_Descriptor);
+                    putShort(output, lengthPosition, out - lengthPosition - 2);
                     break;
                 }
                 default: {
@@ -145,33 +208,268 @@ public final class ClassFileDecompressor {
                         i++;
                     }
 
-                    byte size = CONSTANT_SIZE[tag];
+                    int size = tag < CONSTANT_SIZE.length ? CONSTANT_SIZE[tag] : 0;
                     if (size == 0) {
                         throw new IOException(String.format("Unknown tag: 0x%02x", Byte.toUnsignedInt(tag)));
                     }
 
-                    int compressedLimit = compressed.limit();
-                    outputBuffer.put(compressed.limit(compressed.position() + size));
-                    compressed.limit(compressedLimit);
+                    checkInput(input, inputLimit, size);
+                    checkOutput(output.length, out, size);
+                    MemoryAccess.copyMemory(base, input, output, ARRAY_BYTE_BASE_OFFSET + out, size);
+                    input += size;
+                    out += size;
                 }
             }
         }
 
-        CompressionMethod compressionMethod = CompressionMethod.readFrom(compressed);
+        checkInput(input, inputLimit, 1);
+        byte methodId = MemoryAccess.getByte(base, input++);
+        CompressionMethod compressionMethod = CompressionMethod.of(methodId);
         if (compressionMethod == CompressionMethod.NONE) {
-            if (compressed.remaining() != outputBuffer.remaining()) {
+            long remaining = inputLimit - input;
+            if (remaining != output.length - out) {
                 throw new IOException(String.format("The remaining bytes do not match: %d != %d",
-                        compressed.remaining(), outputBuffer.remaining()));
+                        remaining, output.length - out));
+            }
+
+            MemoryAccess.copyMemory(base, input, output, ARRAY_BYTE_BASE_OFFSET + out, remaining);
+            compressed.position(compressed.limit());
+        } else if (compressionMethod == CompressionMethod.ZSTD) {
+            compressed.position((int) (input - baseAddress));
+            int n = context.decompressZstd(compressed, output, out, output.length - out);
+            if (compressed.hasRemaining() || out + n != output.length) {
+                throw new IOException("The length of the tail does not match");
+            }
+        } else {
+            throw new IOException(String.format("Unsupported compression method: 0x%02x", Byte.toUnsignedInt(methodId)));
+        }
+    }
+
+    private static void decompressColumns(DecompressContext context, ByteBuffer compressed,
+                                          Object base, long baseAddress, long input, long inputLimit,
+                                          byte[] output, int constantPoolCount) throws IOException {
+        ByteArrayPool pool = context.getPool();
+
+        long number = getNumber(base, input, inputLimit);
+        input += number >>> 32;
+        checkInput(input, inputLimit, (int) number);
+        long references = input;
+        long referencesLimit = input + (int) number;
+        input = referencesLimit;
+
+        number = getNumber(base, input, inputLimit);
+        input += number >>> 32;
+        int structureLength = (int) number;
+
+        number = getNumber(base, input, inputLimit);
+        input += number >>> 32;
+        int tailLength = (int) number;
+
+        // Each entry takes at most 9 bytes in the structure
+        if (structureLength > COLUMN_COUNT * 5 + constantPoolCount * 9) {
+            throw new IOException("Invalid structure length: " + structureLength);
+        }
+        if (tailLength > output.length - 10) {
+            throw new IOException("Invalid tail length: " + tailLength);
+        }
+
+        int tailStart = output.length - tailLength;
+        int streamLength = structureLength + tailLength;
+
+        Object structureBase;
+        long structure;
+
+        checkInput(input, inputLimit, 1);
+        byte methodId = MemoryAccess.getByte(base, input++);
+        CompressionMethod compressionMethod = CompressionMethod.of(methodId);
+        if (compressionMethod == CompressionMethod.NONE) {
+            long remaining = inputLimit - input;
+            if (remaining != streamLength) {
+                throw new IOException(String.format("The remaining bytes do not match: %d != %d", remaining, streamLength));
             }
 
-            outputBuffer.put(compressed);
+            structureBase = base;
+            structure = input;
+            MemoryAccess.copyMemory(base, input + structureLength, output, ARRAY_BYTE_BASE_OFFSET + tailStart, tailLength);
+            compressed.position(compressed.limit());
         } else if (compressionMethod == CompressionMethod.ZSTD) {
-            context.decompressZstd(compressed, outputBuffer);
-            if (compressed.hasRemaining() || outputBuffer.hasRemaining()) {
-                throw new IOException();
+            compressed.position((int) (input - baseAddress));
+
+            byte[] structureArray;
+            if (streamLength <= output.length - 10) {
+                // Decompress the stream to the end of the output, so the tail is already in place,
+                // and move the structure out of the way of the constant pool
+                int streamStart = output.length - streamLength;
+                int n = context.decompressZstd(compressed, output, streamStart, streamLength);
+                if (compressed.hasRemaining() || n != streamLength) {
+                    throw new IOException("The length of the stream does not match");
+                }
+                structureArray = Arrays.copyOfRange(output, streamStart, tailStart);
+            } else {
+                structureArray = new byte[streamLength];
+                int n = context.decompressZstd(compressed, structureArray, 0, streamLength);
+                if (compressed.hasRemaining() || n != streamLength) {
+                    throw new IOException("The length of the stream does not match");
+                }
+                System.arraycopy(structureArray, structureLength, output, tailStart, tailLength);
             }
+
+            structureBase = structureArray;
+            structure = ARRAY_BYTE_BASE_OFFSET;
         } else {
-            throw new IOException("Unsupported compression method: " + compressionMethod);
+            throw new IOException(String.format("Unsupported compression method: 0x%02x", Byte.toUnsignedInt(methodId)));
+        }
+
+        long structureLimit = structure + structureLength;
+        long[] columns = new long[COLUMN_COUNT];
+        long[] columnLimits = new long[COLUMN_COUNT];
+
+        long position = structure;
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            number = getNumber(structureBase, position, structureLimit);
+            position += number >>> 32;
+            columnLimits[column] = (int) number;
+        }
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            columns[column] = position;
+            position += columnLimits[column];
+            columnLimits[column] = position;
+        }
+        if (position != structureLimit) {
+            throw new IOException("The length of the columns does not match");
+        }
+
+        int out = 10;
+        for (int i = 1; i < constantPoolCount; i++) {
+            checkInput(columns[COLUMN_TAG], columnLimits[COLUMN_TAG], 1);
+            byte tag = MemoryAccess.getByte(structureBase, columns[COLUMN_TAG]++);
+
+            checkOutput(tailStart, out, 1);
+            output[out++] = tag < 0 ? CONSTANT_Utf8 : tag;
+
+            switch (tag) {
+                case CONSTANT_EXTERNAL_STRING: {
+                    long index = getIndex(base, references, referencesLimit);
+                    references += index >>> 32;
+
+                    int lengthPosition = out;
+                    checkOutput(tailStart, out, 2);
+                    out += 2;
+                    out += pool.get((int) index, output, out);
+                    putShort(output, lengthPosition, out - lengthPosition - 2);
+                    break;
+                }
+                case CONSTANT_EXTERNAL_STRING_Class: {
+                    long packageIndex = getIndex(base, references, referencesLimit);
+                    references += packageIndex >>> 32;
+                    long classIndex = getIndex(base, references, referencesLimit);
+                    references += classIndex >>> 32;
+
+                    int lengthPosition = out;
+                    checkOutput(tailStart, out, 2);
+                    out += 2;
+                    int n = pool.get((int) packageIndex, output, out);
+                    out += n;
+                    if (n > 0) {
+                        checkOutput(tailStart, out, 1);
+                        output[out++] = '/';
+                    }
+                    out += pool.get((int) classIndex, output, out);
+                    putShort(output, lengthPosition, out - lengthPosition - 2);
+                    break;
+                }
+                case CONSTANT_EXTERNAL_STRING_Descriptor:
+                case CONSTANT_EXTERNAL_STRING_Signature: {
+                    long index = getIndex(base, references, referencesLimit);
+                    references += index >>> 32;
+
+                    int lengthPosition = out;
+                    checkOutput(tailStart, out, 2);
+                    out += 2;
+                    out += pool.getEncoded((int) index, output, out, tag == CONSTANT_EXTERNAL_STRING_Descriptor);
+                    putShort(output, lengthPosition, out - lengthPosition - 2);
+                    break;
+                }
+                case CONSTANT_Class:
+                case CONSTANT_String:
+                case CONSTANT_MethodType:
+                case CONSTANT_Module:
+                case CONSTANT_Package: {
+                    checkOutput(tailStart, out, 2);
+                    putShort(output, out, getReference(structureBase, columns, columnLimits, COLUMN_REFERENCE, i));
+                    out += 2;
+                    break;
+                }
+                case CONSTANT_Fieldref:
+                case CONSTANT_Methodref:
+                case CONSTANT_InterfaceMethodref: {
+                    checkOutput(tailStart, out, 4);
+                    putShort(output, out, getReference(structureBase, columns, columnLimits, COLUMN_MEMBER_CLASS, i));
+                    putShort(output, out + 2, getReference(structureBase, columns, columnLimits, COLUMN_MEMBER_NAME_AND_TYPE, i));
+                    out += 4;
+                    break;
+                }
+                case CONSTANT_NameAndType: {
+                    checkOutput(tailStart, out, 4);
+                    putShort(output, out, getReference(structureBase, columns, columnLimits, COLUMN_NAME, i));
+                    putShort(output, out + 2, getReference(structureBase, columns, columnLimits, COLUMN_DESCRIPTOR, i));
+                    out += 4;
+                    break;
+                }
+                case CONSTANT_Dynamic:
+                case CONSTANT_InvokeDynamic: {
+                    number = getNumber(structureBase, columns[COLUMN_BOOTSTRAP_METHOD], columnLimits[COLUMN_BOOTSTRAP_METHOD]);
+                    columns[COLUMN_BOOTSTRAP_METHOD] += number >>> 32;
+                    if ((int) number > 0xffff) {
+                        throw new IOException("Bootstrap method index out of range: " + (int) number);
+                    }
+
+                    checkOutput(tailStart, out, 4);
+                    putShort(output, out, (int) number);
+                    putShort(output, out + 2, getReference(structureBase, columns, columnLimits, COLUMN_DYNAMIC_NAME_AND_TYPE, i));
+                    out += 4;
+                    break;
+                }
+                case CONSTANT_MethodHandle: {
+                    checkInput(columns[COLUMN_REFERENCE_KIND], columnLimits[COLUMN_REFERENCE_KIND], 1);
+                    checkOutput(tailStart, out, 3);
+                    output[out] = MemoryAccess.getByte(structureBase, columns[COLUMN_REFERENCE_KIND]++);
+                    putShort(output, out + 1, getReference(structureBase, columns, columnLimits, COLUMN_METHOD_HANDLE_REFERENCE, i));
+                    out += 3;
+                    break;
+                }
+                case CONSTANT_Long:
+                case CONSTANT_Double:
+                    i++;
+                    // fallthrough
+                case CONSTANT_Integer:
+                case CONSTANT_Float: {
+                    long index = getIndex(base, references, referencesLimit);
+                    references += index >>> 32;
+
+                    int size = CONSTANT_SIZE[tag];
+                    checkOutput(tailStart, out, size);
+                    if (pool.get((int) index, output, out) != size) {
+                        throw new IOException("Invalid numeric constant");
+                    }
+                    out += size;
+                    break;
+                }
+                default:
+                    throw new IOException(String.format("Unknown tag: 0x%02x", Byte.toUnsignedInt(tag)));
+            }
+        }
+
+        if (out != tailStart) {
+            throw new IOException(String.format("The length of the constant pool does not match: %d != %d", out - 10, tailStart - 10));
+        }
+        if (references != referencesLimit) {
+            throw new IOException("Unused pool references");
+        }
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            if (columns[column] != columnLimits[column]) {
+                throw new IOException("Unused column: " + column);
+            }
         }
     }
 }
@@ -20,6 +20,8 @@ final class Constants {
     public static final int SIZE_OF_LONG = 8;
 
     public static final int MAGIC_NUMBER = 0xFD2FB528;
+    public static final int SKIPPABLE_MAGIC_NUMBER = 0x184D2A50;
+    public static final int SKIPPABLE_MAGIC_NUMBER_MASK = 0xFFFFFFF0;
 
     public static final int MIN_WINDOW_LOG = 10;
     public static final int MAX_WINDOW_LOG = 31;
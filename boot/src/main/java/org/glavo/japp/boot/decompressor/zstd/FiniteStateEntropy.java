@@ -166,5 +166,13 @@ final class FiniteStateEntropy {
             this.symbol = symbol;
             this.numberOfBits = numberOfBits;
         }
+
+        void copyFrom(Table other) {
+            int size = 1 << other.log2Size;
+            log2Size = other.log2Size;
+            System.arraycopy(other.newState, 0, newState, 0, size);
+            System.arraycopy(other.symbol, 0, symbol, 0, size);
+            System.arraycopy(other.numberOfBits, 0, numberOfBits, 0, size);
+        }
     }
 }
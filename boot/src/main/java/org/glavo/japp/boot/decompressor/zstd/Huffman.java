@@ -48,6 +48,15 @@ class Huffman {
         return tableLog != -1;
     }
 
+    void copyFrom(Huffman other) {
+        tableLog = other.tableLog;
+        if (tableLog != -1) {
+            int size = 1 << tableLog;
+            System.arraycopy(other.symbols, 0, symbols, 0, size);
+            System.arraycopy(other.numbersOfBits, 0, numbersOfBits, 0, size);
+        }
+    }
+
     public int readTable(final Object inputBase, final long inputAddress, final int size) {
         Arrays.fill(ranks, 0);
         long input = inputAddress;
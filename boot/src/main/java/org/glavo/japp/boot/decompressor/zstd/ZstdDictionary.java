@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot.decompressor.zstd;
+
+import org.glavo.japp.util.MemoryAccess;
+
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+
+import static org.glavo.japp.boot.decompressor.zstd.Constants.*;
+import static org.glavo.japp.boot.decompressor.zstd.Util.verify;
+import static org.glavo.japp.util.MemoryAccess.ARRAY_BYTE_BASE_OFFSET;
+
+/**
+ * A <a href="https://github.com/facebook/zstd/blob/dev/doc/zstd_compression_format.md#dictionary-format">zstd dictionary</a>.
+ * <p>
+ * The entropy tables are decoded once, and copied into the decompressor when a frame using the dictionary starts.
+ * The content is used in place.
+ */
+public final class ZstdDictionary {
+    public static final int MAGIC_NUMBER = 0xEC30A437;
+
+    final int id;
+
+    final Huffman huffman = new Huffman();
+    final FiniteStateEntropy.Table offsetCodesTable = new FiniteStateEntropy.Table(OFFSET_TABLE_LOG);
+    final FiniteStateEntropy.Table matchLengthTable = new FiniteStateEntropy.Table(MATCH_LENGTH_TABLE_LOG);
+    final FiniteStateEntropy.Table literalsLengthTable = new FiniteStateEntropy.Table(LITERAL_LENGTH_TABLE_LOG);
+    final int[] previousOffsets = new int[3];
+
+    private final ByteBuffer buffer;
+    final Object contentBase;
+    final long contentAddress;
+    final int contentSize;
+
+    private ZstdDictionary(ByteBuffer buffer) {
+        this.buffer = buffer;
+
+        Object base;
+        long address;
+        if (buffer.hasArray()) {
+            base = buffer.array();
+            address = ARRAY_BYTE_BASE_OFFSET + buffer.arrayOffset() + buffer.position();
+        } else {
+            base = null;
+            address = MemoryAccess.getDirectBufferAddress(buffer) + buffer.position();
+        }
+        long limit = address + buffer.remaining();
+        long input = address;
+
+        verify(input + SIZE_OF_INT * 2 <= limit, input, "Not enough input bytes");
+        verify(MemoryAccess.getInt(base, input) == MAGIC_NUMBER, input, "Invalid dictionary magic number");
+        this.id = MemoryAccess.getInt(base, input + SIZE_OF_INT);
+        verify(id != 0, input, "Dictionary ID is zero");
+        input += SIZE_OF_INT * 2;
+
+        FseTableReader reader = new FseTableReader();
+        input += huffman.readTable(base, input, (int) (limit - input));
+        input += reader.readFseTable(offsetCodesTable, base, input, limit, MAX_OFFSET_CODE_SYMBOL, OFFSET_TABLE_LOG);
+        input += reader.readFseTable(matchLengthTable, base, input, limit, MAX_MATCH_LENGTH_SYMBOL, MATCH_LENGTH_TABLE_LOG);
+        input += reader.readFseTable(literalsLengthTable, base, input, limit, MAX_LITERALS_LENGTH_SYMBOL, LITERAL_LENGTH_TABLE_LOG);
+
+        verify(input + SIZE_OF_INT * 3 <= limit, input, "Not enough input bytes");
+        for (int i = 0; i < 3; i++) {
+            previousOffsets[i] = MemoryAccess.getInt(base, input);
+            verify(previousOffsets[i] > 0, input, "Invalid repeat offset");
+            input += SIZE_OF_INT;
+        }
+
+        this.contentBase = base;
+        this.contentAddress = input;
+        this.contentSize = (int) (limit - input);
+
+        for (int offset : previousOffsets) {
+            verify(offset <= contentSize, input, "Invalid repeat offset");
+        }
+    }
+
+    /**
+     * Reads the dictionary from the remaining bytes of the buffer. The buffer is used in place and must not be modified.
+     */
+    public static ZstdDictionary readFrom(ByteBuffer buffer) {
+        return new ZstdDictionary(buffer.slice());
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getContentSize() {
+        return contentSize;
+    }
+
+    void keepAlive() {
+        Reference.reachabilityFence(buffer);
+    }
+}
@@ -52,6 +52,8 @@ import static org.glavo.japp.boot.decompressor.zstd.Constants.SIZE_OF_BYTE;
 import static org.glavo.japp.boot.decompressor.zstd.Constants.SIZE_OF_INT;
 import static org.glavo.japp.boot.decompressor.zstd.Constants.SIZE_OF_LONG;
 import static org.glavo.japp.boot.decompressor.zstd.Constants.SIZE_OF_SHORT;
+import static org.glavo.japp.boot.decompressor.zstd.Constants.SKIPPABLE_MAGIC_NUMBER;
+import static org.glavo.japp.boot.decompressor.zstd.Constants.SKIPPABLE_MAGIC_NUMBER_MASK;
 import static org.glavo.japp.boot.decompressor.zstd.Constants.TREELESS_LITERALS_BLOCK;
 
 import static org.glavo.japp.boot.decompressor.zstd.Util.fail;
@@ -132,9 +134,43 @@ public final class ZstdFrameDecompressor {
     private FiniteStateEntropy.Table currentOffsetCodesTable;
     private FiniteStateEntropy.Table currentMatchLengthTable;
 
+    private ZstdDictionary[] dictionaries = new ZstdDictionary[0];
+
+    // The dictionary used by the current frame
+    private ZstdDictionary dictionary;
+
     private final Huffman huffman = new Huffman();
     private final FseTableReader fse = new FseTableReader();
 
+    /**
+     * Sets the dictionaries that frames can refer to by ID.
+     */
+    public void setDictionaries(ZstdDictionary[] dictionaries) {
+        this.dictionaries = dictionaries;
+    }
+
+    private void loadDictionary(long dictionaryId, long input) {
+        ZstdDictionary dictionary = null;
+        for (ZstdDictionary d : dictionaries) {
+            if ((d.id & 0xFFFF_FFFFL) == dictionaryId) {
+                dictionary = d;
+                break;
+            }
+        }
+        verify(dictionary != null, input, "Unknown dictionary: " + dictionaryId);
+
+        huffman.copyFrom(dictionary.huffman);
+        literalsLengthTable.copyFrom(dictionary.literalsLengthTable);
+        offsetCodesTable.copyFrom(dictionary.offsetCodesTable);
+        matchLengthTable.copyFrom(dictionary.matchLengthTable);
+        currentLiteralsLengthTable = literalsLengthTable;
+        currentOffsetCodesTable = offsetCodesTable;
+        currentMatchLengthTable = matchLengthTable;
+        System.arraycopy(dictionary.previousOffsets, 0, previousOffsets, 0, 3);
+
+        this.dictionary = dictionary;
+    }
+
     public int decompress(
             final Object inputBase,
             final long inputAddress,
@@ -150,6 +186,12 @@ public final class ZstdFrameDecompressor {
         long output = outputAddress;
 
         while (input < inputLimit) {
+            long skippableFrameSize = getSkippableFrameSize(inputBase, input, inputLimit);
+            if (skippableFrameSize >= 0) {
+                input += skippableFrameSize;
+                continue;
+            }
+
             reset();
             long outputStart = output;
             input += verifyMagic(inputBase, input, inputLimit);
@@ -157,6 +199,10 @@ public final class ZstdFrameDecompressor {
             FrameHeader frameHeader = readFrameHeader(inputBase, input, inputLimit);
             input += frameHeader.headerSize;
 
+            if (frameHeader.dictionaryId > 0) {
+                loadDictionary(frameHeader.dictionaryId, input);
+            }
+
             boolean lastBlock;
             do {
                 verify(input + SIZE_OF_BLOCK_HEADER <= inputLimit, input, "Not enough input bytes");
@@ -183,7 +229,7 @@ public final class ZstdFrameDecompressor {
                         break;
                     case COMPRESSED_BLOCK:
                         verify(inputAddress + blockSize <= inputLimit, input, "Not enough input bytes");
-                        decodedSize = decodeCompressedBlock(inputBase, input, blockSize, outputBase, output, outputLimit, frameHeader.windowSize, outputAddress);
+                        decodedSize = decodeCompressedBlock(inputBase, input, blockSize, outputBase, output, outputLimit, frameHeader.windowSize, outputStart);
                         input += blockSize;
                         break;
                     default:
@@ -194,6 +240,11 @@ public final class ZstdFrameDecompressor {
             }
             while (!lastBlock);
 
+            if (dictionary != null) {
+                dictionary.keepAlive();
+                dictionary = null;
+            }
+
             if (frameHeader.hasChecksum) {
                 long hash = XxHash64.hash(0, outputBase, outputStart, output);
 
@@ -211,6 +262,8 @@ public final class ZstdFrameDecompressor {
     }
 
     void reset() {
+        dictionary = null;
+
         previousOffsets[0] = 1;
         previousOffsets[1] = 4;
         previousOffsets[2] = 8;
@@ -485,9 +538,12 @@ public final class ZstdFrameDecompressor {
                 verify(literalEnd <= literalsLimit, input, "Input is corrupted");
 
                 long matchAddress = literalOutputLimit - offset;
-                verify(matchAddress >= outputAbsoluteBaseAddress, input, "Input is corrupted");
 
-                if (literalOutputLimit > fastOutputLimit) {
+                if (matchAddress < outputAbsoluteBaseAddress) {
+                    // The match starts in the dictionary content
+                    verify(dictionary != null && outputAbsoluteBaseAddress - matchAddress <= dictionary.contentSize, input, "Input is corrupted");
+                    executeDictionarySequence(outputBase, output, literalOutputLimit, matchOutputLimit, literalsInput, matchAddress, outputAbsoluteBaseAddress);
+                } else if (literalOutputLimit > fastOutputLimit) {
                     executeLastSequence(outputBase, output, literalOutputLimit, matchOutputLimit, fastOutputLimit, literalsInput, matchAddress);
                 } else {
                     // copy literals. literalOutputLimit <= fastOutputLimit, so we can copy
@@ -670,6 +726,26 @@ public final class ZstdFrameDecompressor {
         return input;
     }
 
+    private void executeDictionarySequence(Object outputBase, long output, long literalOutputLimit, long matchOutputLimit, long literalInput, long matchAddress, long outputAbsoluteBaseAddress) {
+        // copy literals
+        MemoryAccess.copyMemory(literalsBase, literalInput, outputBase, output, literalOutputLimit - output);
+        output = literalOutputLimit;
+
+        // copy the part of the match in the dictionary content
+        long dictionaryOffset = outputAbsoluteBaseAddress - matchAddress;
+        long length = Math.min(dictionaryOffset, matchOutputLimit - output);
+        MemoryAccess.copyMemory(dictionary.contentBase, dictionary.contentAddress + dictionary.contentSize - dictionaryOffset, outputBase, output, length);
+        output += length;
+
+        // the rest of the match continues from the start of the frame
+        matchAddress = outputAbsoluteBaseAddress;
+        while (output < matchOutputLimit) {
+            MemoryAccess.putByte(outputBase, output, MemoryAccess.getByte(outputBase, matchAddress));
+            output++;
+            matchAddress++;
+        }
+    }
+
     private void executeLastSequence(Object outputBase, long output, long literalOutputLimit, long matchOutputLimit, long fastOutputLimit, long literalInput, long matchAddress) {
         // copy literals
         if (output < fastOutputLimit) {
@@ -893,7 +969,6 @@ public final class ZstdFrameDecompressor {
                 input += SIZE_OF_INT;
                 break;
         }
-        verify(dictionaryId == -1, input, "Custom dictionaries not supported");
 
         // decode content size
         long contentSize = -1;
@@ -935,6 +1010,21 @@ public final class ZstdFrameDecompressor {
         return readFrameHeader(inputBase, input, inputLimit).contentSize;
     }
 
+    /**
+     * @return the total size of the skippable frame at the input address, or {@code -1} if it is not a skippable frame
+     */
+    static long getSkippableFrameSize(Object inputBase, long inputAddress, long inputLimit) {
+        if (inputLimit - inputAddress < 4
+            || (MemoryAccess.getInt(inputBase, inputAddress) & SKIPPABLE_MAGIC_NUMBER_MASK) != SKIPPABLE_MAGIC_NUMBER) {
+            return -1;
+        }
+
+        verify(inputLimit - inputAddress >= 2 * SIZE_OF_INT, inputAddress, "Not enough input bytes");
+        long size = 2 * SIZE_OF_INT + MemoryAccess.getUnsignedInt(inputBase, inputAddress + SIZE_OF_INT);
+        verify(size <= inputLimit - inputAddress, inputAddress, "Not enough input bytes");
+        return size;
+    }
+
     static int verifyMagic(Object inputBase, long inputAddress, long inputLimit) {
         verify(inputLimit - inputAddress >= 4, inputAddress, "Not enough input bytes");
 
@@ -0,0 +1,396 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot.decompressor.zstd;
+
+import org.glavo.japp.util.MemoryAccess;
+import org.glavo.japp.util.XxHash64;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import static org.glavo.japp.boot.decompressor.zstd.Constants.COMPRESSED_BLOCK;
+import static org.glavo.japp.boot.decompressor.zstd.Constants.MAX_BLOCK_SIZE;
+import static org.glavo.japp.boot.decompressor.zstd.Constants.RAW_BLOCK;
+import static org.glavo.japp.boot.decompressor.zstd.Constants.RLE_BLOCK;
+import static org.glavo.japp.boot.decompressor.zstd.Constants.SIZE_OF_BLOCK_HEADER;
+import static org.glavo.japp.boot.decompressor.zstd.Constants.SIZE_OF_INT;
+import static org.glavo.japp.boot.decompressor.zstd.Constants.SKIPPABLE_MAGIC_NUMBER;
+import static org.glavo.japp.boot.decompressor.zstd.Constants.SKIPPABLE_MAGIC_NUMBER_MASK;
+import static org.glavo.japp.boot.decompressor.zstd.Util.fail;
+import static org.glavo.japp.boot.decompressor.zstd.Util.get24BitLittleEndian;
+import static org.glavo.japp.boot.decompressor.zstd.Util.verify;
+import static org.glavo.japp.util.MemoryAccess.ARRAY_BYTE_BASE_OFFSET;
+
+/**
+ * Decompresses zstd frames block by block.
+ * <p>
+ * The compressed input is either fully accessible (usually a slice of a mapped file),
+ * or read from a {@link Source} in chunks.
+ * Only the frame window is kept in memory for the decompressed output.
+ */
+public final class ZstdInputStream extends InputStream {
+
+    /**
+     * Supplies the compressed input in chunks, so that it does not have to be held in memory at once.
+     */
+    public interface Source {
+        /**
+         * Reads the given range of the compressed input into a buffer that is only used until it is passed to {@link #release(ByteBuffer)}.
+         */
+        ByteBuffer read(long offset, int length) throws IOException;
+
+        void release(ByteBuffer buffer);
+    }
+
+    // A chunk always holds a whole block, the bytes left over from the previous chunk are read again
+    private static final int CHUNK_SIZE = 4 * MAX_BLOCK_SIZE;
+
+    // Magic number and the largest frame header
+    private static final int MAX_FRAME_HEADER_SIZE = SIZE_OF_INT + 14;
+
+    private final ZstdFrameDecompressor decompressor = new ZstdFrameDecompressor();
+
+    private final Source source;
+    private final long sourceSize;
+
+    private ByteBuffer inputBuffer;
+    private Object inputBase;
+    private long inputStart;
+    private long inputOffset; // The offset of inputStart in the source
+    private long inputLimit;
+    private long input;
+
+    private final XxHash64.Hasher contentHasher;
+
+    private byte[] window = new byte[0];
+    private int windowSize;
+    private int readPosition;
+    private int writePosition;
+
+    private boolean inFrame;
+    private boolean lastBlock;
+    private XxHash64.Hasher frameHasher;
+
+    private boolean closed;
+
+    /**
+     * @param computeChecksum whether to compute the XXH64 checksum of the whole decompressed content,
+     *                        see {@link #getContentChecksum()}
+     */
+    public ZstdInputStream(ByteBuffer input, boolean computeChecksum) {
+        this.source = null;
+        this.sourceSize = input.remaining();
+        this.contentHasher = computeChecksum ? new XxHash64.Hasher() : null;
+        setInput(input, 0);
+    }
+
+    /**
+     * @param size the size of the compressed input
+     * @param computeChecksum whether to compute the XXH64 checksum of the whole decompressed content,
+     *                        see {@link #getContentChecksum()}
+     */
+    public ZstdInputStream(Source source, long size, boolean computeChecksum) {
+        this.source = Objects.requireNonNull(source);
+        this.sourceSize = size;
+        this.contentHasher = computeChecksum ? new XxHash64.Hasher() : null;
+    }
+
+    private void setInput(ByteBuffer buffer, long offset) {
+        this.inputBuffer = buffer;
+        if (buffer.hasArray()) {
+            this.inputBase = buffer.array();
+            this.inputStart = ARRAY_BYTE_BASE_OFFSET + buffer.arrayOffset() + buffer.position();
+        } else {
+            this.inputBase = null;
+            this.inputStart = MemoryAccess.getDirectBufferAddress(buffer) + buffer.position();
+        }
+        this.inputOffset = offset;
+        this.input = inputStart;
+        this.inputLimit = inputStart + buffer.remaining();
+    }
+
+    private long getInputPosition() {
+        return inputOffset + (input - inputStart);
+    }
+
+    private boolean hasInput() {
+        return getInputPosition() < sourceSize;
+    }
+
+    /**
+     * Makes at least {@code length} bytes available after {@code input}, unless the input ends before them.
+     */
+    private void ensureInput(int length) throws IOException {
+        if (source == null || inputLimit - input >= length) {
+            return;
+        }
+
+        long position = getInputPosition();
+        long remaining = sourceSize - position;
+        if (remaining <= inputLimit - input) {
+            return;
+        }
+
+        ByteBuffer buffer = source.read(position, (int) Math.min(remaining, Math.max(length, CHUNK_SIZE)));
+        ByteBuffer oldBuffer = inputBuffer;
+        setInput(buffer, position);
+        if (oldBuffer != null) {
+            source.release(oldBuffer);
+        }
+    }
+
+    private void skipInput(long length) {
+        if (length <= inputLimit - input) {
+            input += length;
+        } else {
+            // Only possible with a source, the skipped bytes are never read
+            long position = getInputPosition() + length;
+            input = inputLimit;
+            inputOffset = position - (inputLimit - inputStart);
+        }
+    }
+
+    /**
+     * Returns the checksum of the decompressed content.
+     * It is only available after the end of the stream has been reached.
+     */
+    public long getContentChecksum() {
+        if (contentHasher == null) {
+            throw new IllegalStateException("Checksum is not computed");
+        }
+        if (inFrame || hasInput()) {
+            throw new IllegalStateException("End of stream has not been reached");
+        }
+        return contentHasher.getValue();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void startFrame() throws IOException {
+        ensureInput(MAX_FRAME_HEADER_SIZE);
+        decompressor.reset();
+        input += ZstdFrameDecompressor.verifyMagic(inputBase, input, inputLimit);
+
+        FrameHeader frameHeader = ZstdFrameDecompressor.readFrameHeader(inputBase, input, inputLimit);
+        verify(frameHeader.dictionaryId <= 0, input, "Dictionaries are not supported in streams");
+        input += frameHeader.headerSize;
+
+        long capacity;
+        if (frameHeader.windowSize < 0) {
+            // Single segment frame, the window is the whole content
+            capacity = frameHeader.contentSize;
+            windowSize = (int) Math.min(frameHeader.contentSize, Integer.MAX_VALUE);
+        } else {
+            capacity = (long) frameHeader.windowSize + MAX_BLOCK_SIZE;
+            if (frameHeader.contentSize >= 0) {
+                capacity = Math.min(capacity, frameHeader.contentSize);
+            }
+            windowSize = frameHeader.windowSize;
+        }
+        verify(capacity <= ZstdFrameDecompressor.MAX_WINDOW_SIZE + MAX_BLOCK_SIZE, input, "Window size too large (not yet supported)");
+
+        if (window.length < capacity) {
+            window = new byte[(int) capacity];
+        }
+
+        readPosition = 0;
+        writePosition = 0;
+        inFrame = true;
+        lastBlock = false;
+        frameHasher = frameHeader.hasChecksum ? new XxHash64.Hasher() : null;
+    }
+
+    private void finishFrame() throws IOException {
+        if (frameHasher != null) {
+            ensureInput(SIZE_OF_INT);
+            verify(input + SIZE_OF_INT <= inputLimit, input, "Not enough input bytes");
+            int checksum = MemoryAccess.getInt(inputBase, input);
+            int hash = (int) frameHasher.getValue();
+            if (checksum != hash) {
+                throw new MalformedInputException(input,
+                        String.format("Bad checksum. Expected: %s, actual: %s", Integer.toHexString(checksum), Integer.toHexString(hash)));
+            }
+            input += SIZE_OF_INT;
+        }
+
+        inFrame = false;
+    }
+
+    /**
+     * Moves the last {@code windowSize} bytes to the start of the buffer to make room for the next block.
+     */
+    private void compact() {
+        int keep = Math.min(windowSize, writePosition);
+        int from = writePosition - keep;
+        if (from > 0) {
+            System.arraycopy(window, from, window, 0, keep);
+            writePosition = keep;
+            readPosition = keep;
+        }
+    }
+
+    private void decodeBlock() throws IOException {
+        ensureInput(SIZE_OF_BLOCK_HEADER);
+        verify(input + SIZE_OF_BLOCK_HEADER <= inputLimit, input, "Not enough input bytes");
+
+        int header = get24BitLittleEndian(inputBase, input);
+        input += SIZE_OF_BLOCK_HEADER;
+
+        lastBlock = (header & 1) != 0;
+        int blockType = (header >>> 1) & 0b11;
+        int blockSize = (header >>> 3) & 0x1F_FFFF; // 21 bits
+        ensureInput(blockType == RLE_BLOCK ? 1 : blockSize);
+
+        if (window.length - writePosition < MAX_BLOCK_SIZE) {
+            compact();
+        }
+
+        long outputAddress = ARRAY_BYTE_BASE_OFFSET + writePosition;
+        long outputLimit = ARRAY_BYTE_BASE_OFFSET + window.length;
+
+        int decodedSize;
+        switch (blockType) {
+            case RAW_BLOCK:
+                verify(input + blockSize <= inputLimit, input, "Not enough input bytes");
+                decodedSize = ZstdFrameDecompressor.decodeRawBlock(inputBase, input, blockSize, window, outputAddress, outputLimit);
+                input += blockSize;
+                break;
+            case RLE_BLOCK:
+                verify(input + 1 <= inputLimit, input, "Not enough input bytes");
+                decodedSize = ZstdFrameDecompressor.decodeRleBlock(blockSize, inputBase, input, window, outputAddress, outputLimit);
+                input += 1;
+                break;
+            case COMPRESSED_BLOCK:
+                verify(input + blockSize <= inputLimit, input, "Not enough input bytes");
+                decodedSize = decompressor.decodeCompressedBlock(inputBase, input, blockSize, window, outputAddress, outputLimit, windowSize, ARRAY_BYTE_BASE_OFFSET);
+                input += blockSize;
+                break;
+            default:
+                throw fail(input, "Invalid block type");
+        }
+
+        if (frameHasher != null) {
+            frameHasher.update(window, writePosition, decodedSize);
+        }
+        if (contentHasher != null) {
+            contentHasher.update(window, writePosition, decodedSize);
+        }
+        writePosition += decodedSize;
+    }
+
+    /**
+     * Decodes blocks until there are decompressed bytes available.
+     *
+     * @return {@code false} if the end of the input has been reached
+     */
+    private boolean fill() throws IOException {
+        try {
+            while (readPosition == writePosition) {
+                if (!inFrame) {
+                    if (!hasInput()) {
+                        return false;
+                    }
+
+                    ensureInput(2 * SIZE_OF_INT);
+                    if (inputLimit - input >= SIZE_OF_INT
+                        && (MemoryAccess.getInt(inputBase, input) & SKIPPABLE_MAGIC_NUMBER_MASK) == SKIPPABLE_MAGIC_NUMBER) {
+                        // The skippable frame may be larger than a chunk, so its size is checked against the whole input
+                        verify(inputLimit - input >= 2 * SIZE_OF_INT, input, "Not enough input bytes");
+                        long skippableFrameSize = 2 * SIZE_OF_INT + MemoryAccess.getUnsignedInt(inputBase, input + SIZE_OF_INT);
+                        verify(skippableFrameSize <= sourceSize - getInputPosition(), input, "Not enough input bytes");
+                        skipInput(skippableFrameSize);
+                    } else {
+                        startFrame();
+                    }
+                } else if (lastBlock) {
+                    finishFrame();
+                } else {
+                    decodeBlock();
+                }
+            }
+            return true;
+        } catch (MalformedInputException e) {
+            throw new IOException(e);
+        } finally {
+            Reference.reachabilityFence(inputBuffer);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        ensureOpen();
+        if (readPosition == writePosition && !fill()) {
+            return -1;
+        }
+        return Byte.toUnsignedInt(window[readPosition++]);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+
+        if (readPosition == writePosition && !fill()) {
+            return -1;
+        }
+
+        int n = Math.min(len, writePosition - readPosition);
+        System.arraycopy(window, readPosition, b, off, n);
+        readPosition += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        ensureOpen();
+
+        long skipped = 0;
+        while (skipped < n && (readPosition < writePosition || fill())) {
+            int count = (int) Math.min(n - skipped, writePosition - readPosition);
+            readPosition += count;
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return writePosition - readPosition;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        window = null;
+        if (source != null && inputBuffer != null) {
+            source.release(inputBuffer);
+            inputBuffer = null;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot.decompressor.zstd;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * The seek table of the
+ * <a href="https://github.com/facebook/zstd/blob/dev/contrib/seekable_format/zstd_seekable_compression_format.md">zstd seekable format</a>.
+ * <p>
+ * The seek table is stored in a skippable frame at the end of the compressed data,
+ * and records the compressed and decompressed size of every independent frame before it.
+ */
+public final class ZstdSeekTable {
+    public static final int SKIPPABLE_MAGIC_NUMBER = Constants.SKIPPABLE_MAGIC_NUMBER | 0xE;
+    public static final int SEEKABLE_MAGIC_NUMBER = 0x8F92EAB1;
+
+    public static final int FOOTER_SIZE = 9;
+    public static final int CHECKSUM_FLAG = 0x80;
+
+    private static final int RESERVED_BITS = 0x7C;
+
+    /**
+     * @return the seek table at the end of the compressed data, or {@code null} if the data is not in the seekable format
+     */
+    public static ZstdSeekTable readFrom(ByteBuffer compressed) {
+        int length = compressed.remaining();
+        if (length < FOOTER_SIZE) {
+            return null;
+        }
+
+        ByteBuffer footer = compressed.duplicate();
+        footer.position(footer.limit() - FOOTER_SIZE);
+        long frameSize = getSeekTableFrameSize(footer);
+        if (frameSize < 0 || frameSize > length) {
+            return null;
+        }
+
+        ByteBuffer frame = compressed.duplicate();
+        frame.position((int) (frame.limit() - frameSize));
+        return readFrom(frame, length - frameSize);
+    }
+
+    /**
+     * @param footer the last {@link #FOOTER_SIZE} bytes of the compressed data
+     * @return the size of the skippable frame containing the seek table, or {@code -1} if the data is not in the seekable format
+     */
+    public static long getSeekTableFrameSize(ByteBuffer footer) {
+        ByteBuffer buffer = footer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int start = buffer.position();
+        if (buffer.remaining() != FOOTER_SIZE || buffer.getInt(start + 5) != SEEKABLE_MAGIC_NUMBER) {
+            return -1;
+        }
+
+        int descriptor = Byte.toUnsignedInt(buffer.get(start + 4));
+        if ((descriptor & RESERVED_BITS) != 0) {
+            return -1;
+        }
+
+        long frameCount = Integer.toUnsignedLong(buffer.getInt(start));
+        int entrySize = (descriptor & CHECKSUM_FLAG) != 0 ? 12 : 8;
+        return frameCount * entrySize + FOOTER_SIZE + 8;
+    }
+
+    /**
+     * @param seekTableFrame the skippable frame containing the seek table
+     * @param framesSize     the total size of the compressed frames before the seek table
+     * @return the seek table, or {@code null} if it is malformed
+     */
+    public static ZstdSeekTable readFrom(ByteBuffer seekTableFrame, long framesSize) {
+        ByteBuffer buffer = seekTableFrame.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int start = buffer.position();
+        int end = buffer.limit();
+
+        ByteBuffer footer = buffer.duplicate();
+        footer.position(end - FOOTER_SIZE);
+        if (getSeekTableFrameSize(footer) != end - start
+            || buffer.getInt(start) != SKIPPABLE_MAGIC_NUMBER
+            || Integer.toUnsignedLong(buffer.getInt(start + 4)) != end - start - 8) {
+            return null;
+        }
+
+        boolean hasChecksum = (buffer.get(end - 5) & CHECKSUM_FLAG) != 0;
+        int entrySize = hasChecksum ? 12 : 8;
+
+        int count = buffer.getInt(end - FOOTER_SIZE);
+        long[] compressedOffsets = new long[count + 1];
+        long[] decompressedOffsets = new long[count + 1];
+        int[] checksums = hasChecksum ? new int[count] : null;
+
+        int entry = start + 8;
+        for (int i = 0; i < count; i++) {
+            compressedOffsets[i + 1] = compressedOffsets[i] + Integer.toUnsignedLong(buffer.getInt(entry));
+            decompressedOffsets[i + 1] = decompressedOffsets[i] + Integer.toUnsignedLong(buffer.getInt(entry + 4));
+            if (hasChecksum) {
+                checksums[i] = buffer.getInt(entry + 8);
+            }
+            entry += entrySize;
+        }
+
+        if (compressedOffsets[count] != framesSize) {
+            return null;
+        }
+
+        return new ZstdSeekTable(compressedOffsets, decompressedOffsets, checksums);
+    }
+
+    private final long[] compressedOffsets;
+    private final long[] decompressedOffsets;
+    private final int[] checksums;
+
+    private ZstdSeekTable(long[] compressedOffsets, long[] decompressedOffsets, int[] checksums) {
+        this.compressedOffsets = compressedOffsets;
+        this.decompressedOffsets = decompressedOffsets;
+        this.checksums = checksums;
+    }
+
+    public int getFrameCount() {
+        return compressedOffsets.length - 1;
+    }
+
+    public long getDecompressedSize() {
+        return decompressedOffsets[decompressedOffsets.length - 1];
+    }
+
+    public long getCompressedOffset(int frame) {
+        return compressedOffsets[frame];
+    }
+
+    public int getCompressedSize(int frame) {
+        return (int) (compressedOffsets[frame + 1] - compressedOffsets[frame]);
+    }
+
+    public long getDecompressedOffset(int frame) {
+        return decompressedOffsets[frame];
+    }
+
+    public int getDecompressedSize(int frame) {
+        return (int) (decompressedOffsets[frame + 1] - decompressedOffsets[frame]);
+    }
+
+    public boolean hasChecksum() {
+        return checksums != null;
+    }
+
+    /**
+     * @return the lowest 32 bits of the XXH64 checksum of the decompressed frame
+     */
+    public int getChecksum(int frame) {
+        return checksums[frame];
+    }
+
+    /**
+     * @return the index of the frame that contains the decompressed position
+     */
+    public int findFrame(long position) {
+        if (position < 0 || position >= getDecompressedSize()) {
+            throw new IndexOutOfBoundsException("Position out of range: " + position);
+        }
+
+        int index = Arrays.binarySearch(decompressedOffsets, position);
+        if (index < 0) {
+            return -index - 2;
+        }
+
+        // Skip empty frames
+        while (decompressedOffsets[index + 1] == position) {
+            index++;
+        }
+        return index;
+    }
+}
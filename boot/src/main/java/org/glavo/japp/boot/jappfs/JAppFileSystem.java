@@ -379,7 +379,7 @@ public final class JAppFileSystem extends FileSystem {
         private List<Node> resolve() {
             List<Node> list = new ArrayList<>();
 
-            for (JAppResource resource : group.values()) {
+            for (JAppResource resource : group.getResources()) {
                 put(list, resource);
             }
 
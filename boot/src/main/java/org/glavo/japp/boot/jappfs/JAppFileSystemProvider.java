@@ -17,10 +17,10 @@ package org.glavo.japp.boot.jappfs;
 
 import org.glavo.japp.boot.JAppReader;
 import org.glavo.japp.boot.JAppResource;
-import org.glavo.japp.io.ByteBufferChannel;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.channels.SeekableByteChannel;
@@ -30,6 +30,8 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileAttributeView;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -93,13 +95,9 @@ public final class JAppFileSystemProvider extends FileSystemProvider {
         }
     }
 
-    @Override
-    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
-        checkOptions(options);
-
+    private static JAppResource resolveResource(Path path) throws IOException {
         JAppPath jappPath = toJAppPath(path);
-        JAppFileSystem fs = jappPath.getFileSystem();
-        JAppFileSystem.Node node = fs.resolve(jappPath);
+        JAppFileSystem.Node node = jappPath.getFileSystem().resolve(jappPath);
         if (node == null) {
             throw new FileNotFoundException(path.toString());
         }
@@ -108,8 +106,24 @@ public final class JAppFileSystemProvider extends FileSystemProvider {
             throw new FileSystemException(path + " is a directory");
         }
 
-        JAppResource resource = ((JAppFileSystem.ResourceNode) node).getResource();
-        return new ByteBufferChannel(fs.reader.readResource(resource));
+        return ((JAppFileSystem.ResourceNode) node).getResource();
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        checkOptions(options);
+
+        JAppResource resource = resolveResource(path);
+        return toJAppPath(path).getFileSystem().reader.openChannel(resource);
+    }
+
+    @Override
+    public InputStream newInputStream(Path path, OpenOption... options) throws IOException {
+        checkOptions(new HashSet<>(Arrays.asList(options)));
+
+        // The reader's streams have fast paths for readAllBytes and transferTo
+        JAppResource resource = resolveResource(path);
+        return toJAppPath(path).getFileSystem().reader.openResource(resource);
     }
 
     @Override
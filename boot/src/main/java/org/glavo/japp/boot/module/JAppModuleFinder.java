@@ -48,7 +48,8 @@ public final class JAppModuleFinder implements ModuleFinder {
 
     private static Set<String> findPackages(JAppResourceGroup group) {
         Set<String> packages = new HashSet<>();
-        for (String name : group.keySet()) {
+        for (JAppResource resource : group.getResources()) {
+            String name = resource.getName();
             if (name.endsWith(".class") && !name.startsWith("META-INF/")) {
                 int index = name.lastIndexOf("/");
                 if (index >= 0) {
@@ -64,7 +65,8 @@ public final class JAppModuleFinder implements ModuleFinder {
 
         Set<String> packages = new HashSet<>();
 
-        for (String name : group.keySet()) {
+        for (JAppResource resource : group.getResources()) {
+            String name = resource.getName();
             if (name.endsWith(".class") && !name.startsWith("META-INF/")) {
                 int index = name.lastIndexOf("/");
                 if (index >= 0) {
@@ -77,7 +79,7 @@ public final class JAppModuleFinder implements ModuleFinder {
                 }
 
                 List<String> providerClasses = new ArrayList<>();
-                try (BufferedReader fileReader = new BufferedReader(new InputStreamReader(reader.openResource(group.get(name))))) {
+                try (BufferedReader fileReader = new BufferedReader(new InputStreamReader(reader.openResource(resource)))) {
                     String line;
                     while ((line = fileReader.readLine()) != null) {
                         if (!line.isEmpty()) {
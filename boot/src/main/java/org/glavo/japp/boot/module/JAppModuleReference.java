@@ -81,7 +81,7 @@ public final class JAppModuleReference extends ModuleReference implements Module
 
     @Override
     public Stream<String> list() throws IOException {
-        return group.values().stream().map(JAppResource::getName);
+        return group.getResources().stream().map(JAppResource::getName);
     }
 
     @Override
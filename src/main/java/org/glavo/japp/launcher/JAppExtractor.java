@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.launcher;
+
+import org.glavo.japp.boot.JAppBootMetadata;
+import org.glavo.japp.boot.JAppReader;
+import org.glavo.japp.boot.JAppResource;
+import org.glavo.japp.boot.JAppResourceGroup;
+import org.glavo.japp.boot.JAppStorage;
+import org.glavo.japp.boot.decompressor.ZstdDecompressorPool;
+import org.glavo.japp.io.IOUtils;
+import org.glavo.japp.util.XxHash64;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Extracts the resource groups of a JApp file into plain jar files,
+ * so that the JVM loads them from its own class path and module path without the JApp boot module.
+ * <p>
+ * Each jar is stored in a content-addressed directory keyed by the checksums of the groups it is made of,
+ * so later launches only need to check that it exists.
+ * The entries are stored uncompressed, trading disk space for startup time.
+ */
+public final class JAppExtractor implements Closeable {
+
+    private final Path cacheDirectory;
+    private final Path jappFile;
+    private final JAppLauncherMetadata config;
+    private final int release;
+
+    private final ZstdDecompressorPool decompressors = new ZstdDecompressorPool();
+    private final JAppBootMetadata metadata;
+    private JAppReader reader;
+
+    private final Map<Path, List<JAppResourceGroup>> pending = new LinkedHashMap<>();
+    private final Map<Path, String> pendingModuleNames = new LinkedHashMap<>();
+
+    public JAppExtractor(Path cacheDirectory, Path jappFile, JAppLauncherMetadata config, int release) throws IOException {
+        this.cacheDirectory = cacheDirectory;
+        this.jappFile = jappFile;
+        this.config = config;
+        this.release = release;
+
+        try (FileChannel channel = FileChannel.open(jappFile)) {
+            ByteBuffer metadataBuffer = ByteBuffer.allocateDirect(Math.toIntExact(config.getBootMetadataSize())).order(ByteOrder.LITTLE_ENDIAN);
+            IOUtils.readFully(channel.position(config.getBaseOffset() + config.getBootMetadataOffset()), metadataBuffer);
+            metadataBuffer.flip();
+            this.metadata = JAppBootMetadata.readFrom(metadataBuffer, decompressors);
+        }
+    }
+
+    private static String fileName(String name) {
+        if (name == null) {
+            return "classes.jar";
+        }
+
+        StringBuilder builder = new StringBuilder(name.length() + 4);
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            builder.append(ch < 128 && (Character.isLetterOrDigit(ch) || ch == '.' || ch == '-' || ch == '_') ? ch : '_');
+        }
+        if (!name.endsWith(".jar")) {
+            builder.append(".jar");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the jar holding the referenced group, scheduling its extraction if it has not been extracted yet.
+     */
+    public Path add(JAppResourceGroupReference.Local reference, boolean isModulePath) {
+        List<JAppResourceGroup> layers = new ArrayList<>();
+        layers.add(metadata.getGroups().get(reference.getIndex()));
+        if (reference.getMultiReleaseIndexes() != null) {
+            for (Map.Entry<Integer, Integer> entry : reference.getMultiReleaseIndexes().entrySet()) {
+                if (entry.getKey() <= release) {
+                    layers.add(metadata.getGroups().get(entry.getValue()));
+                }
+            }
+        }
+
+        // The module name is part of the key, as it is written to the manifest of automatic modules
+        String moduleName = isModulePath ? reference.getName() : null;
+
+        StringBuilder key = new StringBuilder();
+        for (JAppResourceGroup layer : layers) {
+            key.append(String.format("%016x\n", layer.getChecksum()));
+        }
+        if (moduleName != null) {
+            key.append(moduleName).append('\n');
+        }
+
+        Path jar = cacheDirectory
+                .resolve(String.format("%016x", XxHash64.hash(key.toString().getBytes(StandardCharsets.UTF_8))))
+                .resolve(fileName(reference.getName()));
+
+        if (!Files.isRegularFile(jar)) {
+            pending.put(jar, layers);
+            pendingModuleNames.put(jar, moduleName);
+        }
+        return jar;
+    }
+
+    private synchronized JAppReader getReader() throws IOException {
+        if (reader == null) {
+            FileChannel channel = FileChannel.open(jappFile);
+            JAppStorage storage = JAppStorage.open(JAppStorage.Kind.MMAP, channel, config.getBaseOffset(), config.getBootMetadataOffset());
+            reader = new JAppReader(storage, metadata.getPool(), decompressors, null, Collections.emptyMap(), Collections.emptyMap());
+        }
+        return reader;
+    }
+
+    private byte[] readBytes(JAppResource resource) throws IOException {
+        ByteBuffer buffer = getReader().readResource(resource);
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void putEntry(ZipOutputStream output, String name, byte[] bytes, JAppResource resource) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(bytes.length);
+        entry.setCompressedSize(bytes.length);
+        entry.setCrc(crc.getValue());
+        if (resource != null) {
+            entry.setLastModifiedTime(resource.getLastModifiedTime());
+        }
+
+        output.putNextEntry(entry);
+        output.write(bytes);
+        output.closeEntry();
+    }
+
+    private void writeJar(Path file, List<JAppResourceGroup> layers, String moduleName) throws IOException {
+        // Same order as the overlays of the boot module: later layers replace resources of earlier layers
+        Map<String, JAppResource> resources = new LinkedHashMap<>();
+        for (JAppResourceGroup layer : layers) {
+            for (JAppResource resource : layer.getResources()) {
+                resources.put(resource.getName(), resource);
+            }
+        }
+
+        JAppResource manifestResource = resources.remove(JarFile.MANIFEST_NAME);
+        boolean automaticModule = moduleName != null && !resources.containsKey("module-info.class");
+
+        try (ZipOutputStream output = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            if (manifestResource != null || automaticModule) {
+                byte[] manifestBytes = manifestResource != null ? readBytes(manifestResource) : null;
+                if (automaticModule) {
+                    Manifest manifest = manifestBytes != null ? new Manifest(new ByteArrayInputStream(manifestBytes)) : new Manifest();
+                    Attributes attributes = manifest.getMainAttributes();
+                    attributes.putIfAbsent(Attributes.Name.MANIFEST_VERSION, "1.0");
+                    attributes.putValue("Automatic-Module-Name", moduleName);
+
+                    ByteArrayOutputStream manifestOutput = new ByteArrayOutputStream();
+                    manifest.write(manifestOutput);
+                    manifestBytes = manifestOutput.toByteArray();
+                }
+                putEntry(output, JarFile.MANIFEST_NAME, manifestBytes, manifestResource);
+            }
+
+            for (JAppResource resource : resources.values()) {
+                putEntry(output, resource.getName(), readBytes(resource), resource);
+            }
+        }
+    }
+
+    private void extract(Path jar, List<JAppResourceGroup> layers, String moduleName) throws IOException {
+        Path directory = jar.getParent();
+        Files.createDirectories(directory);
+
+        Path temp = Files.createTempFile(directory, "extract", ".tmp");
+        try {
+            writeJar(temp, layers, moduleName);
+            Files.move(temp, jar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Extracts all scheduled groups in parallel.
+     */
+    public void extractAll() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        int threads = Math.min(pending.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "JApp Extractor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Map.Entry<Path, List<JAppResourceGroup>> entry : pending.entrySet()) {
+                Path jar = entry.getKey();
+                List<JAppResourceGroup> layers = entry.getValue();
+                String moduleName = pendingModuleNames.get(jar);
+                futures.add(executor.submit(() -> {
+                    extract(jar, layers, moduleName);
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof UncheckedIOException) {
+                        throw ((UncheckedIOException) cause).getCause();
+                    } else {
+                        throw new IOException(cause);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            pending.clear();
+            pendingModuleNames.clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+}
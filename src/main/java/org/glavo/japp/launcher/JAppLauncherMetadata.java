@@ -122,8 +122,10 @@ public final class JAppLauncherMetadata {
             long fileContentSize = endBuffer.getLong();
             long bootMetadataOffset = endBuffer.getLong();
             long launcherMetadataOffset = endBuffer.getLong();
+            long prefetchOffset = endBuffer.getLong();
+            long prefetchSize = endBuffer.getLong();
 
-            assert endBuffer.remaining() == 24; // reserved
+            assert endBuffer.remaining() == 8; // reserved
 
             if (majorVersion != MAJOR_VERSION || minorVersion != MINOR_VERSION) {
                 throw new IOException("Version number mismatch");
@@ -141,6 +143,10 @@ public final class JAppLauncherMetadata {
                 throw new IOException("Invalid metadata offset: " + launcherMetadataOffset);
             }
 
+            if (prefetchOffset < 0 || prefetchSize < 0 || prefetchSize > bootMetadataOffset - prefetchOffset) {
+                throw new IOException(String.format("Invalid prefetch range (offset=%d, size=%d)", prefetchOffset, prefetchSize));
+            }
+
             long baseOffset = fileSize - fileContentSize;
             long metadataSize = fileContentSize - FILE_END_SIZE - launcherMetadataOffset;
 
@@ -162,20 +168,26 @@ public final class JAppLauncherMetadata {
                 group = JAppConfigGroup.readFrom(metadataBuffer);
             }
 
-            return new JAppLauncherMetadata(baseOffset, bootMetadataOffset, launcherMetadataOffset - bootMetadataOffset, group);
+            return new JAppLauncherMetadata(baseOffset, bootMetadataOffset, launcherMetadataOffset - bootMetadataOffset,
+                    prefetchOffset, prefetchSize, group);
         }
     }
 
     private final long baseOffset;
     private final long bootMetadataOffset;
     private final long bootMetadataSize;
+    private final long prefetchOffset;
+    private final long prefetchSize;
 
     private final JAppConfigGroup group;
 
-    public JAppLauncherMetadata(long baseOffset, long bootMetadataOffset, long bootMetadataSize, JAppConfigGroup group) {
+    public JAppLauncherMetadata(long baseOffset, long bootMetadataOffset, long bootMetadataSize,
+                                long prefetchOffset, long prefetchSize, JAppConfigGroup group) {
         this.baseOffset = baseOffset;
         this.bootMetadataOffset = bootMetadataOffset;
         this.bootMetadataSize = bootMetadataSize;
+        this.prefetchOffset = prefetchOffset;
+        this.prefetchSize = prefetchSize;
         this.group = group;
     }
 
@@ -191,6 +203,20 @@ public final class JAppLauncherMetadata {
         return bootMetadataSize;
     }
 
+    /**
+     * Returns the offset of the range holding the resources read at startup, relative to the base offset.
+     */
+    public long getPrefetchOffset() {
+        return prefetchOffset;
+    }
+
+    /**
+     * Returns the size of the range holding the resources read at startup, or {@code 0} if it is unknown.
+     */
+    public long getPrefetchSize() {
+        return prefetchSize;
+    }
+
     public JAppConfigGroup getGroup() {
         return group;
     }
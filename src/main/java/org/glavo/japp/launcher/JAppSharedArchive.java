@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.launcher;
+
+import org.glavo.japp.io.IOUtils;
+import org.glavo.japp.platform.JavaRuntime;
+import org.glavo.japp.util.XxHash64;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manages the class data sharing archive of a JApp file, or the AOT cache on Java 25 and later.
+ * <p>
+ * The archive is only used when {@code japp run} is given {@code --cds}.
+ * The first launch of a file on a Java runtime records the archive, later launches reuse it.
+ * Archives are keyed by the boot metadata of the file (which includes the checksum and offset of every resource),
+ * the Java runtime and the JVM options.
+ * <p>
+ * The JDK only archives classes that the built-in class loaders load from the file system,
+ * so classes defined from {@code japp:} URLs are never archived.
+ * The archive still holds the JDK classes and the classes of the JApp boot module loaded during startup,
+ * and the JVM silently falls back to loading classes normally when it cannot use the archive.
+ */
+public final class JAppSharedArchive {
+
+    private static final long MAX_UNUSED_TIME = TimeUnit.DAYS.toMillis(30);
+
+    private static final String[] USER_OPTIONS = {
+            "-Xshare:",
+            "-XX:SharedArchiveFile=",
+            "-XX:ArchiveClassesAtExit=",
+            "-XX:+AutoCreateSharedArchive",
+            "-XX:AOTCache=",
+            "-XX:AOTCacheOutput=",
+            "-XX:AOTMode=",
+            "-XX:AOTConfiguration=",
+    };
+
+    /**
+     * @return whether the JVM options already configure class data sharing
+     */
+    static boolean isConfigured(List<String> jvmOptions) {
+        for (String option : jvmOptions) {
+            for (String userOption : USER_OPTIONS) {
+                if (option.startsWith(userOption)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static String archiveName(JAppLauncherMetadata config, Path jappFile, JavaRuntime java, List<String> jvmOptions) throws IOException {
+        long metadataChecksum;
+        try (FileChannel channel = FileChannel.open(jappFile)) {
+            ByteBuffer metadata = ByteBuffer.allocateDirect(Math.toIntExact(config.getBootMetadataSize()));
+            IOUtils.readFully(channel.position(config.getBaseOffset() + config.getBootMetadataOffset()), metadata);
+            metadata.flip();
+            metadataChecksum = XxHash64.hashByteBufferWithoutUpdate(metadata);
+        }
+
+        StringBuilder runtime = new StringBuilder();
+        runtime.append(java.getExec().toAbsolutePath().normalize()).append('\n');
+        runtime.append(java.getVersion()).append('\n');
+        for (String option : jvmOptions) {
+            runtime.append(option).append('\n');
+        }
+        long runtimeChecksum = XxHash64.hash(runtime.toString().getBytes(StandardCharsets.UTF_8));
+
+        return String.format("%016x-%016x.%s", metadataChecksum, runtimeChecksum, getRelease(java) >= 25 ? "aot" : "jsa");
+    }
+
+    @SuppressWarnings("deprecation")
+    private static int getRelease(JavaRuntime java) {
+        return java.getVersion().major();
+    }
+
+    /**
+     * Returns the options that make the JVM use the archive, or record it if it does not exist yet.
+     */
+    static List<String> getJvmOptions(JavaRuntime java, Path archive) {
+        int release = getRelease(java);
+        boolean exists = Files.isRegularFile(archive);
+
+        List<String> options = new ArrayList<>();
+        if (release >= 25) {
+            options.add("-Xlog:cds=off,aot=off");
+            options.add((exists ? "-XX:AOTCache=" : "-XX:AOTCacheOutput=") + archive);
+        } else if (release >= 19) {
+            options.add("-Xlog:cds=off,cds+dynamic=off");
+            options.add("-XX:+AutoCreateSharedArchive");
+            options.add("-XX:SharedArchiveFile=" + archive);
+        } else if (release >= 13) {
+            options.add("-Xlog:cds=off,cds+dynamic=off");
+            options.add((exists ? "-XX:SharedArchiveFile=" : "-XX:ArchiveClassesAtExit=") + archive);
+        }
+        return options;
+    }
+
+    /**
+     * Deletes the archives that have not been used for a long time.
+     */
+    static void cleanup(Path directory, Path current) {
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (!file.equals(current) && now - Files.getLastModifiedTime(file).toMillis() > MAX_UNUSED_TIME) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Returns the JVM options for launching the JApp file with a shared archive stored in the given directory.
+     * If anything goes wrong, the file is launched without an archive.
+     */
+    public static List<String> prepare(Path directory, JAppLauncherMetadata config, Path jappFile,
+                                       JavaRuntime java, List<String> jvmOptions) {
+        if (getRelease(java) < 13 || isConfigured(jvmOptions)) {
+            return new ArrayList<>();
+        }
+
+        try {
+            Path archive = directory.resolve(archiveName(config, jappFile, java, jvmOptions));
+            Files.createDirectories(directory);
+
+            if (Files.isRegularFile(archive)) {
+                // Keeps the archive from being cleaned up while it is in use
+                Files.setLastModifiedTime(archive, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+            cleanup(directory, archive);
+
+            return getJvmOptions(java, archive);
+        } catch (IOException | RuntimeException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    private JAppSharedArchive() {
+    }
+}
@@ -17,12 +17,14 @@ package org.glavo.japp.launcher;
 
 import org.glavo.japp.JAppProperties;
 import org.glavo.japp.boot.JAppBootArgs;
+import org.glavo.japp.boot.JAppVerifiedFiles;
 import org.glavo.japp.condition.ConditionParser;
 import org.glavo.japp.platform.JAppRuntimeContext;
 import org.glavo.japp.platform.JavaRuntime;
 import org.glavo.japp.maven.MavenResolver;
 import org.glavo.japp.io.ByteBufferOutputStream;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Path;
@@ -99,81 +101,130 @@ public final class Launcher {
         out.writeByte(JAppBootArgs.ID_RESOLVED_REFERENCE_END);
     }
 
-    private static void printHelpMessage(PrintStream out) {
-        out.println("Usage: japp run [options] <japp file> [args]");
-        out.println("Supported options:");
-        out.println("  --help      Print this message");
-        out.println("  -J<flag>    Pass <flag> directly to java");
+    private static void addPathOption(List<String> command, String option, List<Path> paths) {
+        if (paths.isEmpty()) {
+            return;
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (Path path : paths) {
+            if (builder.length() > 0) {
+                builder.append(File.pathSeparatorChar);
+            }
+            builder.append(path);
+        }
+        command.add(option);
+        command.add(builder.toString());
     }
 
-    public static void run(Path jappFile, List<String> jvmOptions, List<String> args) throws Throwable {
-        JAppLauncherMetadata config = JAppLauncherMetadata.readFile(jappFile);
+    private static List<Path> resolvePath(JAppExtractor extractor, List<JAppResourceGroupReference> references, boolean isModulePath) throws Throwable {
+        List<Path> result = new ArrayList<>();
+        for (JAppResourceGroupReference reference : references) {
+            if (reference instanceof JAppResourceGroupReference.Local) {
+                result.add(extractor.add((JAppResourceGroupReference.Local) reference, isModulePath));
+            } else if (reference instanceof JAppResourceGroupReference.Maven) {
+                JAppResourceGroupReference.Maven maven = (JAppResourceGroupReference.Maven) reference;
+                result.add(MavenResolver.resolve(
+                        maven.getRepository(),
+                        maven.getGroup(),
+                        maven.getArtifact(),
+                        maven.getVersion(),
+                        maven.getClassifier()
+                ).toAbsolutePath().normalize());
+            } else {
+                throw new AssertionError("Type: " + reference.getClass());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the JVM options shared by both launch modes, the user's options come last so that they take precedence.
+     *
+     * @param nativeAccessModules the modules passed to {@code --enable-native-access} if the group enables native access
+     */
+    private static void addJvmOptions(List<String> command, JAppLauncherMetadata config, Path jappFile, JavaRuntime java,
+                                      List<String> nativeAccessModules, List<String> jvmOptions,
+                                      boolean sharedArchive, boolean extract) {
         JAppConfigGroup group = config.getGroup();
 
-        JAppRuntimeContext context = JAppRuntimeContext.search(group);
-        if (context == null) {
-            System.err.println("Error: Unable to find suitable Java");
-            System.err.println("Condition: " + ConditionParser.parse(group.condition));
-            System.err.println("Java:");
+        @SuppressWarnings("deprecation")
+        int release = java.getVersion().major();
 
-            for (JavaRuntime java : JavaRuntime.getAllJava()) {
-                System.err.println("  - " + java);
+        for (String property : group.getJvmProperties()) {
+            command.add("-D" + property);
+        }
+
+        command.addAll(group.getExtraJvmOptions());
+
+        if (!group.getEnableNativeAccess().isEmpty()) {
+            if (release == 16) {
+                command.add("-Dforeign.restricted=permit");
+            } else if (release >= 17) {
+                command.add("--enable-native-access=" + String.join(",", nativeAccessModules));
             }
 
-            System.exit(1);
+            if (release <= 21) {
+                command.add("--enable-preview");
+            }
         }
 
-        config.getGroup().resolve(context);
+        if (sharedArchive) {
+            List<String> keyOptions = jvmOptions;
+            if (extract) {
+                // The extracted jars load different classes, so they need an archive of their own
+                keyOptions = new ArrayList<>(jvmOptions);
+                keyOptions.add("--extract");
+            }
+            command.addAll(JAppSharedArchive.prepare(JAppProperties.getHomeDirectory().resolve("cache").resolve("cds"),
+                    config, jappFile, java, keyOptions));
+        }
 
-        List<String> command = new ArrayList<>();
-        command.add(context.getJava().getExec().toString());
+        command.addAll(jvmOptions);
+    }
 
-        @SuppressWarnings("deprecation")
-        int release = context.getJava().getVersion().major();
+    /**
+     * Builds the command that runs the application through the JApp boot module.
+     */
+    private static List<String> createBootCommand(JAppLauncherMetadata config, Path jappFile, JavaRuntime java,
+                                                  List<String> jvmOptions, boolean sharedArchive) throws Throwable {
+        JAppConfigGroup group = config.getGroup();
 
-        boolean enablePreview = false;
+        @SuppressWarnings("deprecation")
+        int release = java.getVersion().major();
 
-        for (String property : group.getJvmProperties()) {
-            command.add("-D" + property);
-        }
+        List<String> command = new ArrayList<>();
+        command.add(java.getExec().toString());
+        command.add("-D" + JAppVerifiedFiles.PROPERTY_CACHE_DIRECTORY + "="
+                + JAppProperties.getHomeDirectory().resolve("cache").resolve("verified"));
 
-        command.addAll(group.getExtraJvmOptions());
+        List<String> nativeAccessModules = new ArrayList<>();
+        nativeAccessModules.add(BOOT_LAUNCHER_MODULE);
 
         try (ByteBufferOutputStream argsBuilder = new ByteBufferOutputStream()) {
             argsBuilder.writeString(jappFile.toString());
             argsBuilder.writeLong(config.getBaseOffset());
             argsBuilder.writeLong(config.getBootMetadataOffset());
             argsBuilder.writeLong(config.getBootMetadataSize());
+            argsBuilder.writeLong(config.getPrefetchOffset());
+            argsBuilder.writeLong(config.getPrefetchSize());
 
             writeStringListField(argsBuilder, JAppBootArgs.Field.ADD_READS, group.getAddReads());
             writeStringListField(argsBuilder, JAppBootArgs.Field.ADD_OPENS, group.getAddOpens());
             writeStringListField(argsBuilder, JAppBootArgs.Field.ADD_EXPORTS, group.getAddExports());
 
-            if (!group.getEnableNativeAccess().isEmpty()) {
-                if (release == 16) {
-                    command.add("-Dforeign.restricted=permit");
-                } else if (release >= 17) {
-                    command.add("--enable-native-access=" + BOOT_LAUNCHER_MODULE);
-
-                    List<String> list;
-                    if (group.getEnableNativeAccess().contains("ALL-UNNAMED")) {
-                        command.add("--enable-native-access=ALL-UNNAMED");
-                        list = new ArrayList<>();
-                        for (String module : group.getEnableNativeAccess()) {
-                            if (!module.equals("ALL-UNNAMED")) {
-                                list.add(module);
-                            }
-                        }
+            if (!group.getEnableNativeAccess().isEmpty() && release >= 17) {
+                // The modules in the JApp file are enabled by the boot module, only the unnamed module is enabled by java
+                List<String> list = new ArrayList<>();
+                for (String module : group.getEnableNativeAccess()) {
+                    if (module.equals("ALL-UNNAMED")) {
+                        nativeAccessModules.add(module);
                     } else {
-                        list = group.getEnableNativeAccess();
+                        list.add(module);
                     }
-
-                    writeStringListField(argsBuilder, JAppBootArgs.Field.ENABLE_NATIVE_ACCESS, list);
                 }
 
-                if (release <= 21) {
-                    enablePreview = true;
-                }
+                writeStringListField(argsBuilder, JAppBootArgs.Field.ENABLE_NATIVE_ACCESS, list);
             }
 
             writeClassOrModulePath(argsBuilder, JAppBootArgs.Field.MODULE_PATH, release, group.getModulePath());
@@ -194,11 +245,7 @@ public final class Launcher {
             command.add("-Dorg.glavo.japp.boot.args=" + Base64.getEncoder().encodeToString(argsBuilder.toByteArray()));
         }
 
-        if (enablePreview) {
-            command.add("--enable-preview");
-        }
-
-        command.addAll(jvmOptions);
+        addJvmOptions(command, config, jappFile, java, nativeAccessModules, jvmOptions, sharedArchive, false);
 
         Collections.addAll(command,
                 "--module-path",
@@ -211,7 +258,102 @@ public final class Launcher {
                 "--module",
                 BOOT_LAUNCHER_MODULE
         );
+        return command;
+    }
+
+    /**
+     * Builds the command that runs the application from extracted jars on the normal class path and module path,
+     * without the JApp boot module.
+     */
+    private static List<String> createExtractedCommand(JAppLauncherMetadata config, Path jappFile, JavaRuntime java,
+                                                       List<String> jvmOptions, boolean sharedArchive) throws Throwable {
+        JAppConfigGroup group = config.getGroup();
+
+        @SuppressWarnings("deprecation")
+        int release = java.getVersion().major();
+
+        List<Path> modulePath;
+        List<Path> classPath;
+        try (JAppExtractor extractor = new JAppExtractor(
+                JAppProperties.getHomeDirectory().resolve("cache").resolve("extracted"), jappFile, config, release)) {
+            modulePath = resolvePath(extractor, group.getModulePath(), true);
+            classPath = resolvePath(extractor, group.getClassPath(), false);
+            extractor.extractAll();
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(java.getExec().toString());
+
+        for (String value : group.getAddReads()) {
+            command.add("--add-reads=" + value);
+        }
+        for (String value : group.getAddExports()) {
+            command.add("--add-exports=" + value);
+        }
+        for (String value : group.getAddOpens()) {
+            command.add("--add-opens=" + value);
+        }
+
+        addJvmOptions(command, config, jappFile, java, group.getEnableNativeAccess(), jvmOptions, sharedArchive, true);
+
+        addPathOption(command, "--module-path", modulePath);
+        addPathOption(command, "--class-path", classPath);
+
+        if (group.getMainModule() != null) {
+            command.add("--add-modules=ALL-MODULE-PATH");
+            command.add("--module");
+            command.add(group.getMainClass() != null
+                    ? group.getMainModule() + "/" + group.getMainClass()
+                    : group.getMainModule());
+        } else {
+            if (!modulePath.isEmpty()) {
+                command.add("--add-modules=ALL-MODULE-PATH");
+            }
+            if (group.getMainClass() == null) {
+                throw new IllegalStateException("No main class specified");
+            }
+            command.add(group.getMainClass());
+        }
+        return command;
+    }
+
+    private static void printHelpMessage(PrintStream out) {
+        out.println("Usage: japp run [options] <japp file> [args]");
+        out.println("Supported options:");
+        out.println("  --help      Print this message");
+        out.println("  --cds       Create and reuse a class data sharing archive (an AOT cache on Java 25+)");
+        out.println("              The archive only holds the JDK and JApp boot classes, not the application classes");
+        out.println("  --extract   Extract the application into a cache directory and run it from plain jars");
+        out.println("  -J<flag>    Pass <flag> directly to java");
+    }
+
+    public static void run(Path jappFile, List<String> jvmOptions, List<String> args) throws Throwable {
+        run(jappFile, jvmOptions, args, false, false);
+    }
+
+    public static void run(Path jappFile, List<String> jvmOptions, List<String> args,
+                           boolean sharedArchive, boolean extract) throws Throwable {
+        JAppLauncherMetadata config = JAppLauncherMetadata.readFile(jappFile);
+        JAppConfigGroup group = config.getGroup();
+
+        JAppRuntimeContext context = JAppRuntimeContext.search(group);
+        if (context == null) {
+            System.err.println("Error: Unable to find suitable Java");
+            System.err.println("Condition: " + ConditionParser.parse(group.condition));
+            System.err.println("Java:");
+
+            for (JavaRuntime java : JavaRuntime.getAllJava()) {
+                System.err.println("  - " + java);
+            }
+
+            System.exit(1);
+        }
+
+        config.getGroup().resolve(context);
 
+        List<String> command = extract
+                ? createExtractedCommand(config, jappFile, context.getJava(), jvmOptions, sharedArchive)
+                : createBootCommand(config, jappFile, context.getJava(), jvmOptions, sharedArchive);
         command.addAll(args);
 
         System.exit(new ProcessBuilder(command).inheritIO().start().waitFor());
@@ -221,6 +363,8 @@ public final class Launcher {
         ArrayList<String> jvmOptions = new ArrayList<>();
 
         String jappFile = null;
+        boolean sharedArchive = false;
+        boolean extract = false;
 
         int i = 0;
         while (i < args.length) {
@@ -231,6 +375,12 @@ public final class Launcher {
                 case "--help":
                     printHelpMessage(System.out);
                     return;
+                case "--cds":
+                    sharedArchive = true;
+                    break;
+                case "--extract":
+                    extract = true;
+                    break;
                 default:
                     if (arg.startsWith("-J")) {
                         jvmOptions.add(arg.substring("-J".length()));
@@ -249,6 +399,6 @@ public final class Launcher {
         }
 
         Path file = Paths.get(jappFile).toAbsolutePath().normalize();
-        run(file, jvmOptions, Arrays.asList(args).subList(i, args.length));
+        run(file, jvmOptions, Arrays.asList(args).subList(i, args.length), sharedArchive, extract);
     }
 }
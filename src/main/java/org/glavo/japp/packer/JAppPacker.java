@@ -17,22 +17,29 @@ package org.glavo.japp.packer;
 
 import org.glavo.japp.JAppProperties;
 import org.glavo.japp.Main;
+import org.glavo.japp.boot.JAppAccessProfile;
 import org.glavo.japp.condition.ConditionParser;
 import org.glavo.japp.io.LittleEndianDataOutput;
 import org.glavo.japp.launcher.JAppConfigGroup;
 import org.glavo.japp.launcher.Launcher;
 import org.glavo.japp.packer.processor.ClassPathProcessor;
+import org.glavo.japp.packer.compressor.classfile.AttributeStripper;
+import org.glavo.japp.packer.compressor.classfile.ByteArrayPoolBuilder;
+import org.glavo.japp.util.SizeUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
@@ -63,6 +70,15 @@ public final class JAppPacker {
                 writer.endConfigGroup();
             }
         }
+
+        public void addRoots(TreeShaker treeShaker) {
+            if (group.mainClass != null) {
+                treeShaker.addRoot(group.mainClass);
+            }
+            for (JAppConfigGroupBuilder child : children) {
+                child.addRoots(treeShaker);
+            }
+        }
     }
 
     private JAppConfigGroupBuilder current = new JAppConfigGroupBuilder(null);
@@ -77,10 +93,40 @@ public final class JAppPacker {
         }
     }
 
+    private static int nextSizeArg(String[] args, int index, int min, int max, String name) {
+        String value = nextArg(args, index);
+        long size;
+        try {
+            size = SizeUtils.parseSize(value);
+        } catch (IllegalArgumentException e) {
+            size = -1;
+        }
+
+        if (size < min || size > max) {
+            System.err.println("Error: invalid " + name + ": " + value + " (must be between " + min + " and " + max + ")");
+            System.exit(1);
+        }
+        return (int) size;
+    }
+
     public static void main(String[] args) throws Throwable {
         JAppPacker packer = new JAppPacker();
         Path outputFile = null;
         boolean appendBootJar = false;
+        int seekableFrameSize = 0;
+        JAppAccessProfile accessProfile = null;
+        int poolChunkSize = ByteArrayPoolBuilder.DEFAULT_CHUNK_SIZE;
+        boolean compressPool = true;
+        boolean renumberPool = false;
+        boolean constantPoolColumns = false;
+        boolean trainDictionaries = false;
+        int solidBlockSize = 0;
+        Set<String> strippedAttributes = new LinkedHashSet<>();
+        boolean shrink = false;
+        List<String> keepRules = new ArrayList<>();
+        List<Path> keepFiles = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path shrinkReportFile = null;
 
         boolean hasMain = false;
 
@@ -165,6 +211,94 @@ public final class JAppPacker {
                     appendBootJar = true;
                     break;
                 }
+                case "--seekable-frame-size": {
+                    seekableFrameSize = nextSizeArg(args, i++, 1, Integer.MAX_VALUE, "seekable frame size");
+                    break;
+                }
+                case "--pool-chunk-size": {
+                    poolChunkSize = nextSizeArg(args, i++, 1, Integer.MAX_VALUE, "pool chunk size");
+                    break;
+                }
+                case "--uncompressed-pool": {
+                    compressPool = false;
+                    break;
+                }
+                case "--renumber-pool": {
+                    renumberPool = true;
+                    break;
+                }
+                case "--constant-pool-columns": {
+                    constantPoolColumns = true;
+                    break;
+                }
+                case "--solid-block-size": {
+                    solidBlockSize = nextSizeArg(args, i++, 0, JAppWriter.MAX_SOLID_BLOCK_SIZE, "solid block size");
+                    if (solidBlockSize != 0 && solidBlockSize < JAppWriter.MIN_SOLID_BLOCK_SIZE) {
+                        System.err.println("Error: solid block size must be 0 or at least " + JAppWriter.MIN_SOLID_BLOCK_SIZE);
+                        System.exit(1);
+                    }
+                    break;
+                }
+                case "--train-dictionaries": {
+                    trainDictionaries = true;
+                    break;
+                }
+                case "--strip-debug": {
+                    strippedAttributes.addAll(AttributeStripper.DEBUG_ATTRIBUTES);
+                    break;
+                }
+                case "--strip-attributes": {
+                    String value = nextArg(args, i++);
+                    for (String attribute : value.split(",")) {
+                        attribute = attribute.trim();
+                        if (!AttributeStripper.STRIPPABLE_ATTRIBUTES.contains(attribute)) {
+                            System.err.println("Error: attribute cannot be stripped: " + attribute
+                                    + " (supported: " + String.join(", ", AttributeStripper.STRIPPABLE_ATTRIBUTES) + ")");
+                            System.exit(1);
+                        }
+                        strippedAttributes.add(attribute);
+                    }
+                    break;
+                }
+                case "--threads": {
+                    String value = nextArg(args, i++);
+                    try {
+                        threads = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        threads = -1;
+                    }
+                    if (threads <= 0) {
+                        System.err.println("Error: invalid number of threads: " + value);
+                        System.exit(1);
+                    }
+                    break;
+                }
+                case "--shrink": {
+                    shrink = true;
+                    break;
+                }
+                case "--keep": {
+                    keepRules.add(nextArg(args, i++));
+                    break;
+                }
+                case "--keep-file": {
+                    keepFiles.add(Paths.get(nextArg(args, i++)));
+                    break;
+                }
+                case "--shrink-report": {
+                    shrinkReportFile = Paths.get(nextArg(args, i++));
+                    break;
+                }
+                case "--access-profile": {
+                    String value = nextArg(args, i++);
+                    try {
+                        accessProfile = JAppAccessProfile.read(Paths.get(value));
+                    } catch (IOException e) {
+                        System.err.println("Error: failed to read access profile: " + e.getMessage());
+                        System.exit(1);
+                    }
+                    break;
+                }
                 default: {
                     if (arg.startsWith("-D")) {
                         String property = arg.substring("-D".length());
@@ -214,17 +348,58 @@ public final class JAppPacker {
             System.exit(1);
         }
 
+        TreeShaker treeShaker = null;
+        if (shrink) {
+            treeShaker = new TreeShaker();
+            for (String rule : keepRules) {
+                try {
+                    treeShaker.addKeepRule(rule);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Error: invalid keep rule: " + rule);
+                    System.exit(1);
+                }
+            }
+            for (Path file : keepFiles) {
+                try {
+                    treeShaker.addKeepRules(file);
+                } catch (IOException | IllegalArgumentException e) {
+                    System.err.println("Error: failed to read keep rules: " + e.getMessage());
+                    System.exit(1);
+                }
+            }
+            packer.current.addRoots(treeShaker);
+        } else if (!keepRules.isEmpty() || !keepFiles.isEmpty()) {
+            System.err.println("Error: --keep and --keep-file require --shrink");
+            System.exit(1);
+        } else if (shrinkReportFile != null) {
+            System.err.println("Error: --shrink-report requires --shrink");
+            System.exit(1);
+        }
+
         String header;
         try (InputStream input = JAppWriter.class.getResourceAsStream("header.sh")) {
             header = new String(input.readAllBytes(), StandardCharsets.UTF_8)
                     .replace("%japp.project.directory%", JAppProperties.getProjectDirectory().toString());
         }
 
+        AttributeStripper attributeStripper = strippedAttributes.isEmpty() ? null : new AttributeStripper(strippedAttributes);
+
         try (LittleEndianDataOutput output = LittleEndianDataOutput.of(
                 FileChannel.open(outputFile, EnumSet.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)))) {
             output.writeBytes(header.getBytes(StandardCharsets.UTF_8));
 
             try (JAppWriter writer = new JAppWriter(output, packer.current.group)) {
+                writer.setSeekableFrameSize(seekableFrameSize);
+                writer.setAccessProfile(accessProfile);
+                writer.getPool().setChunkSize(poolChunkSize);
+                writer.getPool().setCompressed(compressPool);
+                writer.setRenumberPool(renumberPool);
+                writer.setConstantPoolColumns(constantPoolColumns);
+                writer.setTrainDictionaries(trainDictionaries);
+                writer.setSolidBlockSize(solidBlockSize);
+                writer.setAttributeStripper(attributeStripper);
+                writer.setTreeShaker(treeShaker);
+                writer.setThreads(threads);
                 packer.current.writeTo(writer);
             }
 
@@ -237,6 +412,25 @@ public final class JAppPacker {
 
         //noinspection ResultOfMethodCallIgnored
         outputFile.toFile().setExecutable(true);
+
+        if (attributeStripper != null) {
+            System.out.print(attributeStripper.getReport());
+        }
+
+        if (treeShaker != null) {
+            System.out.print(treeShaker.getReport());
+
+            if (shrinkReportFile != null) {
+                List<String> lines = new ArrayList<>();
+                treeShaker.getRemovedClasses().forEach((name, classes) -> {
+                    lines.add(name + ":");
+                    for (String className : classes) {
+                        lines.add("    " + className);
+                    }
+                });
+                Files.write(shrinkReportFile, lines);
+            }
+        }
     }
 
     private static Manifest getEmbeddedLauncherManifest() {
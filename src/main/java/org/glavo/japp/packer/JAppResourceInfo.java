@@ -34,6 +34,10 @@ public final class JAppResourceInfo {
 
     Long checksum;
 
+    // Only for solid resources
+    long blockSize = -1L;
+    long blockOffset = -1L;
+
     public JAppResourceInfo(String name) {
         this.name = name;
     }
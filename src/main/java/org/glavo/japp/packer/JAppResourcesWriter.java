@@ -15,15 +15,26 @@
  */
 package org.glavo.japp.packer;
 
+import org.glavo.japp.CompressionMethod;
+import org.glavo.japp.io.ByteBufferOutputStream;
 import org.glavo.japp.launcher.JAppResourceGroupReference;
+import org.glavo.japp.packer.compressor.CompressContext;
 import org.glavo.japp.packer.compressor.CompressResult;
+import org.glavo.japp.packer.compressor.classfile.AttributeStripper;
+import org.glavo.japp.packer.compressor.classfile.ByteArrayPoolBuilder;
+import org.glavo.japp.packer.compressor.classfile.ClassFileCompressor;
 import org.glavo.japp.util.XxHash64;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public final class JAppResourcesWriter implements AutoCloseable {
     private final JAppWriter writer;
@@ -33,10 +44,25 @@ public final class JAppResourcesWriter implements AutoCloseable {
     private final Map<String, JAppResourceInfo> resources = new LinkedHashMap<>();
     private final Map<Integer, Map<String, JAppResourceInfo>> multiReleaseResources = new TreeMap<>();
 
+    // The solid block being filled
+    private ByteBufferOutputStream solidBlock = new ByteBufferOutputStream();
+    private final List<JAppResourceInfo> solidResources = new ArrayList<>();
+
+    // Resources being prepared on the compression threads, in the order they are written
+    private final ArrayDeque<QueuedResource> queue = new ArrayDeque<>();
+
+    // Resources held back until tree shaking is done
+    private List<PendingResource> pendingResources;
+    private int referenceIndex = -1;
+
     JAppResourcesWriter(JAppWriter writer, String name, List<JAppResourceGroupReference> referenceList) {
         this.writer = writer;
         this.name = name;
         this.referenceList = referenceList;
+
+        if (writer.getTreeShaker() != null) {
+            this.pendingResources = new ArrayList<>();
+        }
     }
 
     public void writeResource(JAppResourceInfo resource, byte[] body) throws IOException {
@@ -44,12 +70,35 @@ public final class JAppResourcesWriter implements AutoCloseable {
     }
 
     public void writeResource(int release, JAppResourceInfo resource, byte[] body) throws IOException {
+        writeResource(release, resource, () -> body);
+    }
+
+    public void writeResource(JAppResourceInfo resource, BodyReader reader) throws IOException {
+        writeResource(-1, resource, reader);
+    }
+
+    /**
+     * Writes a resource whose body is read by {@code reader}.
+     * When the resources are compressed on multiple threads, the body is read on one of them.
+     */
+    public void writeResource(int release, JAppResourceInfo resource, BodyReader reader) throws IOException {
         if (resource.hasWritten) {
             throw new AssertionError("Resource " + resource.name + " has been written");
         }
 
         resource.hasWritten = true;
 
+        if (pendingResources != null) {
+            byte[] body = reader.read();
+            writer.getTreeShaker().addResource(resource.name, body);
+            pendingResources.add(new PendingResource(release, resource, body));
+            return;
+        }
+
+        doWriteResource(release, resource, reader);
+    }
+
+    private void doWriteResource(int release, JAppResourceInfo resource, BodyReader reader) throws IOException {
         Map<String, JAppResourceInfo> resources;
         if (release == -1) {
             resources = this.resources;
@@ -58,15 +107,113 @@ public final class JAppResourcesWriter implements AutoCloseable {
         }
 
         resources.put(resource.name, resource);
-        resource.offset = writer.getCurrentOffset();
+
+        ExecutorService executor = writer.getExecutor();
+        if (executor == null) {
+            writePreparedResource(resource, prepareResource(resource, reader.read(), writer));
+            return;
+        }
+
+        int seekableFrameSize = writer.getSeekableFrameSize();
+        boolean constantPoolColumns = writer.isConstantPoolColumns();
+        queue.add(new QueuedResource(resource, executor.submit(() ->
+                prepareResource(resource, reader.read(), new JAppWriter.WorkerContext(seekableFrameSize, constantPoolColumns)))));
+
+        // Write the resources that are ready, and limit the number of resources held in memory
+        while (!queue.isEmpty() && (queue.size() > writer.getThreads() * 4 || queue.peek().future.isDone())) {
+            writeQueuedResource();
+        }
+    }
+
+    private void writeQueuedResource() throws IOException {
+        QueuedResource queued = queue.poll();
+        writePreparedResource(queued.resource, JAppWriter.await(queued.future));
+    }
+
+    /**
+     * Does the work that does not depend on the resources written before, so that it can be done on any thread.
+     */
+    private PreparedResource prepareResource(JAppResourceInfo resource, byte[] body, CompressContext context) throws IOException {
+        AttributeStripper stripper = writer.getAttributeStripper();
+        if (stripper != null && resource.name.endsWith(".class")) {
+            try {
+                body = stripper.strip(body);
+            } catch (IOException ignored) {
+                // Malformed class file, keep it as is
+            }
+        }
+
+        PreparedResource prepared = new PreparedResource(body, XxHash64.hash(body));
+        if (writer.isSolidCandidate(resource, body)) {
+            return prepared;
+        }
+
+        CompressResult result = writer.compressor.compress(context, body, resource.name);
+        prepared.result = result;
+        if (context != writer) {
+            prepared.pool = context.getPool();
+            if (result.getMethod() == CompressionMethod.CLASSFILE && writer.needsClassTail(resource.name, result, body)) {
+                prepared.classTail = ClassFileCompressor.getTail(body, context.isConstantPoolColumns());
+            }
+        }
+        return prepared;
+    }
+
+    private static byte[] toByteArray(CompressResult result) {
+        byte[] data = result.getCompressedData();
+        return result.getOffset() == 0 && result.getLength() == data.length
+                ? data
+                : Arrays.copyOfRange(data, result.getOffset(), result.getOffset() + result.getLength());
+    }
+
+    private void writePreparedResource(JAppResourceInfo resource, PreparedResource prepared) throws IOException {
+        byte[] body = prepared.body;
         resource.size = body.length;
-        resource.checksum = XxHash64.hash(body);
+        resource.checksum = prepared.checksum;
+
+        if (prepared.result == null) {
+            resource.blockOffset = solidBlock.getTotalBytes();
+            solidBlock.writeBytes(body, 0, body.length);
+            solidResources.add(resource);
+            if (solidBlock.getTotalBytes() >= writer.getSolidBlockSize()) {
+                flushSolidBlock();
+            }
+            return;
+        }
+
+        CompressResult result = prepared.result;
+        byte[] classTail = prepared.classTail;
+        if (prepared.pool != null && !prepared.pool.isEmpty()) {
+            if (result.getMethod() == CompressionMethod.NONE) {
+                // The pool indices are not the final ones, so whether the class file is smaller than the source
+                // is not known yet, compress it again as it would be on a single thread
+                result = writer.compressor.compress(writer, body, resource.name);
+                classTail = null;
+            } else {
+                int[] mapping = writer.getPool().merge(prepared.pool);
+                if (result.getMethod() == CompressionMethod.CLASSFILE) {
+                    byte[] compressed = ClassFileCompressor.remapPoolIndices(toByteArray(result), mapping);
+                    result = compressed.length < body.length
+                            ? new CompressResult(CompressionMethod.CLASSFILE, compressed)
+                            : new CompressResult(body);
+                }
+            }
+        }
 
-        CompressResult result = writer.compressor.compress(writer, body, resource.name);
         resource.method = result.getMethod();
         resource.compressedSize = result.getLength();
 
-        writer.getOutput().writeBytes(result.getCompressedData(), result.getOffset(), result.getLength());
+        writer.writeResourceBody(name, resource, result, body, classTail);
+    }
+
+    private void flushSolidBlock() throws IOException {
+        if (solidResources.isEmpty()) {
+            return;
+        }
+
+        writer.writeSolidBlock(solidResources, solidBlock.toByteArray());
+        solidBlock = new ByteBufferOutputStream();
+        solidResources.clear();
     }
 
     private int addGroup(Map<String, JAppResourceInfo> group) {
@@ -75,7 +222,37 @@ public final class JAppResourcesWriter implements AutoCloseable {
         return index;
     }
 
-    public void close() {
+    void writePendingResources(TreeShaker treeShaker) throws IOException {
+        List<PendingResource> pendingResources = this.pendingResources;
+        this.pendingResources = null;
+
+        for (PendingResource pending : pendingResources) {
+            if (treeShaker.isKept(name, pending.resource.name, pending.body.length)) {
+                byte[] body = pending.body;
+                doWriteResource(pending.release, pending.resource, () -> body);
+            }
+        }
+        finish();
+    }
+
+    public void close() throws IOException {
+        if (pendingResources != null) {
+            // Reserve the position in the class path
+            referenceIndex = referenceList.size();
+            referenceList.add(null);
+            writer.addPendingResourcesWriter(this);
+        } else {
+            finish();
+        }
+    }
+
+    private void finish() throws IOException {
+        while (!queue.isEmpty()) {
+            writeQueuedResource();
+        }
+        flushSolidBlock();
+        writer.getPool().endGroup();
+
         int baseIndex = addGroup(resources);
         TreeMap<Integer, Integer> multiIndexes;
         if (!multiReleaseResources.isEmpty()) {
@@ -84,6 +261,54 @@ public final class JAppResourcesWriter implements AutoCloseable {
         } else {
             multiIndexes = null;
         }
-        referenceList.add(new JAppResourceGroupReference.Local(name, baseIndex, multiIndexes));
+        JAppResourceGroupReference reference = new JAppResourceGroupReference.Local(name, baseIndex, multiIndexes);
+        if (referenceIndex >= 0) {
+            referenceList.set(referenceIndex, reference);
+        } else {
+            referenceList.add(reference);
+        }
+    }
+
+    @FunctionalInterface
+    public interface BodyReader {
+        byte[] read() throws IOException;
+    }
+
+    private static final class PreparedResource {
+        final byte[] body;
+        final long checksum;
+
+        // The compressed body, or null if the resource is put in a solid block
+        CompressResult result;
+        // The pool of the compression thread, or null if the resource was compressed with the pool of the file
+        ByteArrayPoolBuilder pool;
+        byte[] classTail;
+
+        PreparedResource(byte[] body, long checksum) {
+            this.body = body;
+            this.checksum = checksum;
+        }
+    }
+
+    private static final class QueuedResource {
+        final JAppResourceInfo resource;
+        final Future<PreparedResource> future;
+
+        QueuedResource(JAppResourceInfo resource, Future<PreparedResource> future) {
+            this.resource = resource;
+            this.future = future;
+        }
+    }
+
+    private static final class PendingResource {
+        final int release;
+        final JAppResourceInfo resource;
+        final byte[] body;
+
+        PendingResource(int release, JAppResourceInfo resource, byte[] body) {
+            this.release = release;
+            this.resource = resource;
+            this.body = body;
+        }
     }
 }
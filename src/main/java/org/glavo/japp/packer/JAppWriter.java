@@ -17,28 +17,40 @@ package org.glavo.japp.packer;
 
 import com.github.luben.zstd.Zstd;
 import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDictTrainer;
 import org.glavo.japp.CompressionMethod;
+import org.glavo.japp.boot.JAppAccessProfile;
 import org.glavo.japp.boot.JAppBootMetadata;
 import org.glavo.japp.boot.JAppResource;
 import org.glavo.japp.boot.JAppResourceField;
 import org.glavo.japp.boot.JAppResourceGroup;
+import org.glavo.japp.boot.decompressor.ZstdDecompressorPool;
 import org.glavo.japp.io.ByteBufferOutputStream;
 import org.glavo.japp.io.LittleEndianDataOutput;
 import org.glavo.japp.launcher.JAppConfigGroup;
 import org.glavo.japp.launcher.JAppLauncherMetadata;
 import org.glavo.japp.launcher.JAppResourceGroupReference;
 import org.glavo.japp.packer.compressor.CompressContext;
+import org.glavo.japp.packer.compressor.CompressResult;
 import org.glavo.japp.packer.compressor.Compressor;
 import org.glavo.japp.packer.compressor.Compressors;
+import org.glavo.japp.packer.compressor.classfile.AttributeStripper;
 import org.glavo.japp.packer.compressor.classfile.ByteArrayPoolBuilder;
+import org.glavo.japp.packer.compressor.classfile.ClassFileCompressor;
 import org.glavo.japp.util.XxHash64;
 import org.glavo.japp.util.ZstdUtils;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.attribute.FileTime;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class JAppWriter implements CompressContext, Closeable {
 
@@ -82,11 +94,13 @@ public final class JAppWriter implements CompressContext, Closeable {
         return pool;
     }
 
-    private final ZstdCompressCtx zstdCompressCtx = new ZstdCompressCtx();
+    private final ZstdCompressCtx zstdCompressCtx = createZstdCompressCtx();
 
-    {
-        zstdCompressCtx.setLevel(8);
-        zstdCompressCtx.setChecksum(false);
+    private static ZstdCompressCtx createZstdCompressCtx() {
+        ZstdCompressCtx ctx = new ZstdCompressCtx();
+        ctx.setLevel(8);
+        ctx.setChecksum(false);
+        return ctx;
     }
 
     @Override
@@ -94,6 +108,566 @@ public final class JAppWriter implements CompressContext, Closeable {
         return zstdCompressCtx;
     }
 
+    private int seekableFrameSize = 0;
+
+    @Override
+    public int getSeekableFrameSize() {
+        return seekableFrameSize;
+    }
+
+    public void setSeekableFrameSize(int seekableFrameSize) {
+        if (seekableFrameSize < 0) {
+            throw new IllegalArgumentException("seekableFrameSize: " + seekableFrameSize);
+        }
+        this.seekableFrameSize = seekableFrameSize;
+    }
+
+    private boolean constantPoolColumns = false;
+
+    @Override
+    public boolean isConstantPoolColumns() {
+        return constantPoolColumns;
+    }
+
+    /**
+     * Stores the structure of the constant pool of class files in columns. Disabled by default.
+     * <p>
+     * This makes class files smaller, but slower to decompress.
+     */
+    public void setConstantPoolColumns(boolean constantPoolColumns) {
+        this.constantPoolColumns = constantPoolColumns;
+    }
+
+    private int threads = 1;
+    private ExecutorService executor;
+
+    /**
+     * Compresses resources on the given number of threads.
+     * <p>
+     * The resources are still written in the order they are added, and the class files compressed on other threads
+     * have their strings merged into the pool in that order, so the output does not depend on the number of threads.
+     */
+    public void setThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads: " + threads);
+        }
+        if (executor != null) {
+            throw new IllegalStateException("The compression threads have been started");
+        }
+
+        this.threads = threads;
+        if (threads > 1) {
+            executor = Executors.newFixedThreadPool(threads, CompressThread::new);
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return the executor of the compression threads, or {@code null} if resources are compressed on the calling thread
+     */
+    ExecutorService getExecutor() {
+        return executor;
+    }
+
+    static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    private static final class CompressThread extends Thread {
+        private static final AtomicInteger COUNTER = new AtomicInteger();
+
+        final ZstdCompressCtx zstdCompressCtx = createZstdCompressCtx();
+
+        CompressThread(Runnable task) {
+            super(task, "japp-compressor-" + COUNTER.incrementAndGet());
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                zstdCompressCtx.close();
+            }
+        }
+    }
+
+    /**
+     * The context of a resource compressed on a compression thread.
+     * <p>
+     * Each resource gets a pool of its own, which is merged into the pool of the file when the resource is written.
+     */
+    static final class WorkerContext implements CompressContext {
+        private final ByteArrayPoolBuilder pool = new ByteArrayPoolBuilder();
+        private final int seekableFrameSize;
+        private final boolean constantPoolColumns;
+
+        WorkerContext(int seekableFrameSize, boolean constantPoolColumns) {
+            this.seekableFrameSize = seekableFrameSize;
+            this.constantPoolColumns = constantPoolColumns;
+        }
+
+        @Override
+        public ByteArrayPoolBuilder getPool() {
+            return pool;
+        }
+
+        @Override
+        public ZstdCompressCtx getZstdCompressCtx() {
+            return ((CompressThread) Thread.currentThread()).zstdCompressCtx;
+        }
+
+        @Override
+        public int getSeekableFrameSize() {
+            return seekableFrameSize;
+        }
+
+        @Override
+        public boolean isConstantPoolColumns() {
+            return constantPoolColumns;
+        }
+    }
+
+    private JAppAccessProfile accessProfile;
+    private final List<DeferredResource> deferredResources = new ArrayList<>();
+
+    // The resources in the access profile in access order
+    private final List<JAppResourceInfo> profiledResources = new ArrayList<>();
+
+    // The range holding the resources in the access profile
+    private long prefetchOffset;
+    private long prefetchSize;
+
+    /**
+     * Places the resources in the profile next to each other in access order,
+     * in a section written after the other resources when the writer is closed.
+     * <p>
+     * The bodies of the resources in the profile are kept in memory until the writer is closed.
+     */
+    public void setAccessProfile(JAppAccessProfile accessProfile) {
+        this.accessProfile = accessProfile;
+    }
+
+    private boolean renumberPool = false;
+
+    /**
+     * Renumbers the string pool by frequency when the writer is closed. Disabled by default.
+     * <p>
+     * The compressed class files reference the pool, so all of them are kept in memory until the writer is closed.
+     */
+    public void setRenumberPool(boolean renumberPool) {
+        this.renumberPool = renumberPool;
+    }
+
+    public static final int MIN_SOLID_BLOCK_SIZE = 64 * 1024;
+    public static final int MAX_SOLID_BLOCK_SIZE = 1024 * 1024;
+
+    private int solidBlockSize = 0;
+
+    /**
+     * Packs the small resources of each group into shared zstd blocks of about the given size,
+     * so that the redundancy between adjacent resources can be exploited.
+     * <p>
+     * Reading a resource decompresses its whole block, larger blocks trade read latency for file size.
+     *
+     * @param solidBlockSize the block size, or {@code 0} to compress each resource separately
+     */
+    public void setSolidBlockSize(int solidBlockSize) {
+        if (solidBlockSize != 0 && (solidBlockSize < MIN_SOLID_BLOCK_SIZE || solidBlockSize > MAX_SOLID_BLOCK_SIZE)) {
+            throw new IllegalArgumentException("solidBlockSize: " + solidBlockSize);
+        }
+        this.solidBlockSize = solidBlockSize;
+    }
+
+    public int getSolidBlockSize() {
+        return solidBlockSize;
+    }
+
+    boolean isSolidCandidate(JAppResourceInfo resource, byte[] body) {
+        return solidBlockSize > 0
+                && body.length > 16 && body.length <= solidBlockSize / 4
+                && !Compressors.isPrecompressed(resource.name);
+    }
+
+    void writeSolidBlock(List<JAppResourceInfo> resources, byte[] block) throws IOException {
+        byte[] compressed = new byte[ZstdUtils.maxCompressedLength(block.length)];
+        int n = (int) zstdCompressCtx.compressByteArray(compressed, 0, compressed.length, block, 0, block.length);
+
+        // Solid blocks are not reordered by the access profile
+        long offset = getCurrentOffset();
+        output.writeBytes(compressed, 0, n);
+        for (JAppResourceInfo resource : resources) {
+            resource.method = CompressionMethod.SOLID;
+            resource.offset = offset;
+            resource.compressedSize = n;
+            resource.blockSize = block.length;
+        }
+    }
+
+    private AttributeStripper attributeStripper;
+
+    /**
+     * Strips attributes from class files before they are compressed.
+     *
+     * @param attributeStripper the stripper, or {@code null} to keep class files as is
+     */
+    public void setAttributeStripper(AttributeStripper attributeStripper) {
+        this.attributeStripper = attributeStripper;
+    }
+
+    public AttributeStripper getAttributeStripper() {
+        return attributeStripper;
+    }
+
+    private TreeShaker treeShaker;
+    private final List<JAppResourcesWriter> pendingResourcesWriters = new ArrayList<>();
+
+    /**
+     * Removes unreachable classes. The resources are held in memory until this writer is closed,
+     * then written in their original order.
+     *
+     * @param treeShaker the tree shaker, or {@code null} to keep all classes
+     */
+    public void setTreeShaker(TreeShaker treeShaker) {
+        this.treeShaker = treeShaker;
+    }
+
+    public TreeShaker getTreeShaker() {
+        return treeShaker;
+    }
+
+    void addPendingResourcesWriter(JAppResourcesWriter resourcesWriter) {
+        pendingResourcesWriters.add(resourcesWriter);
+    }
+
+    private void writePendingResources() throws IOException {
+        if (treeShaker == null) {
+            return;
+        }
+
+        treeShaker.shake();
+        for (JAppResourcesWriter resourcesWriter : pendingResourcesWriters) {
+            resourcesWriter.writePendingResources(treeShaker);
+        }
+        pendingResourcesWriters.clear();
+    }
+
+    private boolean trainDictionaries = false;
+    private final List<byte[]> dictionaries = new ArrayList<>();
+
+    /**
+     * Trains zstd dictionaries for small resources and class file tails when the writer is closed. Disabled by default.
+     * <p>
+     * A dictionary is only kept if it saves more than its own size.
+     * The compressed resources that can use a dictionary are kept in memory until the writer is closed,
+     * along with a sample of each category of at most {@link #MAX_TOTAL_SAMPLES_SIZE} bytes.
+     */
+    public void setTrainDictionaries(boolean trainDictionaries) {
+        this.trainDictionaries = trainDictionaries;
+    }
+
+    static final int MAX_DICTIONARY_SAMPLE_SIZE = 64 * 1024;
+    private static final int MAX_DICTIONARY_SIZE = 64 * 1024;
+    private static final int MIN_DICTIONARY_SIZE = 1024;
+    // zstd recommends about 100 times the dictionary size of samples
+    private static final int MAX_TOTAL_SAMPLES_SIZE = 100 * MAX_DICTIONARY_SIZE;
+    private static final int MIN_DICTIONARY_SAMPLES = 16;
+
+    /**
+     * Resources in the same category share a dictionary.
+     */
+    private enum DictionaryCategory {
+        CLASS_TAIL, PROPERTIES, JSON, SERVICES, OTHER;
+
+        static DictionaryCategory of(String name, CompressionMethod method, int size) {
+            if (size > MAX_DICTIONARY_SAMPLE_SIZE) {
+                return null;
+            }
+
+            if (method == CompressionMethod.CLASSFILE) {
+                return CLASS_TAIL;
+            } else if (method != CompressionMethod.ZSTD) {
+                return null;
+            } else if (name.endsWith(".properties")) {
+                return PROPERTIES;
+            } else if (name.endsWith(".json")) {
+                return JSON;
+            } else if (name.startsWith("META-INF/services/")) {
+                return SERVICES;
+            } else {
+                return OTHER;
+            }
+        }
+    }
+
+    /**
+     * A uniform random sample of the resources in a category, of at most {@link #MAX_TOTAL_SAMPLES_SIZE} bytes.
+     */
+    private static final class DictionarySamples {
+        // The seed is fixed so that the output is reproducible
+        private final Random random = new Random(0);
+
+        final List<byte[]> samples = new ArrayList<>();
+        long totalSize = 0;
+        int count = 0;
+
+        void add(byte[] sample) {
+            count++;
+            if (totalSize + sample.length <= MAX_TOTAL_SAMPLES_SIZE) {
+                samples.add(sample);
+                totalSize += sample.length;
+                return;
+            }
+
+            int index = random.nextInt(count);
+            if (index < samples.size()) {
+                byte[] old = samples.get(index);
+                if (totalSize - old.length + sample.length <= MAX_TOTAL_SAMPLES_SIZE) {
+                    samples.set(index, sample);
+                    totalSize += sample.length - old.length;
+                }
+            }
+        }
+    }
+
+    private final Map<DictionaryCategory, DictionarySamples> dictionarySamples = new EnumMap<>(DictionaryCategory.class);
+    private final ZstdDecompressorPool decompressors = new ZstdDecompressorPool();
+
+    private static final class DeferredResource {
+        final JAppResourceInfo resource;
+        final int order;
+        byte[] body;
+
+        DictionaryCategory dictionaryCategory;
+
+        DeferredResource(JAppResourceInfo resource, int order, byte[] body) {
+            this.resource = resource;
+            this.order = order;
+            this.body = body;
+        }
+    }
+
+    private DictionaryCategory getDictionaryCategory(String name, CompressionMethod method, byte[] source) {
+        if (trainDictionaries && (seekableFrameSize == 0 || source.length <= seekableFrameSize)) {
+            return DictionaryCategory.of(name, method, source.length);
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether the tail of the class file will be used as a dictionary sample,
+     * so that it can be extracted in advance on a compression thread.
+     */
+    boolean needsClassTail(String name, CompressResult result, byte[] source) {
+        return getDictionaryCategory(name, result.getMethod(), source) == DictionaryCategory.CLASS_TAIL;
+    }
+
+    /**
+     * @param classTail the tail of the class file returned by {@link ClassFileCompressor#getTail(byte[], boolean)},
+     *                  or {@code null} to extract it when needed
+     */
+    void writeResourceBody(String group, JAppResourceInfo resource, CompressResult result, byte[] source, byte[] classTail) throws IOException {
+        boolean referencesPool = renumberPool && result.getMethod() == CompressionMethod.CLASSFILE;
+
+        DictionaryCategory dictionaryCategory = getDictionaryCategory(resource.name, result.getMethod(), source);
+
+        int order = accessProfile != null ? accessProfile.indexOf(group, resource.name) : -1;
+
+        if (order < 0 && !referencesPool && dictionaryCategory == null) {
+            resource.offset = getCurrentOffset();
+            output.writeBytes(result.getCompressedData(), result.getOffset(), result.getLength());
+            return;
+        }
+
+        byte[] data = result.getCompressedData();
+        byte[] body = result.getOffset() == 0 && result.getLength() == data.length
+                ? data
+                : Arrays.copyOfRange(data, result.getOffset(), result.getOffset() + result.getLength());
+
+        DeferredResource deferred = new DeferredResource(resource, order >= 0 ? order : Integer.MAX_VALUE, body);
+        if (dictionaryCategory != null) {
+            deferred.dictionaryCategory = dictionaryCategory;
+
+            byte[] sample;
+            if (dictionaryCategory != DictionaryCategory.CLASS_TAIL) {
+                sample = source;
+            } else if (classTail != null) {
+                sample = classTail;
+            } else {
+                sample = ClassFileCompressor.getTail(source, constantPoolColumns);
+            }
+            dictionarySamples.computeIfAbsent(dictionaryCategory, c -> new DictionarySamples()).add(sample);
+        }
+        deferredResources.add(deferred);
+    }
+
+    private static byte[] trainDictionary(DictionarySamples samples) {
+        if (samples == null || samples.samples.size() < MIN_DICTIONARY_SAMPLES) {
+            return null;
+        }
+
+        int sampleSize = (int) samples.totalSize;
+        int dictionarySize = Math.min(sampleSize / 100, MAX_DICTIONARY_SIZE);
+        if (dictionarySize < MIN_DICTIONARY_SIZE) {
+            return null;
+        }
+
+        ZstdDictTrainer trainer = new ZstdDictTrainer(sampleSize, dictionarySize);
+        for (byte[] sample : samples.samples) {
+            if (!trainer.addSample(sample)) {
+                break;
+            }
+        }
+
+        try {
+            return trainer.trainSamples();
+        } catch (RuntimeException e) {
+            // Not enough samples or the samples are too similar
+            return null;
+        }
+    }
+
+    // The source is decompressed from the body, so that it does not have to be kept until the writer is closed
+    private byte[] compressWithDictionary(DeferredResource resource, ZstdCompressCtx ctx) throws IOException {
+        if (resource.dictionaryCategory == DictionaryCategory.CLASS_TAIL) {
+            byte[] tail = ClassFileCompressor.decompressTail(resource.body, (int) resource.resource.size, decompressors);
+            return ClassFileCompressor.recompressTail(resource.body, tail, ctx);
+        }
+
+        byte[] source = new byte[(int) resource.resource.size];
+        int size = decompressors.decompress(resource.body, 0, resource.body.length, source, 0, source.length);
+        if (size != source.length) {
+            throw new IOException("Wrong size of resource " + resource.resource.name);
+        }
+
+        byte[] buffer = new byte[ZstdUtils.maxCompressedLength(source.length)];
+        int n = (int) ctx.compressByteArray(buffer, 0, buffer.length, source, 0, source.length);
+        return n < resource.body.length ? Arrays.copyOf(buffer, n) : resource.body;
+    }
+
+    private void compressWithDictionary(List<DeferredResource> resources, byte[] dictionary,
+                                        byte[][] bodies, int from, int to) throws IOException {
+        try (ZstdCompressCtx ctx = createZstdCompressCtx()) {
+            ctx.loadDict(dictionary);
+            for (int i = from; i < to; i++) {
+                bodies[i] = compressWithDictionary(resources.get(i), ctx);
+            }
+        }
+    }
+
+    private byte[][] compressWithDictionary(List<DeferredResource> resources, byte[] dictionary) throws IOException {
+        byte[][] bodies = new byte[resources.size()][];
+        if (executor == null) {
+            compressWithDictionary(resources, dictionary, bodies, 0, bodies.length);
+            return bodies;
+        }
+
+        // Each thread compresses a range of the resources with a context of its own
+        int step = (bodies.length + threads - 1) / threads;
+        List<Future<?>> futures = new ArrayList<>();
+        for (int start = 0; start < bodies.length; start += step) {
+            int from = start;
+            int to = Math.min(start + step, bodies.length);
+            futures.add(executor.submit(() -> {
+                compressWithDictionary(resources, dictionary, bodies, from, to);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            await(future);
+        }
+        return bodies;
+    }
+
+    private void compressWithDictionaries() throws IOException {
+        Map<DictionaryCategory, List<DeferredResource>> categories = new EnumMap<>(DictionaryCategory.class);
+        for (DeferredResource resource : deferredResources) {
+            if (resource.dictionaryCategory != null) {
+                categories.computeIfAbsent(resource.dictionaryCategory, c -> new ArrayList<>()).add(resource);
+            }
+        }
+
+        Set<Integer> ids = new HashSet<>();
+        for (Map.Entry<DictionaryCategory, List<DeferredResource>> entry : categories.entrySet()) {
+            List<DeferredResource> resources = entry.getValue();
+            byte[] dictionary = trainDictionary(dictionarySamples.remove(entry.getKey()));
+            if (dictionary == null) {
+                continue;
+            }
+
+            int id = (dictionary[4] & 0xff) | (dictionary[5] & 0xff) << 8 | (dictionary[6] & 0xff) << 16 | (dictionary[7] & 0xff) << 24;
+            if (id == 0 || ids.contains(id)) {
+                continue;
+            }
+
+            byte[][] bodies = compressWithDictionary(resources, dictionary);
+            long saved = 0;
+            for (int i = 0; i < bodies.length; i++) {
+                saved += resources.get(i).body.length - bodies[i].length;
+            }
+
+            if (saved <= dictionary.length) {
+                continue;
+            }
+
+            ids.add(id);
+            dictionaries.add(dictionary);
+            for (int i = 0; i < bodies.length; i++) {
+                DeferredResource resource = resources.get(i);
+                resource.body = bodies[i];
+                resource.resource.compressedSize = bodies[i].length;
+            }
+        }
+
+        dictionarySamples.clear();
+    }
+
+    private void writeDeferredResources() throws IOException {
+        if (trainDictionaries) {
+            compressWithDictionaries();
+        }
+
+        int[] poolMapping = renumberPool ? pool.renumber() : null;
+
+        // The sort is stable, resources not in the profile keep their original order
+        deferredResources.sort(Comparator.comparingInt(resource -> resource.order));
+        prefetchOffset = getCurrentOffset();
+        for (DeferredResource deferred : deferredResources) {
+            if (poolMapping != null && deferred.resource.method == CompressionMethod.CLASSFILE) {
+                deferred.body = ClassFileCompressor.remapPoolIndices(deferred.body, poolMapping);
+                deferred.resource.compressedSize = deferred.body.length;
+            }
+
+            deferred.resource.offset = getCurrentOffset();
+            output.writeBytes(deferred.body);
+            if (deferred.order != Integer.MAX_VALUE) {
+                prefetchSize = getCurrentOffset() - prefetchOffset;
+                profiledResources.add(deferred.resource);
+            }
+        }
+        deferredResources.clear();
+    }
+
     public void beginConfigGroup(JAppConfigGroup group) {
         configStack.push(group);
         current = group;
@@ -133,7 +707,7 @@ public final class JAppWriter implements CompressContext, Closeable {
         groupBodyBuilder.writeByte(JAppResource.MAGIC_NUMBER);
         groupBodyBuilder.writeByte(resource.method.id());
         groupBodyBuilder.writeUnsignedShort(nameBytes.length);
-        groupBodyBuilder.writeInt(0);
+        groupBodyBuilder.writeInt(resource.name.hashCode());
         groupBodyBuilder.writeLong(resource.size);
         groupBodyBuilder.writeLong(resource.compressedSize);
         groupBodyBuilder.writeLong(resource.offset);
@@ -148,17 +722,42 @@ public final class JAppWriter implements CompressContext, Closeable {
         writeResourceFileTimeField(groupBodyBuilder, JAppResourceField.FILE_LAST_MODIFIED_TIME, resource.lastModifiedTime);
         writeResourceFileTimeField(groupBodyBuilder, JAppResourceField.FILE_LAST_ACCESS_TIME, resource.lastAccessTime);
 
+        if (resource.method == CompressionMethod.SOLID) {
+            groupBodyBuilder.writeByte(JAppResourceField.BLOCK_SIZE.id());
+            groupBodyBuilder.writeLong(resource.blockSize);
+            groupBodyBuilder.writeByte(JAppResourceField.BLOCK_OFFSET.id());
+            groupBodyBuilder.writeLong(resource.blockOffset);
+        }
+
         groupBodyBuilder.writeByte(JAppResourceField.END.id());
     }
 
     private void writeBootMetadata() throws IOException {
         output.writeInt(JAppBootMetadata.MAGIC_NUMBER);
         output.writeInt(groups.size());
+        output.writeInt(dictionaries.size());
+        for (byte[] dictionary : dictionaries) {
+            output.writeInt(dictionary.length);
+            output.writeBytes(dictionary);
+        }
         pool.writeTo(output);
-        for (Map<String, JAppResourceInfo> group : groups) {
+
+        // The group index and entry index of each resource in the access profile
+        Map<JAppResourceInfo, Long> profileEntries = new IdentityHashMap<>();
+        for (JAppResourceInfo resource : profiledResources) {
+            profileEntries.put(resource, -1L);
+        }
+
+        for (int groupIndex = 0; groupIndex < groups.size(); groupIndex++) {
+            Map<String, JAppResourceInfo> group = groups.get(groupIndex);
             ByteBufferOutputStream groupBodyBuilder = new ByteBufferOutputStream();
+            int entry = 0;
             for (JAppResourceInfo resource : group.values()) {
                 writeResource(resource, groupBodyBuilder);
+                if (profileEntries.containsKey(resource)) {
+                    profileEntries.put(resource, (long) groupIndex << 32 | entry);
+                }
+                entry++;
             }
             byte[] groupBody = groupBodyBuilder.toByteArray();
 
@@ -193,6 +792,20 @@ public final class JAppWriter implements CompressContext, Closeable {
             output.writeLong(checksum);
             output.writeBytes(compressed, 0, compressedLength);
         }
+
+        List<Long> profile = new ArrayList<>();
+        for (JAppResourceInfo resource : profiledResources) {
+            long location = profileEntries.get(resource);
+            if (location >= 0) {
+                profile.add(location);
+            }
+        }
+
+        output.writeInt(profile.size());
+        for (long location : profile) {
+            output.writeInt((int) (location >>> 32));
+            output.writeInt((int) location);
+        }
     }
 
     private void writeLauncherMetadata() throws IOException {
@@ -224,10 +837,12 @@ public final class JAppWriter implements CompressContext, Closeable {
         // launcher metadata offset
         output.writeLong(launcherMetadataOffset);
 
+        // prefetch range
+        output.writeLong(prefetchSize > 0 ? prefetchOffset : 0L);
+        output.writeLong(prefetchSize);
+
         // reserved
         output.writeLong(0L);
-        output.writeLong(0L);
-        output.writeLong(0L);
 
         if (output.getTotalBytes() != fileSize) {
             throw new AssertionError();
@@ -237,6 +852,9 @@ public final class JAppWriter implements CompressContext, Closeable {
     @Override
     public void close() throws IOException {
         try {
+            writePendingResources();
+            writeDeferredResources();
+
             long bootMetadataOffset = getCurrentOffset();
             writeBootMetadata();
 
@@ -245,6 +863,9 @@ public final class JAppWriter implements CompressContext, Closeable {
 
             writeFileEnd(bootMetadataOffset, launcherMetadataOffset);
         } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
             this.zstdCompressCtx.close();
         }
     }
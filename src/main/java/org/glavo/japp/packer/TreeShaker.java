@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.packer;
+
+import org.glavo.japp.packer.compressor.classfile.ClassFileReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Removes the classes that cannot be reached from the main classes.
+ * <p>
+ * A class is reachable if it is a root, if it matches a keep rule, or if a reachable class mentions its name
+ * anywhere in its constant pool. Providers listed in {@code META-INF/services} are reachable
+ * if their service is reachable or does not belong to the application.
+ * Resources other than class files are never removed.
+ */
+public final class TreeShaker {
+    private static final String SERVICES_PREFIX = "META-INF/services/";
+
+    private final Set<String> roots = new HashSet<>();
+    private final List<Pattern> keepRules = new ArrayList<>();
+
+    // Internal class name to the names it references
+    private final Map<String, Set<String>> classes = new HashMap<>();
+    // Internal service name to the internal names of its providers
+    private final Map<String, Set<String>> services = new HashMap<>();
+
+    private Set<String> reachable;
+
+    private long classCount;
+    private long classBytes;
+    private final Map<String, Set<String>> removedClasses = new LinkedHashMap<>();
+    private final Map<String, long[]> removedStatistics = new LinkedHashMap<>();
+
+    /**
+     * @param className the binary name of the class, e.g. {@code com.example.Main}
+     */
+    public void addRoot(String className) {
+        roots.add(className.replace('.', '/'));
+    }
+
+    /**
+     * Adds a rule for classes that must be kept, usually because they are loaded by reflection.
+     * <p>
+     * A rule is a binary class name, where {@code *} matches any part of a name other than {@code .},
+     * and {@code **} matches any part of a name. For example, {@code com.example.*} matches the classes
+     * in the package {@code com.example}, and {@code com.example.**} also matches the classes in its subpackages.
+     */
+    public void addKeepRule(String rule) {
+        rule = rule.trim();
+        if (rule.isEmpty()) {
+            throw new IllegalArgumentException("Keep rule cannot be empty");
+        }
+
+        rule = rule.replace('.', '/');
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < rule.length(); i++) {
+            if (rule.charAt(i) == '*') {
+                regex.append(Pattern.quote(rule.substring(start, i)));
+                if (i + 1 < rule.length() && rule.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    i++;
+                } else {
+                    regex.append("[^/]*");
+                }
+                start = i + 1;
+            }
+        }
+        regex.append(Pattern.quote(rule.substring(start)));
+        keepRules.add(Pattern.compile(regex.toString()));
+    }
+
+    /**
+     * Reads keep rules from a file, one rule per line. Empty lines and lines starting with {@code #} are ignored.
+     */
+    public void addKeepRules(Path file) throws IOException {
+        for (String line : Files.readAllLines(file)) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                addKeepRule(line);
+            }
+        }
+    }
+
+    void addResource(String name, byte[] body) {
+        if (name.startsWith(SERVICES_PREFIX) && name.indexOf('/', SERVICES_PREFIX.length()) < 0) {
+            Set<String> providers = services.computeIfAbsent(
+                    name.substring(SERVICES_PREFIX.length()).replace('.', '/'), key -> new HashSet<>());
+            try (BufferedReader reader = new BufferedReader(new StringReader(new String(body, StandardCharsets.UTF_8)))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int idx = line.indexOf('#');
+                    if (idx >= 0) {
+                        line = line.substring(0, idx);
+                    }
+                    line = line.trim();
+                    if (!line.isEmpty()) {
+                        providers.add(line.replace('.', '/'));
+                    }
+                }
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        } else if (name.endsWith(".class")) {
+            String className = name.substring(0, name.length() - ".class".length());
+            Set<String> references = classes.computeIfAbsent(className, key -> new HashSet<>());
+
+            if (className.equals("module-info") || className.equals("package-info") || className.endsWith("/package-info")) {
+                roots.add(className);
+            }
+
+            try {
+                references.addAll(new ClassFileReader(ByteBuffer.wrap(body)).getReferencedClassNames());
+            } catch (IOException | RuntimeException e) {
+                // We don't know what it references, so keep it and hope for the best
+                roots.add(className);
+            }
+        }
+    }
+
+    private boolean matchesKeepRule(String className) {
+        for (Pattern rule : keepRules) {
+            if (rule.matcher(className).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void mark(String className, ArrayDeque<String> queue) {
+        if (classes.containsKey(className) && reachable.add(className)) {
+            queue.add(className);
+        }
+    }
+
+    /**
+     * Computes the reachable classes. It must be called after all resources have been added.
+     */
+    public void shake() {
+        reachable = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+
+        for (String root : roots) {
+            mark(root, queue);
+        }
+        if (!keepRules.isEmpty()) {
+            for (String className : classes.keySet()) {
+                if (matchesKeepRule(className)) {
+                    mark(className, queue);
+                }
+            }
+        }
+
+        do {
+            String className;
+            while ((className = queue.poll()) != null) {
+                for (String reference : classes.get(className)) {
+                    mark(reference, queue);
+                }
+            }
+
+            for (Map.Entry<String, Set<String>> entry : services.entrySet()) {
+                String service = entry.getKey();
+                if (!classes.containsKey(service) || reachable.contains(service)) {
+                    for (String provider : entry.getValue()) {
+                        mark(provider, queue);
+                    }
+                }
+            }
+        } while (!queue.isEmpty());
+    }
+
+    boolean isKept(String groupName, String name, long size) {
+        if (reachable == null) {
+            throw new IllegalStateException("Tree shaking has not been performed");
+        }
+
+        if (!name.endsWith(".class")) {
+            return true;
+        }
+
+        classCount++;
+        classBytes += size;
+
+        String className = name.substring(0, name.length() - ".class".length());
+        if (reachable.contains(className)) {
+            return true;
+        }
+
+        removedClasses.computeIfAbsent(groupName, key -> new TreeSet<>()).add(className.replace('/', '.'));
+        long[] statistics = removedStatistics.computeIfAbsent(groupName, key -> new long[2]);
+        statistics[0]++;
+        statistics[1] += size;
+        return false;
+    }
+
+    /**
+     * Returns the binary names of the removed classes, grouped by the name of the resource group.
+     */
+    public Map<String, Set<String>> getRemovedClasses() {
+        return Collections.unmodifiableMap(removedClasses);
+    }
+
+    public String getReport() {
+        long removedCount = 0;
+        long removedBytes = 0;
+        for (long[] statistics : removedStatistics.values()) {
+            removedCount += statistics[0];
+            removedBytes += statistics[1];
+        }
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Removed %d of %d classes, saved %d bytes (%.1f%% of %d bytes)%n",
+                removedCount, classCount, removedBytes,
+                classBytes == 0 ? 0.0 : removedBytes * 100.0 / classBytes, classBytes));
+        removedStatistics.forEach((name, statistics) ->
+                builder.append(String.format("    %-40s %8d classes %12d bytes%n", name, statistics[0], statistics[1])));
+        return builder.toString();
+    }
+}
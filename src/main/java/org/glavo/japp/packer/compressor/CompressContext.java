@@ -24,4 +24,22 @@ public interface CompressContext {
     default ZstdCompressCtx getZstdCompressCtx() {
         return new ZstdCompressCtx();
     }
+
+    /**
+     * Zstd resources larger than this are split into independently decompressible frames of this size.
+     *
+     * @return the frame size, or {@code 0} if resources are not split
+     */
+    default int getSeekableFrameSize() {
+        return 0;
+    }
+
+    /**
+     * Whether the structure of the constant pool of class files is stored in columns and compressed with the tail.
+     * <p>
+     * The columns make class files smaller, but more bytes have to be decompressed with zstd when they are loaded.
+     */
+    default boolean isConstantPoolColumns() {
+        return false;
+    }
 }
@@ -16,21 +16,72 @@
 package org.glavo.japp.packer.compressor;
 
 import org.glavo.japp.CompressionMethod;
+import org.glavo.japp.boot.decompressor.zstd.ZstdSeekTable;
+import org.glavo.japp.io.ByteBufferOutputStream;
+import org.glavo.japp.util.XxHash64;
 import org.glavo.japp.util.ZstdUtils;
 import org.glavo.japp.packer.compressor.classfile.ClassFileCompressor;
 
 public final class Compressors {
 
-    public static final Compressor DEFAULT = new DefaultCompressor();
+    private static final DefaultCompressor DEFAULT_COMPRESSOR = new DefaultCompressor();
+
+    public static final Compressor DEFAULT = DEFAULT_COMPRESSOR;
 
     public static final Compressor CLASSFILE = new ClassFileCompressor();
 
     public static final Compressor ZSTD = (context, source) -> {
+        int frameSize = context.getSeekableFrameSize();
+        if (frameSize > 0 && source.length > frameSize) {
+            return compressSeekable(context, source, frameSize);
+        }
+
         byte[] res = new byte[ZstdUtils.maxCompressedLength(source.length)];
         long n = context.getZstdCompressCtx().compressByteArray(res, 0, res.length, source, 0, source.length);
         return new CompressResult(CompressionMethod.ZSTD, res, 0, (int) n);
     };
 
+    /**
+     * Compresses the source as independent frames followed by a seek table, so that it can be decompressed from any frame.
+     */
+    private static CompressResult compressSeekable(CompressContext context, byte[] source, int frameSize) {
+        int frameCount = (source.length + frameSize - 1) / frameSize;
+        int[] compressedSizes = new int[frameCount];
+
+        ByteBufferOutputStream output = new ByteBufferOutputStream(source.length / 2);
+        byte[] buffer = new byte[ZstdUtils.maxCompressedLength(frameSize)];
+        for (int i = 0; i < frameCount; i++) {
+            int offset = i * frameSize;
+            int length = Math.min(frameSize, source.length - offset);
+            int n = (int) context.getZstdCompressCtx().compressByteArray(buffer, 0, buffer.length, source, offset, length);
+            output.writeBytes(buffer, 0, n);
+            compressedSizes[i] = n;
+        }
+
+        output.writeInt(ZstdSeekTable.SKIPPABLE_MAGIC_NUMBER);
+        output.writeInt(frameCount * 12 + ZstdSeekTable.FOOTER_SIZE);
+        for (int i = 0; i < frameCount; i++) {
+            int offset = i * frameSize;
+            int length = Math.min(frameSize, source.length - offset);
+            output.writeInt(compressedSizes[i]);
+            output.writeInt(length);
+            output.writeInt((int) XxHash64.hash(0L, source, offset, length));
+        }
+        output.writeInt(frameCount);
+        output.writeByte((byte) ZstdSeekTable.CHECKSUM_FLAG);
+        output.writeInt(ZstdSeekTable.SEEKABLE_MAGIC_NUMBER);
+
+        byte[] result = output.toByteArray();
+        return new CompressResult(CompressionMethod.ZSTD, result);
+    }
+
+    /**
+     * Returns whether the file is already compressed (such as images and archives), judging by its extension.
+     */
+    public static boolean isPrecompressed(String filePath) {
+        return DEFAULT_COMPRESSOR.getMethod(filePath) == CompressionMethod.NONE;
+    }
+
     private Compressors() {
     }
 }
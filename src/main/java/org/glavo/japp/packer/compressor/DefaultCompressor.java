@@ -39,6 +39,19 @@ final class DefaultCompressor implements Compressor {
         }
     }
 
+    CompressionMethod getMethod(String filePath) {
+        String ext;
+        if (filePath != null) {
+            int sep = Math.max(filePath.lastIndexOf('/'), filePath.lastIndexOf('\\'));
+            int dot = filePath.lastIndexOf('.');
+            ext = dot > sep ? filePath.substring(dot + 1) : null;
+        } else {
+            ext = null;
+        }
+
+        return map.getOrDefault(ext, defaultMethod);
+    }
+
     @Override
     public CompressResult compress(CompressContext context, byte[] source) throws IOException {
         return compress(context, source, null);
@@ -50,16 +63,7 @@ final class DefaultCompressor implements Compressor {
             return new CompressResult(source);
         }
 
-        String ext;
-        if (filePath != null) {
-            int sep = Math.max(filePath.lastIndexOf('/'), filePath.lastIndexOf('\\'));
-            int dot = filePath.lastIndexOf('.');
-            ext = dot > sep ? filePath.substring(dot + 1) : null;
-        } else {
-            ext = null;
-        }
-
-        CompressionMethod method = map.getOrDefault(ext, defaultMethod);
+        CompressionMethod method = getMethod(filePath);
         CompressResult result;
         switch (method) {
             case NONE:
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.packer.compressor.classfile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Removes attributes that are not needed to run the program from class files.
+ * <p>
+ * The names of the removed attributes are left in the constant pool, renumbering the constant pool
+ * would mean rewriting every reference to it.
+ */
+public final class AttributeStripper {
+
+    /**
+     * Attributes that only carry debugging information.
+     */
+    public static final Set<String> DEBUG_ATTRIBUTES = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+            "LineNumberTable", "LocalVariableTable", "LocalVariableTypeTable", "SourceDebugExtension"
+    )));
+
+    /**
+     * Attributes that can be removed without changing the behavior of the program, other than its stack traces.
+     */
+    public static final Set<String> STRIPPABLE_ATTRIBUTES;
+
+    static {
+        Set<String> attributes = new LinkedHashSet<>(DEBUG_ATTRIBUTES);
+        attributes.add("SourceFile");
+        STRIPPABLE_ATTRIBUTES = Collections.unmodifiableSet(attributes);
+    }
+
+    private final Set<String> attributes;
+
+    private long classCount;
+    private long strippedClassCount;
+    private long originalSize;
+    private long strippedSize;
+    private final Map<String, long[]> strippedAttributes = new TreeMap<>();
+
+    public AttributeStripper(Set<String> attributes) {
+        for (String attribute : attributes) {
+            if (!STRIPPABLE_ATTRIBUTES.contains(attribute)) {
+                throw new IllegalArgumentException("Attribute cannot be stripped: " + attribute);
+            }
+        }
+        this.attributes = attributes;
+    }
+
+    public Set<String> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * @return the class file without the attributes, or {@code source} itself if there is nothing to strip
+     * @throws IOException if the class file is malformed
+     */
+    public byte[] strip(byte[] source) throws IOException {
+        ClassFileReader reader;
+        try {
+            reader = new ClassFileReader(ByteBuffer.wrap(source));
+        } catch (RuntimeException e) {
+            // ClassFileReader reads a truncated class file past the end of the buffer
+            throw new IOException("Malformed class file", e);
+        }
+
+        boolean[] stripped = new boolean[reader.cpCount];
+        boolean hasStripped = false;
+        int codeNameIndex = 0;
+        for (int i = 1; i < reader.cpCount; i++) {
+            String string = reader.strings[i];
+            if (string != null) {
+                if (attributes.contains(string)) {
+                    stripped[i] = true;
+                    hasStripped = true;
+                } else if (codeNameIndex == 0 && string.equals("Code")) {
+                    codeNameIndex = i;
+                }
+            }
+        }
+
+        byte[] result = source;
+        if (hasStripped) {
+            Stripper stripper = new Stripper(source, reader.tailPosition, stripped, codeNameIndex);
+            stripper.stripClass();
+            if (stripper.output.position() < source.length) {
+                result = Arrays.copyOf(stripper.output.array(), stripper.output.position());
+            }
+
+            synchronized (this) {
+                stripper.statistics.forEach((name, stat) -> {
+                    long[] total = strippedAttributes.computeIfAbsent(reader.strings[name], key -> new long[2]);
+                    total[0] += stat[0];
+                    total[1] += stat[1];
+                });
+            }
+        }
+
+        synchronized (this) {
+            classCount++;
+            originalSize += source.length;
+            strippedSize += result.length;
+            if (result != source) {
+                strippedClassCount++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a summary of the removed attributes and the saved bytes.
+     */
+    public synchronized String getReport() {
+        StringBuilder builder = new StringBuilder();
+        long saved = originalSize - strippedSize;
+        builder.append(String.format("Stripped %d of %d classes, saved %d bytes (%.1f%% of %d bytes)%n",
+                strippedClassCount, classCount, saved,
+                originalSize == 0 ? 0.0 : saved * 100.0 / originalSize, originalSize));
+        strippedAttributes.forEach((name, stat) ->
+                builder.append(String.format("    %-24s %8d attributes %12d bytes%n", name, stat[0], stat[1])));
+        return builder.toString();
+    }
+
+    private static final class Stripper {
+        private final ByteBuffer input;
+        private final ByteBuffer output;
+        private final boolean[] stripped;
+        private final int codeNameIndex;
+
+        // Name index to the count and the size of the stripped attributes
+        final Map<Integer, long[]> statistics = new TreeMap<>();
+
+        Stripper(byte[] source, int tailPosition, boolean[] stripped, int codeNameIndex) {
+            this.input = ByteBuffer.wrap(source);
+            this.output = ByteBuffer.allocate(source.length);
+            this.stripped = stripped;
+            this.codeNameIndex = codeNameIndex;
+
+            output.put(source, 0, tailPosition);
+            input.position(tailPosition);
+        }
+
+        private void copy(int length) throws IOException {
+            if (length < 0 || length > input.remaining()) {
+                throw new IOException("Unexpected end of class file");
+            }
+            output.put(input.array(), input.position(), length);
+            input.position(input.position() + length);
+        }
+
+        private int copyU2() throws IOException {
+            copy(2);
+            return Short.toUnsignedInt(output.getShort(output.position() - 2));
+        }
+
+        void stripClass() throws IOException {
+            copy(6); // access_flags, this_class, super_class
+            int interfacesCount = copyU2();
+            copy(interfacesCount * 2);
+
+            // fields and methods
+            for (int i = 0; i < 2; i++) {
+                int count = copyU2();
+                for (int j = 0; j < count; j++) {
+                    copy(6); // access_flags, name_index, descriptor_index
+                    stripAttributes(i == 1);
+                }
+            }
+
+            stripAttributes(false);
+
+            if (input.hasRemaining()) {
+                throw new IOException("Unexpected bytes at the end of class file");
+            }
+        }
+
+        private void stripAttributes(boolean inMethod) throws IOException {
+            if (input.remaining() < 2) {
+                throw new IOException("Unexpected end of class file");
+            }
+            int attributesCount = Short.toUnsignedInt(input.getShort());
+            int countPosition = output.position();
+            output.putShort((short) 0);
+
+            int keptCount = 0;
+            for (int i = 0; i < attributesCount; i++) {
+                if (input.remaining() < 6) {
+                    throw new IOException("Unexpected end of class file");
+                }
+                int nameIndex = Short.toUnsignedInt(input.getShort());
+                int length = input.getInt();
+                if (length < 0 || length > input.remaining() || nameIndex >= stripped.length) {
+                    throw new IOException("Invalid attribute");
+                }
+
+                if (stripped[nameIndex]) {
+                    input.position(input.position() + length);
+
+                    long[] stat = statistics.computeIfAbsent(nameIndex, key -> new long[2]);
+                    stat[0]++;
+                    stat[1] += 6 + length;
+                    continue;
+                }
+
+                keptCount++;
+                output.putShort((short) nameIndex);
+                int lengthPosition = output.position();
+                output.putInt(length);
+
+                if (inMethod && nameIndex == codeNameIndex) {
+                    int start = input.position();
+                    stripCode();
+                    if (input.position() - start != length) {
+                        throw new IOException("The length of the Code attribute does not match");
+                    }
+                    output.putInt(lengthPosition, output.position() - lengthPosition - 4);
+                } else {
+                    copy(length);
+                }
+            }
+
+            output.putShort(countPosition, (short) keptCount);
+        }
+
+        private void stripCode() throws IOException {
+            copy(4); // max_stack, max_locals
+            copy(4);
+            int codeLength = output.getInt(output.position() - 4);
+            copy(codeLength);
+            int exceptionTableLength = copyU2();
+            copy(exceptionTableLength * 8);
+            stripAttributes(false);
+        }
+    }
+}
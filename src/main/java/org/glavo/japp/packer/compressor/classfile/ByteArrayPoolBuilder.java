@@ -18,25 +18,30 @@ package org.glavo.japp.packer.compressor.classfile;
 import com.github.luben.zstd.Zstd;
 import org.glavo.japp.CompressionMethod;
 import org.glavo.japp.boot.decompressor.classfile.ByteArrayPool;
-import org.glavo.japp.boot.decompressor.zstd.ZstdFrameDecompressor;
+import org.glavo.japp.boot.decompressor.ZstdDecompressorPool;
 import org.glavo.japp.io.LittleEndianDataOutput;
+import org.glavo.japp.util.CompressedNumber;
 import org.glavo.japp.util.ZstdUtils;
 import org.glavo.japp.io.ByteBufferOutputStream;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
 public final class ByteArrayPoolBuilder {
     private static final class ByteArrayWrapper {
         final byte[] bytes;
+        final boolean encoded;
         final int hash;
 
-        private ByteArrayWrapper(byte[] bytes) {
+        private ByteArrayWrapper(byte[] bytes, boolean encoded) {
             this.bytes = bytes;
-            this.hash = Arrays.hashCode(bytes);
+            this.encoded = encoded;
+            this.hash = Arrays.hashCode(bytes) ^ (encoded ? 1 : 0);
         }
 
         @Override
@@ -51,14 +56,60 @@ public final class ByteArrayPoolBuilder {
             }
 
             ByteArrayWrapper other = (ByteArrayWrapper) obj;
-            return Arrays.equals(this.bytes, other.bytes);
+            return this.encoded == other.encoded && Arrays.equals(this.bytes, other.bytes);
         }
     }
 
-    private final HashMap<ByteArrayWrapper, Integer> map = new HashMap<>();
+    public static final int DEFAULT_CHUNK_SIZE = 32 * 1024;
+
+    private HashMap<ByteArrayWrapper, Integer> map = new HashMap<>();
+    private List<ByteArrayWrapper> entries = new ArrayList<>();
+    private int[] counts = new int[256];
     private ByteBuffer bytes = ByteBuffer.allocate(8192).order(ByteOrder.LITTLE_ENDIAN);
     private ByteBuffer sizes = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
 
+    // The first entry index and byte offset of each closed chunk after the first one
+    private final List<Integer> chunkStarts = new ArrayList<>();
+    private final List<Integer> chunkOffsets = new ArrayList<>();
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private boolean compressed = true;
+
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * When disabled, the pool is stored as is and the runtime reads it without copying it to the heap.
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    private int currentChunkOffset() {
+        return chunkOffsets.isEmpty() ? 0 : chunkOffsets.get(chunkOffsets.size() - 1);
+    }
+
+    private void endChunk() {
+        if (bytes.position() > currentChunkOffset()) {
+            chunkStarts.add(map.size());
+            chunkOffsets.add(bytes.position());
+        }
+    }
+
+    /**
+     * Called at the end of a resource group, so that the strings first used by the group
+     * tend to share chunks with each other rather than with other groups.
+     */
+    public void endGroup() {
+        if (bytes.position() - currentChunkOffset() >= chunkSize / 4) {
+            endChunk();
+        }
+    }
+
     private void growIfNeed(int s) {
         if (bytes.remaining() < s) {
             int position = bytes.position();
@@ -75,53 +126,225 @@ public final class ByteArrayPoolBuilder {
     }
 
     public int add(byte[] bytes) {
+        return add(bytes, false);
+    }
+
+    /**
+     * Adds an encoded descriptor or signature, in which each {@code 'L'} is followed by
+     * the indices of a package name and a class name in this pool.
+     */
+    public int addEncoded(byte[] bytes) {
+        return add(bytes, true);
+    }
+
+    private int add(byte[] bytes, boolean encoded) {
         assert bytes.length <= 0xffff;
 
-        ByteArrayWrapper wrapper = new ByteArrayWrapper(bytes);
+        ByteArrayWrapper wrapper = new ByteArrayWrapper(bytes, encoded);
 
         Integer index = map.get(wrapper);
-        if (index != null) {
-            return index;
+        if (index == null) {
+            index = append(wrapper);
+        }
+
+        if (index == counts.length) {
+            counts = Arrays.copyOf(counts, counts.length * 2);
         }
+        counts[index]++;
+        return index;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Adds all entries of another pool in the order they were first added to it,
+     * so that this pool ends up as if they had been added to it directly.
+     *
+     * @return the indices in this pool of the entries of the other pool
+     */
+    public int[] merge(ByteArrayPoolBuilder other) {
+        int[] mapping = new int[other.entries.size()];
+        for (int i = 0; i < mapping.length; i++) {
+            ByteArrayWrapper wrapper = other.entries.get(i);
+            if (wrapper.encoded) {
+                // An encoded entry only references the entries added before it
+                wrapper = new ByteArrayWrapper(remapEncoded(wrapper.bytes, mapping), true);
+            }
+
+            Integer index = map.get(wrapper);
+            if (index == null) {
+                index = append(wrapper);
+            }
+
+            if (index >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(counts.length * 2, index + 1));
+            }
+            counts[index] += other.counts[i];
+            mapping[i] = index;
+        }
+        return mapping;
+    }
 
-        index = map.size();
+    private int append(ByteArrayWrapper wrapper) {
+        int index = map.size();
         map.put(wrapper, index);
+        entries.add(wrapper);
 
-        growIfNeed(bytes.length);
-        this.sizes.putShort((short) bytes.length);
-        this.bytes.put(bytes);
+        growIfNeed(wrapper.bytes.length);
+        this.sizes.putShort((short) wrapper.bytes.length);
+        this.bytes.put(wrapper.bytes);
+
+        if (this.bytes.position() - currentChunkOffset() >= chunkSize) {
+            endChunk();
+        }
 
         return index;
     }
 
+    private static int varIntTier(int index) {
+        if (index < (1 << 7)) {
+            return 0;
+        } else if (index < (1 << 14)) {
+            return 1;
+        } else if (index < (1 << 21)) {
+            return 2;
+        } else {
+            return 3;
+        }
+    }
+
+    private static byte[] remapEncoded(byte[] bytes, int[] mapping) {
+        ByteBuffer input = ByteBuffer.wrap(bytes);
+        ByteBuffer output = ByteBuffer.allocate(bytes.length * 5);
+        while (input.hasRemaining()) {
+            byte b = input.get();
+            output.put(b);
+            if (b == 'L') {
+                CompressedNumber.putInt(output, mapping[CompressedNumber.getInt(input)]);
+                CompressedNumber.putInt(output, mapping[CompressedNumber.getInt(input)]);
+            }
+        }
+        return Arrays.copyOf(output.array(), output.position());
+    }
+
+    /**
+     * Renumbers the entries so that the most frequently added entries get the shortest indices.
+     * Entries whose indices have the same encoded length are sorted by content for a better compression ratio.
+     * <p>
+     * Chunks are rebuilt by size, so the chunk boundaries set by {@link #endGroup()} are discarded.
+     *
+     * @return the new index of each old index
+     */
+    public int[] renumber() {
+        int count = entries.size();
+        int[] counts = this.counts;
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> counts[a] != counts[b] ? Integer.compare(counts[b], counts[a]) : Integer.compare(a, b));
+
+        for (int start = 0; start < count; ) {
+            int end = start + 1;
+            while (end < count && varIntTier(end) == varIntTier(start)) {
+                end++;
+            }
+            Arrays.sort(order, start, end, (a, b) -> Arrays.compareUnsigned(entries.get(a).bytes, entries.get(b).bytes));
+            start = end;
+        }
+
+        int[] mapping = new int[count];
+        for (int i = 0; i < count; i++) {
+            mapping[order[i]] = i;
+        }
+
+        List<ByteArrayWrapper> oldEntries = this.entries;
+        this.map = new HashMap<>();
+        this.entries = new ArrayList<>(count);
+        this.counts = new int[Math.max(counts.length, 256)];
+        this.bytes.clear();
+        this.sizes.clear();
+        this.chunkStarts.clear();
+        this.chunkOffsets.clear();
+
+        for (int i = 0; i < count; i++) {
+            ByteArrayWrapper wrapper = oldEntries.get(order[i]);
+            if (wrapper.encoded) {
+                wrapper = new ByteArrayWrapper(remapEncoded(wrapper.bytes, mapping), true);
+            }
+            append(wrapper);
+            this.counts[i] = counts[order[i]];
+        }
+
+        return mapping;
+    }
+
     public void writeTo(LittleEndianDataOutput output) throws IOException {
         int count = map.size();
-        int uncompressedBytesSize = bytes.position();
 
-        CompressionMethod compressionMethod;
-        byte[] compressed = new byte[ZstdUtils.maxCompressedLength(uncompressedBytesSize)];
-        long compressedBytesSize = Zstd.compressByteArray(compressed, 0, compressed.length, bytes.array(), 0, uncompressedBytesSize, 8);
-        if (compressedBytesSize < uncompressedBytesSize) {
-            compressionMethod = CompressionMethod.ZSTD;
-        } else {
-            compressionMethod = CompressionMethod.NONE;
-            compressed = bytes.array();
-            compressedBytesSize = uncompressedBytesSize;
+        List<Integer> starts = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+        starts.add(0);
+        offsets.add(0);
+        starts.addAll(chunkStarts);
+        offsets.addAll(chunkOffsets);
+        if (starts.get(starts.size() - 1) == count) {
+            starts.remove(starts.size() - 1);
+            offsets.remove(offsets.size() - 1);
+        }
+        starts.add(count);
+        offsets.add(bytes.position());
+
+        int chunkCount = count == 0 ? 0 : starts.size() - 1;
+
+        CompressionMethod[] methods = new CompressionMethod[chunkCount];
+        byte[][] chunks = new byte[chunkCount][];
+        int[] compressedSizes = new int[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            int offset = offsets.get(i);
+            int size = offsets.get(i + 1) - offset;
+
+            if (compressed && size > 0) {
+                byte[] res = new byte[ZstdUtils.maxCompressedLength(size)];
+                long n = Zstd.compressByteArray(res, 0, res.length, bytes.array(), offset, size, 8);
+                if (n < size) {
+                    methods[i] = CompressionMethod.ZSTD;
+                    chunks[i] = res;
+                    compressedSizes[i] = (int) n;
+                    continue;
+                }
+            }
+
+            methods[i] = CompressionMethod.NONE;
+            chunks[i] = Arrays.copyOfRange(bytes.array(), offset, offset + size);
+            compressedSizes[i] = size;
         }
 
         output.writeByte(ByteArrayPool.MAGIC_NUMBER);
-        output.writeByte(compressionMethod.id());
+        output.writeByte((byte) 0);
         output.writeShort((short) 0);
         output.writeInt(count);
-        output.writeInt(uncompressedBytesSize);
-        output.writeInt((int) compressedBytesSize);
+        output.writeInt(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            output.writeByte(methods[i].id());
+            output.writeByte((byte) 0);
+            output.writeShort((short) 0);
+            output.writeInt(starts.get(i + 1) - starts.get(i));
+            output.writeInt(offsets.get(i + 1) - offsets.get(i));
+            output.writeInt(compressedSizes[i]);
+        }
         output.writeBytes(sizes.array(), 0, sizes.position());
-        output.writeBytes(compressed, 0, (int) compressedBytesSize);
+        for (int i = 0; i < chunkCount; i++) {
+            output.writeBytes(chunks[i], 0, compressedSizes[i]);
+        }
     }
 
     public ByteArrayPool toPool() throws IOException {
         ByteBufferOutputStream output = new ByteBufferOutputStream();
         writeTo(output);
-        return ByteArrayPool.readFrom(output.getByteBuffer().flip(), new ZstdFrameDecompressor());
+        return ByteArrayPool.readFrom(output.getByteBuffer().flip(), new ZstdDecompressorPool());
     }
 }
@@ -15,12 +15,15 @@
  */
 package org.glavo.japp.packer.compressor.classfile;
 
+import com.github.luben.zstd.ZstdCompressCtx;
 import org.glavo.japp.CompressionMethod;
+import org.glavo.japp.boot.decompressor.ZstdDecompressorPool;
 import org.glavo.japp.packer.compressor.CompressContext;
 import org.glavo.japp.util.CompressedNumber;
 import org.glavo.japp.packer.compressor.CompressResult;
 import org.glavo.japp.packer.compressor.Compressor;
 import org.glavo.japp.util.MUTF8;
+import org.glavo.japp.util.ZstdUtils;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -34,13 +37,190 @@ public final class ClassFileCompressor implements Compressor {
         return input + input / 128 + 16;
     }
 
+    private static void putReference(ByteBuffer column, int index, int reference) {
+        int delta = reference - index;
+        CompressedNumber.putInt(column, (delta << 1) ^ (delta >> 31));
+    }
+
+    /**
+     * Puts a string entry in the pool and writes its indices to {@code output}.
+     *
+     * @return the external tag of the entry
+     */
+    private static byte putString(CompressContext context, byte tag, byte[] mutf8, ByteBuffer output) throws IOException {
+        if (tag == CONSTANT_EXTERNAL_STRING_Class) {
+            return putConstantClassName(context, mutf8, output);
+        } else if (tag == CONSTANT_EXTERNAL_STRING_Descriptor) {
+            return putConstantDescriptor(context, mutf8, output);
+        } else if (tag == CONSTANT_EXTERNAL_STRING_Signature) {
+            return putConstantSignature(context, mutf8, output);
+        } else {
+            return putConstantUTF8(context, mutf8, output);
+        }
+    }
+
+    /**
+     * Puts the string entries and the numeric entries of the constant pool in the pool
+     * and writes their indices to {@code references}.
+     *
+     * @return the tags of all constant pool entries, in which the tags of the string entries are replaced by external tags
+     */
+    private static byte[] putStrings(CompressContext context, ClassFileReader reader, byte[] source, ByteBuffer references) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(source);
+        byte[] tags = reader.tags.clone();
+
+        for (int i = 1; i < reader.cpCount; i++) {
+            byte tag = tags[i];
+            int position = reader.positions[i];
+            if (tag == CONSTANT_Utf8 || tag < 0) {
+                buffer.position(position);
+                int len = Short.toUnsignedInt(buffer.getShort());
+
+                byte[] mutf8 = new byte[len];
+                buffer.get(mutf8);
+
+                tags[i] = putString(context, tag, mutf8, references);
+            } else if (tag == CONSTANT_Integer || tag == CONSTANT_Float
+                    || tag == CONSTANT_Long || tag == CONSTANT_Double) {
+                byte[] number = Arrays.copyOfRange(source, position, position + CONSTANT_SIZE[tag]);
+                CompressedNumber.putInt(references, context.getPool().add(number));
+                if (tag == CONSTANT_Long || tag == CONSTANT_Double) {
+                    i++;
+                }
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Encodes the structure of the constant pool column by column, followed by the tail of the class file.
+     * The pool references of the string and numeric entries are not included.
+     */
+    private static ByteBuffer encodeStream(ClassFileReader reader, byte[] tags, byte[] source) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(source);
+
+        int cpCount = reader.cpCount;
+        ByteBuffer[] columns = new ByteBuffer[COLUMN_COUNT];
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            // Each entry puts at most one value in a column
+            columns[i] = ByteBuffer.allocate(cpCount * 5);
+        }
+
+        for (int i = 1; i < cpCount; i++) {
+            byte tag = tags[i];
+            int position = reader.positions[i];
+            columns[COLUMN_TAG].put(tag);
+            switch (tag) {
+                case CONSTANT_EXTERNAL_STRING:
+                case CONSTANT_EXTERNAL_STRING_Class:
+                case CONSTANT_EXTERNAL_STRING_Descriptor:
+                case CONSTANT_EXTERNAL_STRING_Signature:
+                case CONSTANT_Integer:
+                case CONSTANT_Float:
+                    // The pool references are stored outside the stream
+                    break;
+                case CONSTANT_Long:
+                case CONSTANT_Double:
+                    i++;
+                    break;
+                case CONSTANT_Class:
+                case CONSTANT_String:
+                case CONSTANT_MethodType:
+                case CONSTANT_Module:
+                case CONSTANT_Package:
+                    putReference(columns[COLUMN_REFERENCE], i, Short.toUnsignedInt(buffer.getShort(position)));
+                    break;
+                case CONSTANT_Fieldref:
+                case CONSTANT_Methodref:
+                case CONSTANT_InterfaceMethodref:
+                    putReference(columns[COLUMN_MEMBER_CLASS], i, Short.toUnsignedInt(buffer.getShort(position)));
+                    putReference(columns[COLUMN_MEMBER_NAME_AND_TYPE], i, Short.toUnsignedInt(buffer.getShort(position + 2)));
+                    break;
+                case CONSTANT_NameAndType:
+                    putReference(columns[COLUMN_NAME], i, Short.toUnsignedInt(buffer.getShort(position)));
+                    putReference(columns[COLUMN_DESCRIPTOR], i, Short.toUnsignedInt(buffer.getShort(position + 2)));
+                    break;
+                case CONSTANT_Dynamic:
+                case CONSTANT_InvokeDynamic:
+                    CompressedNumber.putInt(columns[COLUMN_BOOTSTRAP_METHOD], Short.toUnsignedInt(buffer.getShort(position)));
+                    putReference(columns[COLUMN_DYNAMIC_NAME_AND_TYPE], i, Short.toUnsignedInt(buffer.getShort(position + 2)));
+                    break;
+                case CONSTANT_MethodHandle:
+                    columns[COLUMN_REFERENCE_KIND].put(buffer.get(position));
+                    putReference(columns[COLUMN_METHOD_HANDLE_REFERENCE], i, Short.toUnsignedInt(buffer.getShort(position + 1)));
+                    break;
+                default:
+                    throw new IOException(String.format("Unknown tag: 0x%02x", Byte.toUnsignedInt(tag)));
+            }
+        }
+
+        int length = COLUMN_COUNT * 5 + reader.tailLen;
+        for (ByteBuffer column : columns) {
+            length += column.position();
+        }
+
+        ByteBuffer stream = ByteBuffer.allocate(length);
+        for (ByteBuffer column : columns) {
+            CompressedNumber.putInt(stream, column.position());
+        }
+        for (ByteBuffer column : columns) {
+            stream.put(column.array(), 0, column.position());
+        }
+        stream.put(source, reader.tailPosition, reader.tailLen);
+        return stream.flip();
+    }
+
+    /**
+     * Compresses the stream with zstd, or stores it as is if it is not smaller.
+     */
+    private static void putStream(CompressContext context, ByteBuffer outputBuffer, byte[] stream, int offset, int length) {
+        byte[] output = outputBuffer.array();
+
+        outputBuffer.put(CompressionMethod.ZSTD.id());
+        int outputPosition = outputBuffer.position();
+        long compressedStreamLen = context.getZstdCompressCtx().compressByteArray(
+                output, outputPosition, output.length - outputPosition,
+                stream, offset, length);
+        if (compressedStreamLen < length) {
+            outputBuffer.position(outputPosition + (int) compressedStreamLen);
+        } else {
+            outputBuffer.position(outputPosition - 1);
+            outputBuffer.put(CompressionMethod.NONE.id());
+            outputBuffer.put(stream, offset, length);
+        }
+    }
+
+    /*
+     * The compressed class file:
+     *
+     * u4 magic, u2 minor_version, u2 major_version, u2 constant_pool_count
+     * the entries of the constant pool, in which the string entries are replaced by their indices in the pool
+     * u1 method, the tail of the class file after the constant pool compressed by the method
+     *
+     * When the constant pool is stored in columns (see CompressContext#isConstantPoolColumns()),
+     * the header is followed by:
+     *
+     * u1 CONSTANT_POOL_COLUMNS
+     * varint pool_references_length, the indices in the pool of the string and numeric entries
+     * varint structure_length, varint tail_length
+     * u1 method, the stream compressed by the method:
+     *     varint column_lengths[COLUMN_COUNT], columns (structure_length bytes)
+     *     the tail of the class file after the constant pool (tail_length bytes)
+     *
+     * The pool references are kept out of the stream so that they can be remapped
+     * without decompressing it, see remapPoolIndices.
+     */
     @Override
     public CompressResult compress(CompressContext context, byte[] source) throws IOException {
-        ByteBuffer buffer = ByteBuffer.wrap(source);
+        ClassFileReader reader = new ClassFileReader(ByteBuffer.wrap(source));
+        return context.isConstantPoolColumns()
+                ? compressColumns(context, reader, source)
+                : compressInline(context, reader, source);
+    }
 
-        ClassFileReader reader = new ClassFileReader(buffer);
+    private static CompressResult compressInline(CompressContext context, ClassFileReader reader, byte[] source) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(source);
 
-        int arrayOffset = buffer.arrayOffset();
         byte[] output = new byte[maxCompressedSize(source.length)];
         ByteBuffer outputBuffer = ByteBuffer.wrap(output);
 
@@ -60,40 +240,276 @@ public final class ClassFileCompressor implements Compressor {
                 byte[] mutf8 = new byte[len];
                 buffer.get(mutf8);
 
-                if (tag == CONSTANT_EXTERNAL_STRING_Class) {
-                    putConstantClassName(context, mutf8, outputBuffer);
-                } else if (tag == CONSTANT_EXTERNAL_STRING_Descriptor) {
-                    putConstantDescriptor(context, mutf8, outputBuffer);
-                } else if (tag == CONSTANT_EXTERNAL_STRING_Signature) {
-                    putConstantSignature(context, mutf8, outputBuffer);
-                } else {
-                    putConstantUTF8(context, mutf8, outputBuffer);
-                }
+                int tagPosition = outputBuffer.position();
+                outputBuffer.position(tagPosition + 1);
+                outputBuffer.put(tagPosition, putString(context, tag, mutf8, outputBuffer));
             } else {
                 outputBuffer.put(tag);
-                outputBuffer.put(buffer.array(), arrayOffset + reader.positions[i], CONSTANT_SIZE[tag]);
+                outputBuffer.put(source, reader.positions[i], CONSTANT_SIZE[tag]);
             }
         }
 
+        putStream(context, outputBuffer, source, reader.tailPosition, reader.tailLen);
+        return new CompressResult(CompressionMethod.CLASSFILE, output, 0, outputBuffer.position());
+    }
 
-        outputBuffer.put(CompressionMethod.ZSTD.id());
-        int outputPosition = outputBuffer.position();
-        long compressedTailLen = context.getZstdCompressCtx().compressByteArray(
-                output, outputPosition, output.length - outputPosition,
-                source, reader.tailPosition, reader.tailLen);
-        if (compressedTailLen < reader.tailLen) {
-            outputBuffer.position(outputPosition + (int) compressedTailLen);
+    private static CompressResult compressColumns(CompressContext context, ClassFileReader reader, byte[] source) throws IOException {
+        // Each string entry has up to two pool references
+        ByteBuffer references = ByteBuffer.allocate(reader.cpCount * 10);
+        byte[] tags = putStrings(context, reader, source, references);
+
+        ByteBuffer stream = encodeStream(reader, tags, source);
+        int structureLength = stream.remaining() - reader.tailLen;
+
+        byte[] output = new byte[maxCompressedSize(references.position() + stream.remaining()) + 32];
+        ByteBuffer outputBuffer = ByteBuffer.wrap(output);
+
+        outputBuffer.putInt(MAGIC_NUMBER);
+        outputBuffer.putShort((short) reader.minorVersion);
+        outputBuffer.putShort((short) reader.majorVersion);
+        outputBuffer.putShort((short) reader.cpCount);
+        outputBuffer.put(CONSTANT_POOL_COLUMNS);
+        CompressedNumber.putInt(outputBuffer, references.position());
+        outputBuffer.put(references.array(), 0, references.position());
+        CompressedNumber.putInt(outputBuffer, structureLength);
+        CompressedNumber.putInt(outputBuffer, reader.tailLen);
+
+        putStream(context, outputBuffer, stream.array(), 0, stream.remaining());
+        return new CompressResult(CompressionMethod.CLASSFILE, output, 0, outputBuffer.position());
+    }
+
+    private static boolean isColumns(byte[] compressed) throws IOException {
+        if (compressed.length <= 10) {
+            throw new IOException("Truncated class file");
+        }
+        return compressed[10] == CONSTANT_POOL_COLUMNS;
+    }
+
+    /**
+     * Rewrites the pool indices in a compressed class file after the pool has been renumbered.
+     *
+     * @see ByteArrayPoolBuilder#renumber()
+     */
+    public static byte[] remapPoolIndices(byte[] compressed, int[] mapping) throws IOException {
+        return isColumns(compressed)
+                ? remapColumnsPoolIndices(compressed, mapping)
+                : remapInlinePoolIndices(compressed, mapping);
+    }
+
+    private static byte[] remapInlinePoolIndices(byte[] compressed, int[] mapping) throws IOException {
+        ByteBuffer input = ByteBuffer.wrap(compressed);
+        ByteBuffer output = ByteBuffer.allocate(compressed.length * 5);
+
+        // magic number, minor version and major version
+        output.putLong(input.getLong());
+
+        int constantPoolCount = Short.toUnsignedInt(input.getShort());
+        output.putShort((short) constantPoolCount);
+
+        for (int i = 1; i < constantPoolCount; i++) {
+            byte tag = input.get();
+            output.put(tag);
+
+            switch (tag) {
+                case CONSTANT_Utf8: {
+                    int len = Short.toUnsignedInt(input.getShort());
+                    output.putShort((short) len);
+                    output.put(compressed, input.position(), len);
+                    input.position(input.position() + len);
+                    break;
+                }
+                case CONSTANT_EXTERNAL_STRING_Class:
+                    CompressedNumber.putInt(output, mapping[CompressedNumber.getInt(input)]);
+                    // fallthrough
+                case CONSTANT_EXTERNAL_STRING:
+                case CONSTANT_EXTERNAL_STRING_Descriptor:
+                case CONSTANT_EXTERNAL_STRING_Signature:
+                    CompressedNumber.putInt(output, mapping[CompressedNumber.getInt(input)]);
+                    break;
+                default: {
+                    if (tag <= 0 || tag >= CONSTANT_SIZE.length || CONSTANT_SIZE[tag] == 0) {
+                        throw new IOException(String.format("Unknown tag: 0x%02x", Byte.toUnsignedInt(tag)));
+                    }
+
+                    if (tag == CONSTANT_Long || tag == CONSTANT_Double) {
+                        i++;
+                    }
+
+                    output.put(compressed, input.position(), CONSTANT_SIZE[tag]);
+                    input.position(input.position() + CONSTANT_SIZE[tag]);
+                }
+            }
+        }
+
+        // The tail is copied as is
+        output.put(input);
+        return Arrays.copyOf(output.array(), output.position());
+    }
+
+    private static byte[] remapColumnsPoolIndices(byte[] compressed, int[] mapping) throws IOException {
+        ByteBuffer input = ByteBuffer.wrap(compressed);
+
+        // magic number, minor version, major version, constant pool count and CONSTANT_POOL_COLUMNS
+        input.position(11);
+
+        int referencesLength = CompressedNumber.getInt(input);
+        int referencesEnd = input.position() + referencesLength;
+
+        ByteBuffer references = ByteBuffer.allocate(referencesLength * 5);
+        while (input.position() < referencesEnd) {
+            CompressedNumber.putInt(references, mapping[CompressedNumber.getInt(input)]);
+        }
+        if (input.position() != referencesEnd) {
+            throw new IOException("Invalid pool references");
+        }
+
+        ByteBuffer output = ByteBuffer.allocate(compressed.length + references.position());
+        output.put(compressed, 0, 11);
+        CompressedNumber.putInt(output, references.position());
+        output.put(references.array(), 0, references.position());
+
+        // The rest is copied as is
+        output.put(input);
+        return Arrays.copyOf(output.array(), output.position());
+    }
+
+    /**
+     * Returns the stream of the compressed class file before it is compressed with zstd.
+     * <p>
+     * It is the part of the class file after the constant pool,
+     * preceded by the structure of the constant pool if the constant pool is stored in columns.
+     */
+    public static byte[] getTail(byte[] source, boolean constantPoolColumns) throws IOException {
+        ClassFileReader reader = new ClassFileReader(ByteBuffer.wrap(source));
+        if (!constantPoolColumns) {
+            return Arrays.copyOfRange(source, reader.tailPosition, reader.tailPosition + reader.tailLen);
+        }
+
+        // The tags of the string entries are needed, but the pool is not
+        ByteArrayPoolBuilder pool = new ByteArrayPoolBuilder();
+        byte[] tags = putStrings(() -> pool, reader, source, ByteBuffer.allocate(reader.cpCount * 10));
+
+        ByteBuffer stream = encodeStream(reader, tags, source);
+        return Arrays.copyOf(stream.array(), stream.remaining());
+    }
+
+    /**
+     * Returns the same stream as {@link #getTail(byte[], boolean)}, decompressed from the compressed class file alone.
+     *
+     * @param size the size of the class file
+     */
+    public static byte[] decompressTail(byte[] compressed, int size, ZstdDecompressorPool decompressors) throws IOException {
+        int tailOffset = getTailOffset(compressed);
+
+        // The length of the stream is only known if the constant pool is stored in columns
+        int length;
+        if (isColumns(compressed)) {
+            ByteBuffer input = ByteBuffer.wrap(compressed, 11, tailOffset - 11);
+            int referencesLength = CompressedNumber.getInt(input);
+            input.position(input.position() + referencesLength);
+            length = CompressedNumber.getInt(input) + CompressedNumber.getInt(input);
         } else {
-            outputBuffer.position(outputPosition - 1);
-            outputBuffer.put(CompressionMethod.NONE.id());
-            outputBuffer.put(source, reader.tailPosition, reader.tailLen);
+            length = size;
         }
-        return new CompressResult(CompressionMethod.CLASSFILE, output, 0, outputBuffer.position());
+
+        byte[] tail = new byte[length];
+        int n;
+        CompressionMethod method = CompressionMethod.of(compressed[tailOffset]);
+        if (method == CompressionMethod.NONE) {
+            n = compressed.length - tailOffset - 1;
+            if (n > length) {
+                throw new IOException("Wrong length of the class file stream");
+            }
+            System.arraycopy(compressed, tailOffset + 1, tail, 0, n);
+        } else if (method == CompressionMethod.ZSTD) {
+            n = decompressors.decompress(compressed, tailOffset + 1, compressed.length - tailOffset - 1, tail, 0, length);
+        } else {
+            throw new IOException("Unsupported compression method: " + method);
+        }
+
+        if (n == length) {
+            return tail;
+        } else if (isColumns(compressed)) {
+            throw new IOException("Wrong length of the class file stream");
+        } else {
+            return Arrays.copyOf(tail, n);
+        }
+    }
+
+    /**
+     * Returns the offset of the compression method of the stream.
+     */
+    private static int getTailOffset(byte[] compressed) throws IOException {
+        ByteBuffer input = ByteBuffer.wrap(compressed);
+
+        if (isColumns(compressed)) {
+            input.position(11);
+
+            int referencesLength = CompressedNumber.getInt(input);
+            input.position(input.position() + referencesLength);
+            CompressedNumber.getInt(input); // structure length
+            CompressedNumber.getInt(input); // tail length
+            return input.position();
+        }
+
+        input.position(8);
+
+        int constantPoolCount = Short.toUnsignedInt(input.getShort());
+        for (int i = 1; i < constantPoolCount; i++) {
+            byte tag = input.get();
+            switch (tag) {
+                case CONSTANT_Utf8:
+                    input.position(input.position() + Short.toUnsignedInt(input.getShort()));
+                    break;
+                case CONSTANT_EXTERNAL_STRING_Class:
+                    CompressedNumber.getInt(input);
+                    // fallthrough
+                case CONSTANT_EXTERNAL_STRING:
+                case CONSTANT_EXTERNAL_STRING_Descriptor:
+                case CONSTANT_EXTERNAL_STRING_Signature:
+                    CompressedNumber.getInt(input);
+                    break;
+                default: {
+                    if (tag <= 0 || tag >= CONSTANT_SIZE.length || CONSTANT_SIZE[tag] == 0) {
+                        throw new IOException(String.format("Unknown tag: 0x%02x", Byte.toUnsignedInt(tag)));
+                    }
+
+                    if (tag == CONSTANT_Long || tag == CONSTANT_Double) {
+                        i++;
+                    }
+
+                    input.position(input.position() + CONSTANT_SIZE[tag]);
+                }
+            }
+        }
+        return input.position();
+    }
+
+    /**
+     * Compresses the stream of a compressed class file again with the given context (usually with a dictionary loaded).
+     *
+     * @param tail the uncompressed stream, see {@link #getTail(byte[], boolean)} and {@link #decompressTail(byte[], int, ZstdDecompressorPool)}
+     * @return the new compressed class file, or the original one if it is not smaller
+     */
+    public static byte[] recompressTail(byte[] compressed, byte[] tail, ZstdCompressCtx ctx) throws IOException {
+        int tailOffset = getTailOffset(compressed);
+        int oldTailLength = compressed.length - tailOffset - 1;
+
+        byte[] buffer = new byte[ZstdUtils.maxCompressedLength(tail.length)];
+        int n = (int) ctx.compressByteArray(buffer, 0, buffer.length, tail, 0, tail.length);
+        if (n >= oldTailLength) {
+            return compressed;
+        }
+
+        byte[] result = Arrays.copyOf(compressed, tailOffset + 1 + n);
+        result[tailOffset] = CompressionMethod.ZSTD.id();
+        System.arraycopy(buffer, 0, result, tailOffset + 1, n);
+        return result;
     }
 
-    private static void putConstantUTF8(CompressContext context, byte[] mutf8, ByteBuffer outputBuffer) throws IOException {
-        outputBuffer.put(CONSTANT_EXTERNAL_STRING);
+    private static byte putConstantUTF8(CompressContext context, byte[] mutf8, ByteBuffer outputBuffer) throws IOException {
         CompressedNumber.putInt(outputBuffer, context.getPool().add(mutf8));
+        return CONSTANT_EXTERNAL_STRING;
     }
 
     private static void writeClassName(CompressContext context, byte[] mutf8, int offset, int end, int lastSlash, ByteBuffer outputBuffer) {
@@ -112,7 +528,7 @@ public final class ClassFileCompressor implements Compressor {
         CompressedNumber.putInt(outputBuffer, context.getPool().add(classNameBytes));
     }
 
-    private static void putConstantDescriptor(CompressContext context, byte[] mutf8, ByteBuffer outputBuffer) throws IOException {
+    private static byte putConstantDescriptor(CompressContext context, byte[] mutf8, ByteBuffer outputBuffer) throws IOException {
         int offset = 0;
         for (; offset < mutf8.length; offset++) {
             if (mutf8[offset] == 'L') {
@@ -121,8 +537,7 @@ public final class ClassFileCompressor implements Compressor {
         }
 
         if (offset == mutf8.length) {
-            putConstantUTF8(context, mutf8, outputBuffer);
-            return;
+            return putConstantUTF8(context, mutf8, outputBuffer);
         }
 
         ByteBuffer descriptorBuffer = ByteBuffer.allocate(mutf8.length * 2);
@@ -157,12 +572,12 @@ public final class ClassFileCompressor implements Compressor {
             }
         }
 
-        int index = context.getPool().add(Arrays.copyOf(descriptorBuffer.array(), descriptorBuffer.position()));
-        outputBuffer.put(CONSTANT_EXTERNAL_STRING_Descriptor);
+        int index = context.getPool().addEncoded(Arrays.copyOf(descriptorBuffer.array(), descriptorBuffer.position()));
         CompressedNumber.putInt(outputBuffer, index);
+        return CONSTANT_EXTERNAL_STRING_Descriptor;
     }
 
-    private static void putConstantSignature(CompressContext packer, byte[] mutf8, ByteBuffer outputBuffer) throws IOException {
+    private static byte putConstantSignature(CompressContext packer, byte[] mutf8, ByteBuffer outputBuffer) throws IOException {
         ByteBuffer signatureBuffer = ByteBuffer.allocate(mutf8.length * 2);
 
         for (int offset = 0; offset < mutf8.length; offset++) {
@@ -197,19 +612,18 @@ public final class ClassFileCompressor implements Compressor {
             }
         }
 
-        int index = packer.getPool().add(Arrays.copyOf(signatureBuffer.array(), signatureBuffer.position()));
-        outputBuffer.put(CONSTANT_EXTERNAL_STRING_Signature);
+        int index = packer.getPool().addEncoded(Arrays.copyOf(signatureBuffer.array(), signatureBuffer.position()));
         CompressedNumber.putInt(outputBuffer, index);
+        return CONSTANT_EXTERNAL_STRING_Signature;
     }
 
-    private static void putConstantClassName(CompressContext context, byte[] mutf8, ByteBuffer outputBuffer) throws IOException {
+    private static byte putConstantClassName(CompressContext context, byte[] mutf8, ByteBuffer outputBuffer) throws IOException {
         if (mutf8.length == 0) {
             throw new IOException("Class name is empty");
         }
 
         if (mutf8[0] == '[') {
-            putConstantDescriptor(context, mutf8, outputBuffer);
-            return;
+            return putConstantDescriptor(context, mutf8, outputBuffer);
         }
 
         int lastSlash = mutf8.length - 1;
@@ -223,7 +637,7 @@ public final class ClassFileCompressor implements Compressor {
             throw new IOException("Invalid class name: " + MUTF8.stringFromMUTF8(mutf8));
         }
 
-        outputBuffer.put(CONSTANT_EXTERNAL_STRING_Class);
         writeClassName(context, mutf8, 0, mutf8.length, lastSlash, outputBuffer);
+        return CONSTANT_EXTERNAL_STRING_Class;
     }
 }
@@ -21,6 +21,8 @@ import org.glavo.japp.util.MUTF8;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.HashSet;
+import java.util.Set;
 
 import static org.glavo.japp.classfile.ClassFile.*;
 
@@ -375,4 +377,54 @@ public final class ClassFileReader {
     public String getModuleName() {
         return moduleName;
     }
+
+    /**
+     * Returns the internal name of this class, or {@code null} if it cannot be resolved.
+     */
+    public String getClassName() {
+        if (thisClass <= 0 || thisClass >= cpCount || tags[thisClass] != CONSTANT_Class) {
+            return null;
+        }
+        int nameIndex = Short.toUnsignedInt(buffer.getShort(positions[thisClass]));
+        return nameIndex < cpCount ? strings[nameIndex] : null;
+    }
+
+    /**
+     * Returns the internal names of the classes that may be referenced by this class file.
+     * <p>
+     * Every string in the constant pool is taken into account, including annotation values and string literals
+     * (which are usually the arguments of {@code Class.forName}), so the result is a superset of the real references.
+     */
+    public Set<String> getReferencedClassNames() {
+        Set<String> result = new HashSet<>();
+        for (int i = 1; i < cpCount; i++) {
+            String str = strings[i];
+            if (str == null || str.isEmpty()) {
+                continue;
+            }
+
+            if (str.indexOf('.') >= 0) {
+                result.add(str.replace('.', '/'));
+            } else {
+                result.add(str);
+            }
+
+            // Class types in descriptors and signatures
+            int len = str.length();
+            for (int start = str.indexOf('L'); start >= 0; start = str.indexOf('L', start + 1)) {
+                int end = start + 1;
+                while (end < len) {
+                    char ch = str.charAt(end);
+                    if (ch == ';' || ch == '<' || ch == '.' || ch == ':') {
+                        break;
+                    }
+                    end++;
+                }
+                if (end > start + 1) {
+                    result.add(str.substring(start + 1, end));
+                }
+            }
+        }
+        return result;
+    }
 }
@@ -37,6 +37,20 @@ public final class LocalClassPathProcessor extends ClassPathProcessor {
 
     private static final String MULTI_RELEASE_PREFIX = "META-INF/versions/";
 
+    private static byte[] readEntry(ZipFile zipFile, ZipEntry entry) throws IOException {
+        byte[] buffer = new byte[Math.toIntExact(entry.getSize())];
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            int count = 0;
+            int n;
+            while ((n = in.read(buffer, count, buffer.length - count)) > 0) {
+                count += n;
+            }
+
+            assert count == buffer.length;
+        }
+        return buffer;
+    }
+
     public static void addJar(JAppWriter writer, Path jar, boolean isModulePath) throws IOException {
         try (ZipFile zipFile = new ZipFile(jar.toFile())) {
             Attributes attributes = null;
@@ -131,21 +145,10 @@ public final class LocalClassPathProcessor extends ClassPathProcessor {
                         }
                     }
 
-                    byte[] buffer = new byte[Math.toIntExact(entry.getSize())];
-                    try (InputStream in = zipFile.getInputStream(entry)) {
-                        int count = 0;
-                        int n;
-                        while ((n = in.read(buffer, count, buffer.length - count)) > 0) {
-                            count += n;
-                        }
-
-                        assert count == buffer.length;
-                    }
-
                     JAppResourceInfo resource = new JAppResourceInfo(name);
                     resource.setCreationTime(entry.getCreationTime());
                     resource.setLastModifiedTime(entry.getLastModifiedTime());
-                    resourcesWriter.writeResource(release, resource, buffer);
+                    resourcesWriter.writeResource(release, resource, () -> readEntry(zipFile, entry));
                 }
             }
 
@@ -168,12 +171,11 @@ public final class LocalClassPathProcessor extends ClassPathProcessor {
                 @Override
                 public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
                     String path = absoluteDir.relativize(file).toString().replace('\\', '/');
-                    byte[] data = Files.readAllBytes(file);
                     JAppResourceInfo resource = new JAppResourceInfo(path);
                     resource.setCreationTime(attrs.creationTime());
                     resource.setLastModifiedTime(attrs.lastModifiedTime());
                     resource.setLastAccessTime(attrs.lastAccessTime());
-                    resourcesWriter.writeResource(resource, data);
+                    resourcesWriter.writeResource(resource, () -> Files.readAllBytes(file));
                     return FileVisitResult.CONTINUE;
                 }
             });
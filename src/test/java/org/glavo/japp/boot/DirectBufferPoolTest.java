@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DirectBufferPoolTest {
+
+    @Test
+    void test() {
+        DirectBufferPool pool = new DirectBufferPool(1);
+
+        ByteBuffer small = pool.acquire(100);
+        assertTrue(small.isDirect());
+        assertEquals(4096, small.capacity());
+        assertEquals(0, small.position());
+        assertEquals(100, small.limit());
+
+        ByteBuffer medium = pool.acquire(5000);
+        assertEquals(8192, medium.capacity());
+
+        small.position(50);
+        pool.release(small);
+        ByteBuffer reused = pool.acquire(4096);
+        assertSame(small, reused);
+        assertEquals(0, reused.position());
+        assertEquals(4096, reused.limit());
+
+        // Only one buffer is kept per bucket
+        pool.release(reused);
+        pool.release(ByteBuffer.allocateDirect(4096));
+        assertSame(reused, pool.acquire(1));
+        assertNotSame(reused, pool.acquire(1));
+
+        // Huge requests are never pooled
+        ByteBuffer huge = pool.acquire(5 * 1024 * 1024);
+        assertEquals(5 * 1024 * 1024, huge.capacity());
+        pool.release(huge);
+        assertNotSame(huge, pool.acquire(5 * 1024 * 1024));
+
+        // Foreign buffers are ignored
+        pool.release(ByteBuffer.allocate(4096));
+        pool.release(ByteBuffer.allocateDirect(1024));
+        assertTrue(pool.acquire(10).isDirect());
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.boot.JAppBootTestHelper.Entry;
+import org.glavo.japp.boot.JAppBootTestHelper.TestFile;
+import org.glavo.japp.launcher.JAppLauncherMetadata;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JAppAccessProfileTest {
+
+    private static Map<String, List<Entry>> createGroups() {
+        Map<String, List<Entry>> groups = new LinkedHashMap<>();
+        for (String groupName : Arrays.asList("foo", "bar")) {
+            List<Entry> entries = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                String name = "r" + i;
+                entries.add(new Entry(name, -1, (groupName + "/" + name).getBytes(StandardCharsets.UTF_8)));
+            }
+            groups.put(groupName, entries);
+        }
+        return groups;
+    }
+
+    @Test
+    void testReadWrite() throws IOException {
+        JAppAccessProfile profile = new JAppAccessProfile();
+        profile.add("foo", "a/b.class");
+        profile.add(null, "c.txt");
+        profile.add("foo", "a/b.class");
+        profile.add("bar", "c.txt");
+
+        Path file = Files.createTempFile("japp", ".profile");
+        try {
+            profile.writeTo(file);
+            JAppAccessProfile result = JAppAccessProfile.read(file);
+
+            assertEquals(3, result.size());
+            assertEquals(0, result.indexOf("foo", "a/b.class"));
+            assertEquals(1, result.indexOf(null, "c.txt"));
+            assertEquals(2, result.indexOf("bar", "c.txt"));
+            assertEquals(-1, result.indexOf("bar", "a/b.class"));
+            assertEquals(-1, result.indexOf(null, "a/b.class"));
+
+            Files.write(file, Arrays.asList("foo"));
+            assertThrows(IOException.class, () -> JAppAccessProfile.read(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testRecordAndReorder() throws IOException {
+        Map<String, List<Entry>> groups = createGroups();
+
+        TestFile original = new TestFile(JAppBootTestHelper.write(groups), "foo", "bar");
+        JAppAccessRecorder recorder = new JAppAccessRecorder(null);
+        original.reader.accessRecorder = recorder;
+
+        JAppResourceGroup foo = original.metadata.getGroups().get(0);
+        JAppResourceGroup bar = original.metadata.getGroups().get(1);
+        original.read(bar.get("r7"));
+        original.read(foo.get("r3"));
+        original.read(bar.get("r7"));
+        original.reader.openResource(bar.get("r1")).close();
+
+        JAppAccessProfile profile = recorder.toProfile(original.reader);
+        assertEquals(3, profile.size());
+        assertEquals(0, profile.indexOf("bar", "r7"));
+        assertEquals(1, profile.indexOf("foo", "r3"));
+        assertEquals(2, profile.indexOf("bar", "r1"));
+
+        TestFile reordered = new TestFile(JAppBootTestHelper.write(groups, 0, profile), "foo", "bar");
+        foo = reordered.metadata.getGroups().get(0);
+        bar = reordered.metadata.getGroups().get(1);
+
+        // The other resources keep their original order, followed by the profiled resources in access order
+        List<JAppResource> profiled = Arrays.asList(bar.get("r7"), foo.get("r3"), bar.get("r1"));
+        List<JAppResource> expected = new ArrayList<>();
+        for (JAppResourceGroup group : Arrays.asList(foo, bar)) {
+            for (JAppResource resource : group.getResources()) {
+                if (!profiled.contains(resource)) {
+                    expected.add(resource);
+                }
+            }
+        }
+        expected.addAll(profiled);
+
+        long offset = -1;
+        for (JAppResource resource : expected) {
+            assertTrue(resource.getOffset() > offset);
+            offset = resource.getOffset();
+        }
+
+        for (JAppResourceGroup group : Arrays.asList(foo, bar)) {
+            for (JAppResource resource : group.getResources()) {
+                assertEquals(group.getName() + "/" + resource.getName(), reordered.read(resource));
+            }
+        }
+    }
+
+    @Test
+    void testPrefetchRange() throws IOException {
+        Map<String, List<Entry>> groups = createGroups();
+
+        JAppAccessProfile profile = new JAppAccessProfile();
+        profile.add("bar", "r2");
+        profile.add("foo", "r5");
+        profile.add("foo", "missing");
+
+        Path file = Files.createTempFile("japp", ".japp");
+        try {
+            Files.write(file, JAppBootTestHelper.write(groups));
+            JAppLauncherMetadata metadata = JAppLauncherMetadata.readFile(file);
+            assertEquals(0, metadata.getPrefetchOffset());
+            assertEquals(0, metadata.getPrefetchSize());
+
+            byte[] bytes = JAppBootTestHelper.write(groups, 0, profile);
+            Files.write(file, bytes);
+            metadata = JAppLauncherMetadata.readFile(file);
+
+            TestFile testFile = new TestFile(bytes, "foo", "bar");
+            JAppResource first = testFile.metadata.getGroups().get(1).get("r2");
+            JAppResource last = testFile.metadata.getGroups().get(0).get("r5");
+            assertEquals(first.getOffset(), metadata.getPrefetchOffset());
+            assertEquals(last.getOffset() + last.getCompressedSize() - first.getOffset(), metadata.getPrefetchSize());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
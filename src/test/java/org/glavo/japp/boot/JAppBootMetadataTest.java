@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import com.github.luben.zstd.Zstd;
+import org.glavo.japp.boot.JAppBootTestHelper.Entry;
+import org.glavo.japp.boot.JAppBootTestHelper.TestFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JAppBootMetadataTest {
+
+    private static byte[] content(String name, int release) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            builder.append(name).append('@').append(release).append('\n');
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static TestFile write(List<String> names, List<String> multiReleaseNames) throws IOException {
+        List<Entry> test = new ArrayList<>();
+        for (String name : names) {
+            test.add(new Entry(name, -1, content(name, 0)));
+        }
+        for (String name : multiReleaseNames) {
+            test.add(new Entry(name, 11, content(name, 11)));
+        }
+
+        Map<String, List<Entry>> groups = new LinkedHashMap<>();
+        groups.put("test", test);
+        groups.put("other", Collections.singletonList(new Entry("other.txt", -1, content("other.txt", 0))));
+        return new TestFile(JAppBootTestHelper.write(groups));
+    }
+
+    @Test
+    void testLazyGroups() throws IOException {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            names.add("org/glavo/test/Resource" + i + ".txt");
+        }
+
+        TestFile file = write(names, Collections.singletonList("org/glavo/test/Resource3.txt"));
+
+        List<JAppResourceGroup> groups = file.metadata.getGroups();
+        assertEquals(3, groups.size());
+        for (JAppResourceGroup group : groups) {
+            assertFalse(group.isResolved());
+        }
+
+        JAppResourceGroup base = groups.get(0);
+        JAppResourceGroup versioned = groups.get(1);
+        JAppResourceGroup other = groups.get(2);
+        assertTrue(base.getBodyOffset() < versioned.getBodyOffset());
+        assertTrue(versioned.getBodyOffset() < other.getBodyOffset());
+
+        base.addOverlay(versioned);
+        assertEquals(new String(content("org/glavo/test/Resource0.txt", 0), StandardCharsets.UTF_8),
+                file.read(base.get("org/glavo/test/Resource0.txt")));
+        assertTrue(base.isResolved());
+        assertFalse(versioned.isResolved());
+        assertFalse(other.isResolved());
+
+        assertEquals(100, base.getResources().size());
+        assertEquals(new String(content("org/glavo/test/Resource3.txt", 11), StandardCharsets.UTF_8),
+                file.read(base.get("org/glavo/test/Resource3.txt")));
+        assertEquals(new String(content("org/glavo/test/Resource99.txt", 0), StandardCharsets.UTF_8),
+                file.read(base.get("org/glavo/test/Resource99.txt")));
+        assertNull(base.get("org/glavo/test/Resource100.txt"));
+
+        assertThrows(IllegalStateException.class, () -> base.addOverlay(other));
+        assertEquals(new String(content("other.txt", 0), StandardCharsets.UTF_8), file.read(other.get("other.txt")));
+    }
+
+    @Test
+    void testLookup() throws IOException {
+        // "Aa" and "BB" have the same hash code
+        List<String> names = Arrays.asList("Aa", "BB", "AaAa", "BBBB", "AaBB", "BBAa", "\u4f60\u597d.txt", "caf\u00e9/menu.txt", "a/b/c.class");
+        TestFile file = write(names, Collections.emptyList());
+        JAppResourceGroup group = file.metadata.getGroups().get(0);
+
+        for (String name : names) {
+            JAppResource resource = group.get(name);
+            assertNotNull(resource, name);
+            assertEquals(name, resource.getName());
+            assertSame(resource, group.get(name));
+            assertEquals(new String(content(name, 0), StandardCharsets.UTF_8), file.read(resource));
+        }
+
+        assertNull(group.get("Ab"));
+        assertNull(group.get("AaA"));
+        assertNull(group.get("\u4f60\u597d"));
+        assertNull(group.get("cafe/menu.txt"));
+        assertNull(group.get(""));
+
+        List<String> listed = new ArrayList<>();
+        for (JAppResource resource : group.getResources()) {
+            listed.add(resource.getName());
+        }
+        assertEquals(names, listed);
+    }
+
+    @Test
+    void testDictionaries() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            StringBuilder builder = new StringBuilder();
+            for (int j = 0; j < 20; j++) {
+                builder.append("org.glavo.japp.test.key").append((i * 31 + j * 17) % 97)
+                        .append("=The value of test property ").append(i * j).append('\n');
+            }
+            entries.add(new Entry("test" + i + ".properties", -1, builder.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+
+        byte[] file = JAppBootTestHelper.write(Collections.singletonMap("test", entries), writer -> writer.setTrainDictionaries(true));
+        TestFile testFile = new TestFile(file, "test");
+
+        JAppResourceGroup group = testFile.metadata.getGroups().get(0);
+        long compressedSize = 0;
+        long plainCompressedSize = 0;
+        for (Entry entry : entries) {
+            JAppResource resource = group.get(entry.name);
+            compressedSize += resource.getCompressedSize();
+            plainCompressedSize += Zstd.compress(entry.content, 8).length;
+            assertEquals(new String(entry.content, StandardCharsets.UTF_8), testFile.read(resource));
+        }
+
+        // The resources are compressed with the trained dictionary
+        assertTrue(compressedSize < plainCompressedSize);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.boot.decompressor.ZstdDecompressorPool;
+import org.glavo.japp.io.LittleEndianDataOutput;
+import org.glavo.japp.launcher.JAppLauncherMetadata;
+import org.glavo.japp.packer.JAppResourceInfo;
+import org.glavo.japp.packer.JAppResourcesWriter;
+import org.glavo.japp.packer.JAppWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+final class JAppBootTestHelper {
+
+    static final class Entry {
+        final String name;
+        final int release;
+        final byte[] content;
+
+        Entry(String name, int release, byte[] content) {
+            this.name = name;
+            this.release = release;
+            this.content = content;
+        }
+    }
+
+    static byte[] write(Map<String, List<Entry>> groups) throws IOException {
+        return write(groups, 0);
+    }
+
+    static byte[] write(Map<String, List<Entry>> groups, int seekableFrameSize) throws IOException {
+        return write(groups, seekableFrameSize, null);
+    }
+
+    static byte[] write(Map<String, List<Entry>> groups, int seekableFrameSize, JAppAccessProfile accessProfile) throws IOException {
+        return write(groups, writer -> {
+            writer.setSeekableFrameSize(seekableFrameSize);
+            writer.setAccessProfile(accessProfile);
+        });
+    }
+
+    static byte[] write(Map<String, List<Entry>> groups, Consumer<JAppWriter> options) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (LittleEndianDataOutput output = LittleEndianDataOutput.of(out);
+             JAppWriter writer = new JAppWriter(output)) {
+            options.accept(writer);
+            for (Map.Entry<String, List<Entry>> group : groups.entrySet()) {
+                try (JAppResourcesWriter resourcesWriter = writer.createResourcesWriter(group.getKey(), false)) {
+                    for (Entry entry : group.getValue()) {
+                        if (entry.release < 0) {
+                            resourcesWriter.writeResource(new JAppResourceInfo(entry.name), entry.content);
+                        } else {
+                            resourcesWriter.writeResource(entry.release, new JAppResourceInfo(entry.name), entry.content);
+                        }
+                    }
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    static final class TestFile {
+        final JAppBootMetadata metadata;
+        final JAppReader reader;
+
+        /**
+         * Opens the file. The first groups are put on the class path in order under the given names.
+         */
+        TestFile(byte[] file, String... classPathNames) throws IOException {
+            ByteBuffer bytes = ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN);
+
+            int end = file.length - JAppLauncherMetadata.FILE_END_SIZE;
+            long bootMetadataOffset = bytes.getLong(end + 24);
+            long launcherMetadataOffset = bytes.getLong(end + 32);
+
+            ByteBuffer metadataBuffer = ByteBuffer.allocateDirect((int) (launcherMetadataOffset - bootMetadataOffset)).order(ByteOrder.LITTLE_ENDIAN);
+            metadataBuffer.put(file, (int) bootMetadataOffset, metadataBuffer.capacity());
+            metadataBuffer.flip();
+
+            ZstdDecompressorPool decompressors = new ZstdDecompressorPool();
+            this.metadata = JAppBootMetadata.readFrom(metadataBuffer, decompressors);
+
+            Map<String, JAppResourceGroup> classPath = new LinkedHashMap<>();
+            for (int i = 0; i < classPathNames.length; i++) {
+                JAppResourceGroup group = metadata.getGroups().get(i);
+                group.initName(classPathNames[i]);
+                classPath.put(classPathNames[i], group);
+            }
+
+            ByteBuffer data = ByteBuffer.allocateDirect((int) bootMetadataOffset);
+            data.put(file, 0, data.capacity());
+            data.flip();
+            this.reader = new JAppReader(new JAppMappedStorage(data.asReadOnlyBuffer()),
+                    metadata.getPool(), decompressors, null, Collections.emptyMap(), classPath);
+        }
+
+        String read(JAppResource resource) throws IOException {
+            ByteBuffer buffer = reader.readResource(resource);
+            byte[] array = new byte[buffer.remaining()];
+            buffer.get(array);
+            return new String(array, StandardCharsets.UTF_8);
+        }
+    }
+
+    private JAppBootTestHelper() {
+    }
+}
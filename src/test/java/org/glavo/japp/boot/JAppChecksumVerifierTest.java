@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.boot.JAppBootTestHelper.Entry;
+import org.glavo.japp.boot.JAppBootTestHelper.TestFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JAppChecksumVerifierTest {
+
+    private static byte[] randomBytes(int seed) {
+        byte[] bytes = new byte[4096];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] createFile() throws IOException {
+        List<Entry> entries = Arrays.asList(
+                new Entry("a.bin", -1, randomBytes(0)),
+                new Entry("b.bin", -1, randomBytes(1)),
+                new Entry("c.bin", -1, randomBytes(2))
+        );
+        return JAppBootTestHelper.write(Collections.singletonMap("test", entries));
+    }
+
+    private static byte[] corrupt(byte[] file, String name) throws IOException {
+        TestFile testFile = new TestFile(file, "test");
+        JAppResource resource = testFile.metadata.getGroups().get(0).get(name);
+
+        byte[] result = file.clone();
+        result[(int) resource.getOffset() + 100] ^= 1;
+        return result;
+    }
+
+    @Test
+    void testVerifier() throws IOException {
+        byte[] file = createFile();
+
+        TestFile valid = new TestFile(file, "test");
+        AtomicBoolean success = new AtomicBoolean();
+        new JAppChecksumVerifier(valid.reader, () -> success.set(true)).run();
+        assertTrue(success.get());
+        for (JAppResource resource : valid.metadata.getGroups().get(0).getResources()) {
+            assertFalse(resource.needCheck);
+        }
+
+        TestFile corrupted = new TestFile(corrupt(file, "b.bin"), "test");
+        success.set(false);
+        new JAppChecksumVerifier(corrupted.reader, () -> success.set(true)).run();
+        assertFalse(success.get());
+
+        // Once corruption has been detected, no more resources can be read
+        JAppResourceGroup group = corrupted.metadata.getGroups().get(0);
+        assertThrows(IOException.class, () -> corrupted.reader.readResource(group.get("a.bin")));
+        assertThrows(IOException.class, () -> corrupted.reader.readResource(group.get("c.bin")));
+    }
+
+    @Test
+    void testVerifyOnRead() throws IOException {
+        TestFile corrupted = new TestFile(corrupt(createFile(), "b.bin"), "test");
+        JAppResourceGroup group = corrupted.metadata.getGroups().get(0);
+
+        corrupted.reader.readResource(group.get("a.bin"));
+        assertThrows(IOException.class, () -> corrupted.reader.readResource(group.get("b.bin")));
+        corrupted.reader.readResource(group.get("c.bin"));
+    }
+
+    @Test
+    void testVerifiedFiles() throws IOException {
+        Path dir = Files.createTempDirectory("japp");
+        Path file = dir.resolve("test.japp");
+        try {
+            Files.write(file, createFile());
+
+            JAppVerifiedFiles verifiedFiles = new JAppVerifiedFiles(dir.resolve("verified"));
+            String key = JAppVerifiedFiles.fileKey(file, 0x1234L);
+            assertFalse(verifiedFiles.isVerified(key));
+
+            verifiedFiles.markVerified(key);
+            assertTrue(verifiedFiles.isVerified(key));
+            assertEquals(key, JAppVerifiedFiles.fileKey(file, 0x1234L));
+
+            assertFalse(verifiedFiles.isVerified(JAppVerifiedFiles.fileKey(file, 0x1235L)));
+
+            Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - 10000));
+            assertFalse(verifiedFiles.isVerified(JAppVerifiedFiles.fileKey(file, 0x1234L)));
+        } finally {
+            try (Stream<Path> stream = Files.walk(dir)) {
+                stream.sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JAppMappedStorageTest {
+
+    private static final int SEGMENT_SHIFT = 12;
+    private static final int BASE_OFFSET = 100;
+
+    @Test
+    void testSlice() throws IOException {
+        byte[] data = new byte[5 * (1 << SEGMENT_SHIFT) + 123];
+        new Random(0).nextBytes(data);
+
+        byte[] fileContent = new byte[BASE_OFFSET + data.length];
+        System.arraycopy(data, 0, fileContent, BASE_OFFSET, data.length);
+
+        Path file = Files.createTempFile("japp", ".bin");
+        JAppMappedStorage storage;
+        try {
+            Files.write(file, fileContent);
+            try (FileChannel channel = FileChannel.open(file)) {
+                storage = JAppMappedStorage.map(channel, BASE_OFFSET, data.length, SEGMENT_SHIFT);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        assertEquals(6, storage.getSegmentCount());
+        assertEquals(data.length, storage.size());
+
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            int length = random.nextInt(3 << SEGMENT_SHIFT);
+            int offset = random.nextInt(data.length - length + 1);
+
+            ByteBuffer slice = storage.read(offset, length);
+            assertEquals(length, slice.remaining());
+            assertEquals(ByteBuffer.wrap(data, offset, length), slice);
+        }
+
+        // A range no longer than the stride that starts near the end of a segment
+        ByteBuffer slice = storage.read((1 << SEGMENT_SHIFT) * 2 - 10, 1 << SEGMENT_SHIFT);
+        assertEquals(ByteBuffer.wrap(data, (1 << SEGMENT_SHIFT) * 2 - 10, 1 << SEGMENT_SHIFT), slice);
+
+        assertThrows(IOException.class, () -> storage.read(data.length - 10, 11));
+        assertThrows(IOException.class, () -> storage.read(-1, 1));
+    }
+}
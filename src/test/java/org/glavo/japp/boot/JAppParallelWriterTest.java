@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.boot.JAppBootTestHelper.Entry;
+import org.glavo.japp.boot.JAppBootTestHelper.TestFile;
+import org.glavo.japp.packer.JAppWriter;
+import org.glavo.japp.packer.compressor.classfile.AttributeStripper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JAppParallelWriterTest {
+
+    private static final int THREADS = 3;
+
+    private static Map<String, List<Entry>> groups() throws Exception {
+        Path root = Paths.get(JAppWriter.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        assertTrue(Files.isDirectory(root), root + " is not a directory");
+
+        List<Path> classes;
+        try (Stream<Path> stream = Files.walk(root.resolve("org/glavo/japp/packer"))) {
+            classes = stream.filter(file -> file.toString().endsWith(".class")).sorted().limit(60).collect(Collectors.toList());
+        }
+
+        Map<String, List<Entry>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < 2; i++) {
+            List<Entry> entries = new ArrayList<>();
+            for (int j = i; j < classes.size(); j += 2) {
+                Path file = classes.get(j);
+                entries.add(new Entry(root.relativize(file).toString().replace('\\', '/'), -1, Files.readAllBytes(file)));
+            }
+
+            StringBuilder builder = new StringBuilder();
+            for (int j = 0; j < 100; j++) {
+                builder.append("key").append(j).append('=').append("value").append(j * i).append('\n');
+                entries.add(new Entry("resources/resource" + j + ".properties", -1,
+                        builder.toString().getBytes(StandardCharsets.UTF_8)));
+            }
+            entries.add(new Entry("Malformed.class", -1, "Not a class file, but long enough to be compressed".getBytes(StandardCharsets.UTF_8)));
+            entries.add(new Entry("Tiny.class", -1, new byte[]{(byte) 0xca, (byte) 0xfe}));
+            entries.add(new Entry("resources/resource0.properties", 11, "release=11".getBytes(StandardCharsets.UTF_8)));
+            groups.put("group" + i, entries);
+        }
+        return groups;
+    }
+
+    private static void assertSameOutput(Map<String, List<Entry>> groups, Consumer<JAppWriter> options) throws IOException {
+        byte[] serial = JAppBootTestHelper.write(groups, options);
+        byte[] parallel = JAppBootTestHelper.write(groups, writer -> {
+            options.accept(writer);
+            writer.setThreads(THREADS);
+        });
+        assertArrayEquals(serial, parallel);
+
+        TestFile testFile = new TestFile(parallel, groups.keySet().toArray(new String[0]));
+        for (Entry entry : groups.get("group0")) {
+            if (entry.release < 0 && !entry.name.endsWith(".class")) {
+                JAppResource resource = testFile.metadata.getGroups().get(0).get(entry.name);
+                assertEquals(new String(entry.content, StandardCharsets.UTF_8), testFile.read(resource));
+            }
+        }
+    }
+
+    @Test
+    void testDefault() throws Exception {
+        assertSameOutput(groups(), writer -> {
+        });
+    }
+
+    @Test
+    void testOptions() throws Exception {
+        Map<String, List<Entry>> groups = groups();
+        assertSameOutput(groups, writer -> writer.setSolidBlockSize(JAppWriter.MIN_SOLID_BLOCK_SIZE));
+        assertSameOutput(groups, writer -> {
+            writer.setTrainDictionaries(true);
+            writer.setRenumberPool(true);
+            writer.setConstantPoolColumns(true);
+        });
+        assertSameOutput(groups, writer -> {
+            writer.setAttributeStripper(new AttributeStripper(AttributeStripper.DEBUG_ATTRIBUTES));
+            writer.setSeekableFrameSize(4096);
+            writer.setConstantPoolColumns(true);
+        });
+    }
+}
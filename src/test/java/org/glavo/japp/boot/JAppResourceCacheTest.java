@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.CompressionMethod;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JAppResourceCacheTest {
+
+    private static JAppResource resource(long offset, int size) {
+        return new JAppResource("resource-" + offset, offset, size, CompressionMethod.ZSTD, size);
+    }
+
+    private static ByteBuffer data(int size, int seed) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i * 31 + seed);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static ByteBuffer read(JAppResourceCache cache, JAppResource resource, int seed) {
+        ByteBuffer cached = cache.get(resource);
+        if (cached != null) {
+            return cached;
+        }
+        return cache.put(resource, data((int) resource.getSize(), seed));
+    }
+
+    @Test
+    void testAdmissionAndHits() {
+        JAppResourceCache cache = new JAppResourceCache(4096, false);
+        JAppResource resource = resource(0, 100);
+
+        // Resources are only admitted on the second read
+        read(cache, resource, 0);
+        assertEquals(0, cache.getEntryCount());
+        ByteBuffer second = read(cache, resource, 0);
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(100, cache.getCurrentBytes());
+        assertTrue(second.isReadOnly());
+
+        ByteBuffer third = read(cache, resource, 0);
+        assertEquals(data(100, 0), third);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        // Each hit is an independent view
+        third.position(50);
+        assertEquals(100, cache.get(resource).remaining());
+    }
+
+    @Test
+    void testEviction() {
+        JAppResourceCache cache = new JAppResourceCache(1000, true);
+
+        JAppResource r0 = resource(0, 200);
+        JAppResource r1 = resource(1000, 200);
+        JAppResource r2 = resource(2000, 200);
+        JAppResource r3 = resource(3000, 200);
+        JAppResource r4 = resource(4000, 200);
+        JAppResource r5 = resource(5000, 200);
+        JAppResource[] all = {r0, r1, r2, r3, r4};
+
+        for (JAppResource r : all) {
+            read(cache, r, 0);
+            read(cache, r, 0);
+        }
+        assertEquals(5, cache.getEntryCount());
+        assertEquals(1000, cache.getCurrentBytes());
+
+        // Touch r0 so r1 becomes the eldest
+        assertNotNull(cache.get(r0));
+        assertTrue(cache.get(r0).isDirect());
+
+        read(cache, r5, 5);
+        read(cache, r5, 5);
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1000, cache.getCurrentBytes());
+        assertNull(cache.get(r1));
+        assertNotNull(cache.get(r0));
+        assertEquals(data(200, 5), cache.get(r5));
+    }
+
+    @Test
+    void testEvictionOfViews() {
+        JAppResourceCache cache = new JAppResourceCache(1000, false);
+
+        // Heap buffers are cached as they are, so their capacity can be larger than the resource
+        for (int i = 0; i < 6; i++) {
+            JAppResource resource = resource(i * 1000L, 200);
+            for (int j = 0; j < 2; j++) {
+                ByteBuffer data = ByteBuffer.wrap(new byte[1000], 100, 200);
+                assertEquals(1000, data.capacity());
+                cache.put(resource, data);
+            }
+        }
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(5, cache.getEntryCount());
+        assertEquals(1000, cache.getCurrentBytes());
+    }
+
+    @Test
+    void testLargeEntry() {
+        JAppResourceCache cache = new JAppResourceCache(1000, false);
+        JAppResource resource = resource(0, 500);
+
+        for (int i = 0; i < 3; i++) {
+            ByteBuffer buffer = read(cache, resource, 0);
+            assertFalse(buffer.isReadOnly());
+        }
+        assertEquals(0, cache.getEntryCount());
+    }
+}
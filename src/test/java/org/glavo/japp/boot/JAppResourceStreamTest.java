@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.CompressionMethod;
+import org.glavo.japp.boot.JAppBootTestHelper.Entry;
+import org.glavo.japp.boot.JAppBootTestHelper.TestFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JAppResourceStreamTest {
+
+    private static final int SIZE = (int) JAppReader.STREAMING_THRESHOLD + 1024 * 1024 + 7;
+
+    private static byte[] generate() {
+        byte[] data = new byte[SIZE];
+        Random random = new Random(0);
+        for (int offset = 0; offset < data.length; offset += 8192) {
+            if (random.nextBoolean()) {
+                byte[] chunk = new byte[Math.min(4096, data.length - offset)];
+                random.nextBytes(chunk);
+                System.arraycopy(chunk, 0, data, offset, chunk.length);
+            }
+        }
+        return data;
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[10000];
+        int n;
+        while ((n = input.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void testStream() throws IOException {
+        byte[] data = generate();
+        byte[] file = JAppBootTestHelper.write(Collections.singletonMap("test",
+                Collections.singletonList(new Entry("large.bin", -1, data))));
+
+        TestFile testFile = new TestFile(file, "test");
+        JAppResource resource = testFile.metadata.getGroups().get(0).get("large.bin");
+        assertEquals(CompressionMethod.ZSTD, resource.getMethod());
+
+        try (InputStream input = testFile.reader.openResource(resource)) {
+            assertArrayEquals(data, readAll(input));
+        }
+        assertFalse(resource.needCheck);
+
+        try (SeekableByteChannel channel = testFile.reader.openChannel(resource)) {
+            assertEquals(SIZE, channel.size());
+
+            long[] positions = {SIZE - 100, 10, 3 * 1024 * 1024, 0, SIZE};
+            for (long position : positions) {
+                ByteBuffer buffer = ByteBuffer.allocate(200);
+                channel.position(position);
+                int n = channel.read(buffer);
+
+                int expectedLength = (int) Math.min(200, SIZE - position);
+                assertEquals(expectedLength == 0 ? -1 : expectedLength, n);
+                assertEquals(position + Math.max(n, 0), channel.position());
+                assertArrayEquals(Arrays.copyOfRange(data, (int) position, (int) position + expectedLength),
+                        Arrays.copyOf(buffer.array(), Math.max(n, 0)));
+            }
+        }
+    }
+
+    @Test
+    void testCorrupted() throws IOException {
+        byte[] data = generate();
+        byte[] file = JAppBootTestHelper.write(Collections.singletonMap("test",
+                Collections.singletonList(new Entry("large.bin", -1, data))));
+
+        JAppResource original = new TestFile(file, "test").metadata.getGroups().get(0).get("large.bin");
+
+        // Flip a bit inside the last literal bytes of an uncompressed part
+        int offset = -1;
+        for (int i = (int) (original.getOffset() + original.getCompressedSize()) - 16; i > original.getOffset(); i--) {
+            if (file[i] != 0) {
+                offset = i;
+                break;
+            }
+        }
+        file[offset] ^= 1;
+
+        TestFile testFile = new TestFile(file, "test");
+        JAppResource resource = testFile.metadata.getGroups().get(0).get("large.bin");
+        assertThrows(IOException.class, () -> {
+            try (InputStream input = testFile.reader.openResource(resource)) {
+                readAll(input);
+            }
+        });
+        assertTrue(resource.needCheck);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.CompressionMethod;
+import org.glavo.japp.boot.JAppBootTestHelper.Entry;
+import org.glavo.japp.boot.JAppBootTestHelper.TestFile;
+import org.glavo.japp.boot.decompressor.zstd.ZstdSeekTable;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JAppSeekableResourceChannelTest {
+
+    private static final int FRAME_SIZE = 64 * 1024;
+    private static final int SIZE = 16 * FRAME_SIZE + 123;
+
+    private static byte[] generate() {
+        byte[] data = new byte[SIZE];
+        Random random = new Random(0);
+        for (int offset = 0; offset < data.length; offset += 1024) {
+            if (random.nextBoolean()) {
+                byte[] chunk = new byte[Math.min(512, data.length - offset)];
+                random.nextBytes(chunk);
+                System.arraycopy(chunk, 0, data, offset, chunk.length);
+            }
+        }
+        return data;
+    }
+
+    private static byte[] createFile(byte[] data) throws IOException {
+        return JAppBootTestHelper.write(Collections.singletonMap("test",
+                Collections.singletonList(new Entry("data.bin", -1, data))), FRAME_SIZE);
+    }
+
+    private static byte[] read(SeekableByteChannel channel, long position, int length, boolean direct) throws IOException {
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+        channel.position(position);
+        int n = channel.read(buffer);
+        if (n < 0) {
+            return null;
+        }
+        assertEquals(position + n, channel.position());
+
+        byte[] result = new byte[n];
+        buffer.flip();
+        buffer.get(result);
+        return result;
+    }
+
+    @Test
+    void testRead() throws IOException {
+        byte[] data = generate();
+        byte[] file = createFile(data);
+
+        TestFile testFile = new TestFile(file, "test");
+        JAppResource resource = testFile.metadata.getGroups().get(0).get("data.bin");
+        assertEquals(CompressionMethod.ZSTD, resource.getMethod());
+
+        ByteBuffer compressed = ByteBuffer.wrap(file, (int) resource.getOffset(), (int) resource.getCompressedSize());
+        ZstdSeekTable seekTable = ZstdSeekTable.readFrom(compressed);
+        assertNotNull(seekTable);
+        assertEquals(17, seekTable.getFrameCount());
+        assertEquals(SIZE, seekTable.getDecompressedSize());
+        assertEquals(0, seekTable.findFrame(0));
+        assertEquals(1, seekTable.findFrame(FRAME_SIZE));
+        assertEquals(16, seekTable.findFrame(SIZE - 1));
+
+        // The seek table is a skippable frame, so the data can still be decompressed as a whole
+        ByteBuffer full = testFile.reader.readResource(resource);
+        byte[] fullBytes = new byte[full.remaining()];
+        full.get(fullBytes);
+        assertArrayEquals(data, fullBytes);
+
+        try (SeekableByteChannel channel = testFile.reader.openChannel(resource)) {
+            assertInstanceOf(JAppSeekableResourceChannel.class, channel);
+            assertEquals(SIZE, channel.size());
+
+            Random random = new Random(0);
+            for (int i = 0; i < 100; i++) {
+                long position = random.nextInt(SIZE);
+                int length = 1 + random.nextInt(random.nextBoolean() ? 1000 : 5 * FRAME_SIZE);
+                byte[] expected = Arrays.copyOfRange(data, (int) position, (int) Math.min(SIZE, position + length));
+                assertArrayEquals(expected, read(channel, position, length, random.nextBoolean()));
+            }
+
+            // Bulk read of whole frames
+            assertArrayEquals(data, read(channel, 0, SIZE, false));
+            assertArrayEquals(Arrays.copyOfRange(data, FRAME_SIZE, SIZE), read(channel, FRAME_SIZE, SIZE, true));
+            assertNull(read(channel, SIZE, 10, false));
+        }
+    }
+
+    @Test
+    void testCorrupted() throws IOException {
+        byte[] data = generate();
+        byte[] file = createFile(data);
+
+        JAppResource original = new TestFile(file, "test").metadata.getGroups().get(0).get("data.bin");
+        ZstdSeekTable seekTable = ZstdSeekTable.readFrom(ByteBuffer.wrap(file, (int) original.getOffset(), (int) original.getCompressedSize()));
+        assertNotNull(seekTable);
+
+        // Corrupt the last byte of frame 5
+        int offset = (int) (original.getOffset() + seekTable.getCompressedOffset(6)) - 1;
+        file[offset] ^= 0x10;
+
+        TestFile testFile = new TestFile(file, "test");
+        JAppResource resource = testFile.metadata.getGroups().get(0).get("data.bin");
+        try (SeekableByteChannel channel = testFile.reader.openChannel(resource)) {
+            assertArrayEquals(Arrays.copyOfRange(data, 0, 100), read(channel, 0, 100, false));
+            assertArrayEquals(Arrays.copyOfRange(data, 7 * FRAME_SIZE, 9 * FRAME_SIZE), read(channel, 7 * FRAME_SIZE, 2 * FRAME_SIZE, false));
+            assertThrows(IOException.class, () -> read(channel, 5 * FRAME_SIZE + 10, 10, false));
+            assertThrows(IOException.class, () -> read(channel, 0, SIZE, true));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.CompressionMethod;
+import org.glavo.japp.boot.JAppBootTestHelper.Entry;
+import org.glavo.japp.boot.JAppBootTestHelper.TestFile;
+import org.glavo.japp.packer.JAppWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JAppSolidResourceTest {
+
+    private static byte[] content(int index, int size) {
+        StringBuilder builder = new StringBuilder();
+        Random random = new Random(index);
+        while (builder.length() < size) {
+            builder.append("resource ").append(index).append(" line ").append(random.nextInt(100)).append('\n');
+        }
+        return builder.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            entries.add(new Entry("dir/resource" + i + ".txt", -1, content(i, 100 + i * 10)));
+        }
+        entries.add(new Entry("large.txt", -1, content(1000, 40 * 1024)));
+        entries.add(new Entry("tiny.txt", -1, content(1001, 8)));
+        entries.add(new Entry("image.png", -1, content(1002, 1024)));
+        return entries;
+    }
+
+    @Test
+    void testSolidBlocks() throws IOException {
+        List<Entry> entries = entries();
+        byte[] file = JAppBootTestHelper.write(Collections.singletonMap("test", entries),
+                writer -> writer.setSolidBlockSize(JAppWriter.MIN_SOLID_BLOCK_SIZE));
+        byte[] plainFile = JAppBootTestHelper.write(Collections.singletonMap("test", entries));
+        assertTrue(file.length < plainFile.length);
+
+        TestFile testFile = new TestFile(file, "test");
+        JAppResourceGroup group = testFile.metadata.getGroups().get(0);
+
+        Set<Long> blocks = new HashSet<>();
+        for (Entry entry : entries) {
+            JAppResource resource = group.get(entry.name);
+            if (entry.name.startsWith("dir/")) {
+                assertEquals(CompressionMethod.SOLID, resource.getMethod());
+                assertTrue(resource.getBlockOffset() + resource.getSize() <= resource.getBlockSize());
+                blocks.add(resource.getOffset());
+            } else {
+                assertNotEquals(CompressionMethod.SOLID, resource.getMethod());
+                assertEquals(-1L, resource.getBlockSize());
+            }
+
+            assertEquals(new String(entry.content, StandardCharsets.UTF_8), testFile.read(resource));
+        }
+
+        assertTrue(blocks.size() > 1);
+
+        // Each block is decompressed only once
+        JAppBlockCache blockCache = testFile.reader.getBlockCache();
+        assertEquals(blocks.size(), blockCache.getMissCount());
+
+        new JAppChecksumVerifier(testFile.reader, null).run();
+        for (JAppResource resource : group.getResources()) {
+            assertFalse(resource.needCheck);
+        }
+    }
+
+    @Test
+    void testBlockCache() {
+        JAppBlockCache cache = new JAppBlockCache(100);
+        cache.put(0L, new byte[40]);
+        cache.put(1L, new byte[40]);
+        assertNotNull(cache.get(0L));
+
+        cache.put(2L, new byte[40]);
+        assertNotNull(cache.get(0L));
+        assertNull(cache.get(1L));
+        assertNotNull(cache.get(2L));
+        assertEquals(80, cache.getCurrentBytes());
+
+        cache.put(3L, new byte[101]);
+        assertNull(cache.get(3L));
+    }
+}
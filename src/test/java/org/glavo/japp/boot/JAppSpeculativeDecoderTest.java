@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.glavo.japp.boot.JAppBootTestHelper.Entry;
+import org.glavo.japp.boot.JAppBootTestHelper.TestFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JAppSpeculativeDecoderTest {
+
+    private static final int COUNT = 20;
+    private static final int HOT_COUNT = 10;
+
+    private static byte[] content(int i) {
+        byte[] bytes = new byte[1000];
+        Random random = new Random(i);
+        for (int j = 0; j < bytes.length; j++) {
+            bytes[j] = (byte) ('a' + random.nextInt(4));
+        }
+        return bytes;
+    }
+
+    private static List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            entries.add(new Entry("r" + i, -1, content(i)));
+        }
+        return entries;
+    }
+
+    private static JAppAccessProfile profile() {
+        JAppAccessProfile profile = new JAppAccessProfile();
+        for (int i = HOT_COUNT - 1; i >= 0; i--) {
+            profile.add("test", "r" + i);
+        }
+        return profile;
+    }
+
+    private static byte[] createFile() throws IOException {
+        return JAppBootTestHelper.write(Collections.singletonMap("test", entries()), 0, profile());
+    }
+
+    private static JAppSpeculativeDecoder createDecoder(TestFile file) {
+        JAppSpeculativeDecoder decoder = new JAppSpeculativeDecoder(file.reader, file.metadata.getProfile());
+        decoder.collectTasks();
+        file.reader.speculativeDecoder = decoder;
+        return decoder;
+    }
+
+    private static void checkAll(TestFile file) throws IOException {
+        JAppResourceGroup group = file.metadata.getGroups().get(0);
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(new String(content(i)), file.read(group.get("r" + i)));
+        }
+    }
+
+    @Test
+    void testDecodeAhead() throws IOException {
+        TestFile file = new TestFile(createFile(), "test");
+        JAppSpeculativeDecoder decoder = createDecoder(file);
+        assertEquals(HOT_COUNT, decoder.pendingCount());
+
+        decoder.runTasks();
+        checkAll(file);
+        assertEquals(0, decoder.pendingCount());
+
+        // Resources taken from the decoder are decoded normally afterwards
+        checkAll(file);
+    }
+
+    @Test
+    void testDecodeOnDemand() throws IOException {
+        TestFile file = new TestFile(createFile(), "test");
+        JAppSpeculativeDecoder decoder = createDecoder(file);
+
+        checkAll(file);
+        assertEquals(0, decoder.pendingCount());
+    }
+
+    @Test
+    void testOnlyProfiledGroupsDecoded() throws IOException {
+        Map<String, List<Entry>> groups = new LinkedHashMap<>();
+        groups.put("cold", entries());
+        groups.put("test", entries());
+        TestFile file = new TestFile(JAppBootTestHelper.write(groups, 0, profile()), "cold", "test");
+
+        JAppSpeculativeDecoder decoder = createDecoder(file);
+        assertEquals(HOT_COUNT, decoder.pendingCount());
+        assertFalse(file.metadata.getGroups().get(0).isResolved());
+        assertTrue(file.metadata.getGroups().get(1).isResolved());
+
+        decoder.runTasks();
+        JAppResourceGroup group = file.metadata.getGroups().get(1);
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(new String(content(i)), file.read(group.get("r" + i)));
+        }
+        assertEquals(0, decoder.pendingCount());
+    }
+
+    @Test
+    void testCorrupted() throws IOException {
+        byte[] bytes = createFile();
+        JAppResource resource = new TestFile(bytes, "test").metadata.getGroups().get(0).get("r3");
+        bytes[(int) (resource.getOffset() + resource.getCompressedSize() / 2)] ^= 1;
+
+        TestFile plain = new TestFile(bytes, "test");
+        Throwable expected = assertThrows(Throwable.class,
+                () -> plain.reader.readResource(plain.metadata.getGroups().get(0).get("r3")));
+
+        // Failures are reported to the reader of the resource just like without speculation
+        TestFile file = new TestFile(bytes, "test");
+        JAppSpeculativeDecoder decoder = createDecoder(file);
+        decoder.runTasks();
+
+        JAppResourceGroup group = file.metadata.getGroups().get(0);
+        assertEquals(new String(content(2)), file.read(group.get("r2")));
+        Throwable actual = assertThrows(Throwable.class, () -> file.reader.readResource(group.get("r3")));
+        assertEquals(expected.getClass(), actual.getClass());
+    }
+}
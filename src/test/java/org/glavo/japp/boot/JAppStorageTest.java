@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JAppStorageTest {
+
+    private static final int BASE_OFFSET = 37;
+
+    private static Stream<JAppStorage.Kind> kinds() {
+        return Stream.of(JAppStorage.Kind.values());
+    }
+
+    @ParameterizedTest
+    @MethodSource("kinds")
+    void testRead(JAppStorage.Kind kind) throws IOException {
+        byte[] data = new byte[256 * 1024];
+        new Random(0).nextBytes(data);
+
+        byte[] fileContent = new byte[BASE_OFFSET + data.length + 11];
+        System.arraycopy(data, 0, fileContent, BASE_OFFSET, data.length);
+
+        Path file = Files.createTempFile("japp", ".bin");
+        try {
+            Files.write(file, fileContent);
+
+            try (JAppStorage storage = JAppStorage.open(kind, FileChannel.open(file), BASE_OFFSET, data.length)) {
+                assertEquals(data.length, storage.size());
+
+                Random random = new Random(1);
+                for (int i = 0; i < 500; i++) {
+                    int length = random.nextInt(16 * 1024);
+                    int offset = random.nextInt(data.length - length + 1);
+
+                    ByteBuffer buffer = storage.read(offset, length);
+                    assertEquals(ByteBuffer.wrap(data, offset, length), buffer);
+
+                    ByteBuffer temporary = storage.readTemporary(offset, length);
+                    assertEquals(ByteBuffer.wrap(data, offset, length), temporary);
+                    storage.release(temporary);
+                }
+
+                assertThrows(IOException.class, () -> storage.read(data.length - 1, 2));
+                assertThrows(IOException.class, () -> storage.readTemporary(-1, 2));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot.decompressor;
+
+import com.github.luben.zstd.Zstd;
+import org.glavo.japp.boot.decompressor.zstd.ZstdFrameDecompressor;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZstdDecompressorPoolTest {
+
+    @Test
+    void testReuse() {
+        ZstdDecompressorPool pool = new ZstdDecompressorPool(2);
+
+        ZstdFrameDecompressor d1 = pool.acquire();
+        ZstdFrameDecompressor d2 = pool.acquire();
+        ZstdFrameDecompressor d3 = pool.acquire();
+        assertNotSame(d1, d2);
+        assertNotSame(d2, d3);
+
+        pool.release(d1);
+        pool.release(d2);
+        pool.release(d3); // dropped
+
+        ZstdFrameDecompressor r1 = pool.acquire();
+        ZstdFrameDecompressor r2 = pool.acquire();
+        assertTrue((r1 == d1 && r2 == d2) || (r1 == d2 && r2 == d1));
+        assertNotSame(d3, pool.acquire());
+    }
+
+    @Test
+    void testConcurrentDecompress() throws Exception {
+        final int dataCount = 64;
+
+        List<byte[]> data = new ArrayList<>();
+        List<byte[]> compressed = new ArrayList<>();
+
+        Random random = new Random(0);
+        for (int i = 0; i < dataCount; i++) {
+            byte[] bytes = new byte[1024 + random.nextInt(64 * 1024)];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = (byte) ('a' + random.nextInt(8));
+            }
+            data.add(bytes);
+            compressed.add(Zstd.compress(bytes));
+        }
+
+        ZstdDecompressorPool pool = new ZstdDecompressorPool(4);
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int seed = t;
+                futures.add(executor.submit(() -> {
+                    Random r = new Random(seed);
+                    for (int n = 0; n < 200; n++) {
+                        int index = r.nextInt(dataCount);
+                        byte[] expected = data.get(index);
+                        ByteBuffer output = ByteBuffer.allocate(expected.length);
+                        pool.decompress(ByteBuffer.wrap(compressed.get(index)), output);
+                        assertFalse(output.hasRemaining());
+                        assertArrayEquals(expected, output.array());
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
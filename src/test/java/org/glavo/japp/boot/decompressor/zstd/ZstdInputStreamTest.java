@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.boot.decompressor.zstd;
+
+import com.github.luben.zstd.Zstd;
+import org.glavo.japp.util.XxHash64;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZstdInputStreamTest {
+
+    /**
+     * Generates data with repetitions both inside and outside the zstd window.
+     */
+    private static byte[] generate(int length, long seed) {
+        Random random = new Random(seed);
+        byte[][] chunks = new byte[64][];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new byte[64 * 1024];
+            random.nextBytes(chunks[i]);
+            Arrays.fill(chunks[i], 0, random.nextInt(chunks[i].length), (byte) i);
+        }
+
+        byte[] result = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            byte[] chunk = chunks[random.nextInt(chunks.length)];
+            int n = Math.min(length - offset, chunk.length);
+            System.arraycopy(chunk, 0, result, offset, n);
+            offset += n;
+        }
+        return result;
+    }
+
+    private static byte[] compress(byte[] data, boolean checksum) {
+        byte[] tmp = new byte[data.length + data.length / 2 + 1024];
+        long len = Zstd.compress(tmp, data, Zstd.defaultCompressionLevel(), checksum);
+        return Arrays.copyOf(tmp, Math.toIntExact(len));
+    }
+
+    private static byte[] readAll(InputStream input, int bufferSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[bufferSize];
+        int n;
+        while ((n = input.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static ByteBuffer direct(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+
+    @Test
+    void testLargeFrame() throws IOException {
+        byte[] data = generate(12 * 1024 * 1024, 0);
+        for (boolean checksum : new boolean[]{false, true}) {
+            byte[] compressed = compress(data, checksum);
+
+            try (ZstdInputStream input = new ZstdInputStream(ByteBuffer.wrap(compressed), true)) {
+                assertArrayEquals(data, readAll(input, 100_000));
+                assertEquals(-1, input.read());
+                assertEquals(XxHash64.hash(data), input.getContentChecksum());
+            }
+
+            try (ZstdInputStream input = new ZstdInputStream(direct(compressed), false)) {
+                assertArrayEquals(data, readAll(input, 8192));
+            }
+        }
+    }
+
+    @Test
+    void testMultipleFrames() throws IOException {
+        byte[] data1 = generate(3 * 1024 * 1024 + 17, 1);
+        byte[] data2 = new byte[0];
+        byte[] data3 = generate(5000, 3);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (byte[] data : new byte[][]{data1, data2, data3}) {
+            compressed.write(compress(data, false));
+            expected.write(data);
+
+            // skippable frame
+            compressed.write(new byte[]{0x5A, 0x2A, 0x4D, 0x18, 3, 0, 0, 0, 1, 2, 3});
+        }
+
+        try (ZstdInputStream input = new ZstdInputStream(ByteBuffer.wrap(compressed.toByteArray()), true)) {
+            assertArrayEquals(expected.toByteArray(), readAll(input, 4096));
+            assertEquals(XxHash64.hash(expected.toByteArray()), input.getContentChecksum());
+        }
+    }
+
+    /**
+     * Serves the input in the requested chunks and checks that every chunk is released.
+     */
+    private static final class ChunkedSource implements ZstdInputStream.Source {
+        private final byte[] bytes;
+        private int maxLength;
+        private int acquired;
+
+        ChunkedSource(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public ByteBuffer read(long offset, int length) {
+            assertTrue(offset >= 0 && offset + length <= bytes.length);
+            maxLength = Math.max(maxLength, length);
+            acquired++;
+            return direct(Arrays.copyOfRange(bytes, (int) offset, (int) offset + length));
+        }
+
+        @Override
+        public void release(ByteBuffer buffer) {
+            acquired--;
+        }
+    }
+
+    @Test
+    void testSource() throws IOException {
+        byte[] data1 = generate(3 * 1024 * 1024 + 17, 6);
+        byte[] data2 = generate(5000, 7);
+
+        // A skippable frame larger than a chunk
+        byte[] skippable = new byte[1024 * 1024 + 8];
+        ByteBuffer.wrap(skippable).order(ByteOrder.LITTLE_ENDIAN).putInt(0x184D2A5E).putInt(skippable.length - 8);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressed.write(compress(data1, true));
+        compressed.write(skippable);
+        compressed.write(compress(data2, false));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(data1);
+        expected.write(data2);
+
+        byte[] bytes = compressed.toByteArray();
+        ChunkedSource source = new ChunkedSource(bytes);
+        try (ZstdInputStream input = new ZstdInputStream(source, bytes.length, true)) {
+            assertArrayEquals(expected.toByteArray(), readAll(input, 8192));
+            assertEquals(XxHash64.hash(expected.toByteArray()), input.getContentChecksum());
+        }
+        assertTrue(source.maxLength < bytes.length / 2, "max chunk length: " + source.maxLength);
+        assertEquals(0, source.acquired);
+
+        byte[] truncated = Arrays.copyOf(bytes, compress(data1, true).length / 2);
+        ChunkedSource truncatedSource = new ChunkedSource(truncated);
+        assertThrows(IOException.class, () -> {
+            try (ZstdInputStream input = new ZstdInputStream(truncatedSource, truncated.length, false)) {
+                readAll(input, 8192);
+            }
+        });
+        assertEquals(0, truncatedSource.acquired);
+    }
+
+    @Test
+    void testSkip() throws IOException {
+        byte[] data = generate(4 * 1024 * 1024, 4);
+        byte[] compressed = compress(data, false);
+
+        try (ZstdInputStream input = new ZstdInputStream(ByteBuffer.wrap(compressed), false)) {
+            assertEquals(Byte.toUnsignedInt(data[0]), input.read());
+            assertEquals(3_000_000, input.skip(3_000_000));
+            assertEquals(Byte.toUnsignedInt(data[3_000_001]), input.read());
+
+            byte[] rest = readAll(input, 1000);
+            assertArrayEquals(Arrays.copyOfRange(data, 3_000_002, data.length), rest);
+            assertEquals(0, input.skip(10));
+        }
+    }
+
+    @Test
+    void testMalformed() {
+        byte[] compressed = compress(generate(1024 * 1024, 5), false);
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+        assertThrows(IOException.class, () -> {
+            try (ZstdInputStream input = new ZstdInputStream(ByteBuffer.wrap(truncated), false)) {
+                readAll(input, 8192);
+            }
+        });
+    }
+}
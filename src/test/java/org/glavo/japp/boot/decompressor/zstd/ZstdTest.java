@@ -16,9 +16,13 @@
 package org.glavo.japp.boot.decompressor.zstd;
 
 import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDictTrainer;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
@@ -102,4 +106,65 @@ public class ZstdTest {
             }
         }
     }
+
+    private static byte[] sample(int seed) {
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            builder.append("org.glavo.japp.sample.key").append(random.nextInt(50))
+                    .append(".description=The value of sample property ").append(random.nextInt(1000))
+                    .append('\n');
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testDictionary() throws Throwable {
+        ZstdDictTrainer trainer = new ZstdDictTrainer(1024 * 1024, 4096);
+        for (int seed = 0; seed < 200; seed++) {
+            trainer.addSample(sample(seed));
+        }
+        byte[] dictionaryBytes = trainer.trainSamples();
+
+        ByteBuffer directDictionary = ByteBuffer.allocateDirect(dictionaryBytes.length);
+        directDictionary.put(dictionaryBytes).flip();
+
+        ZstdDictionary[] dictionaries = {
+                ZstdDictionary.readFrom(ByteBuffer.wrap(dictionaryBytes)),
+                ZstdDictionary.readFrom(directDictionary)
+        };
+
+        for (ZstdDictionary dictionary : dictionaries) {
+            ZstdFrameDecompressor decompressor = new ZstdFrameDecompressor();
+            decompressor.setDictionaries(new ZstdDictionary[]{dictionary});
+
+            try (ZstdCompressCtx ctx = new ZstdCompressCtx()) {
+                ctx.loadDict(dictionaryBytes);
+
+                for (int seed = 1000; seed < 1050; seed++) {
+                    byte[] bytes = sample(seed);
+                    byte[] compressed = ctx.compress(bytes);
+                    assertTrue(compressed.length < Zstd.compress(bytes).length);
+
+                    byte[] decompressed = new byte[bytes.length];
+                    assertEquals(bytes.length, decompressor.decompress(compressed, 0, compressed.length, decompressed, 0, decompressed.length));
+                    assertArrayEquals(bytes, decompressed);
+
+                    // Frames without dictionaries can be decompressed by the same decompressor
+                    byte[] plain = Zstd.compress(bytes);
+                    Arrays.fill(decompressed, (byte) 0);
+                    assertEquals(bytes.length, decompressor.decompress(plain, 0, plain.length, decompressed, 0, decompressed.length));
+                    assertArrayEquals(bytes, decompressed);
+                }
+            }
+        }
+
+        try (ZstdCompressCtx ctx = new ZstdCompressCtx()) {
+            ctx.loadDict(dictionaryBytes);
+            byte[] compressed = ctx.compress(sample(0));
+            assertThrows(MalformedInputException.class,
+                    () -> new ZstdFrameDecompressor().decompress(compressed, 0, compressed.length, new byte[4096], 0, 4096));
+            assertThrows(IOException.class, () -> new ZstdInputStream(ByteBuffer.wrap(compressed), false).read());
+        }
+    }
 }
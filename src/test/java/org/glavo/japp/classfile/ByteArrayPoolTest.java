@@ -20,12 +20,13 @@ import org.glavo.japp.packer.compressor.classfile.ByteArrayPoolBuilder;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ByteArrayPoolTest {
 
@@ -34,7 +35,13 @@ public class ByteArrayPoolTest {
     }
 
     void test(int n) throws IOException {
+        test(n, ByteArrayPoolBuilder.DEFAULT_CHUNK_SIZE, true);
+    }
+
+    void test(int n, int chunkSize, boolean compressed) throws IOException {
         ByteArrayPoolBuilder builder = new ByteArrayPoolBuilder();
+        builder.setChunkSize(chunkSize);
+        builder.setCompressed(compressed);
 
         for (int i = 0; i < n; i++) {
             assertEquals(i, builder.add(testString(i)));
@@ -42,21 +49,19 @@ public class ByteArrayPoolTest {
         }
 
         ByteArrayPool pool = builder.toPool();
+        if (n > 0) {
+            assertTrue(pool.getChunkCount() >= Math.min(n * 4 / chunkSize, n));
+        }
 
         for (int i = 0; i < n; i++) {
             byte[] testString = testString(i);
 
-            ByteBuffer buffer = ByteBuffer.allocate(20);
-            assertEquals(testString.length, pool.get(i, buffer));
-            assertEquals(testString.length, buffer.position());
+            byte[] out = new byte[testString.length + 2];
+            assertEquals(testString.length, pool.get(i, out, 1));
+            assertArrayEquals(testString, Arrays.copyOfRange(out, 1, testString.length + 1));
 
-            byte[] out = new byte[testString.length];
-            buffer.flip().get(out);
-            assertArrayEquals(testString, out);
-
-            Arrays.fill(out, (byte) 0);
-            pool.get(i).get(out);
-            assertArrayEquals(testString, out);
+            int index = i;
+            assertThrows(IOException.class, () -> pool.get(index, new byte[testString.length], 1));
         }
     }
 
@@ -65,5 +70,69 @@ public class ByteArrayPoolTest {
         test(0);
         test(10);
         test(100);
+        test(10000);
+    }
+
+    @Test
+    void testChunks() throws IOException {
+        test(1000, 64, true);
+        test(1000, 64, false);
+        test(1000, 1, true);
+        test(10000, 4096, false);
+    }
+
+    @Test
+    void testLazyDecode() throws IOException {
+        ByteArrayPoolBuilder builder = new ByteArrayPoolBuilder();
+        builder.setChunkSize(256);
+        for (int i = 0; i < 1000; i++) {
+            builder.add(testString(i % 10));
+            builder.add(testString(i));
+        }
+
+        ByteArrayPool pool = builder.toPool();
+        assertTrue(pool.getChunkCount() > 2);
+        assertEquals(0, pool.getAvailableChunkCount());
+
+        byte[] out = new byte[testString(500).length];
+        pool.get(builder.add(testString(500)), out, 0);
+        assertArrayEquals(testString(500), out);
+        assertEquals(1, pool.getAvailableChunkCount());
+
+        builder = new ByteArrayPoolBuilder();
+        builder.setChunkSize(256);
+        builder.setCompressed(false);
+        for (int i = 0; i < 1000; i++) {
+            builder.add(testString(i));
+        }
+        pool = builder.toPool();
+        assertEquals(pool.getChunkCount(), pool.getAvailableChunkCount());
+    }
+
+    @Test
+    void testRenumber() throws IOException {
+        ByteArrayPoolBuilder builder = new ByteArrayPoolBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add(testString(i));
+        }
+        for (int i = 0; i < 10; i++) {
+            builder.add(testString(999));
+            builder.add(testString(500));
+        }
+
+        // Frequent entries get single byte indices, which are sorted by content
+        int[] mapping = builder.renumber();
+        assertTrue(mapping[999] < 128);
+        assertTrue(mapping[500] < 128);
+        assertTrue(mapping[500] < mapping[999]);
+        assertEquals(mapping[999], builder.add(testString(999)));
+
+        ByteArrayPool pool = builder.toPool();
+        for (int i = 0; i < 1000; i++) {
+            byte[] testString = testString(i);
+            byte[] out = new byte[testString.length];
+            pool.get(mapping[i], out, 0);
+            assertArrayEquals(testString, out);
+        }
     }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ByteBufferInputStreamTest {
+
+    private static final byte[] DATA = new byte[200_000];
+
+    static {
+        new Random(0).nextBytes(DATA);
+    }
+
+    private static ByteBuffer heap() {
+        return ByteBuffer.wrap(DATA);
+    }
+
+    private static ByteBuffer direct() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DATA.length);
+        buffer.put(DATA).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private interface Target {
+        byte[] transfer(ByteBufferInputStream input) throws IOException;
+    }
+
+    private static void testTransferTo(Target target) throws IOException {
+        for (ByteBuffer buffer : new ByteBuffer[]{heap(), direct(), heap().asReadOnlyBuffer()}) {
+            ByteBufferInputStream input = new ByteBufferInputStream(buffer);
+            assertEquals(10, input.skip(10));
+            assertArrayEquals(Arrays.copyOfRange(DATA, 10, DATA.length), target.transfer(input));
+            assertEquals(-1, input.read());
+            assertEquals(0, input.transferTo(new ByteArrayOutputStream()));
+        }
+    }
+
+    @Test
+    void testTransferToOutputStream() throws IOException {
+        testTransferTo(input -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(DATA.length - 10, input.transferTo(out));
+            return out.toByteArray();
+        });
+    }
+
+    @Test
+    void testTransferToFile() throws IOException {
+        Path file = Files.createTempFile("japp", ".bin");
+        try {
+            testTransferTo(input -> {
+                try (FileOutputStream out = new FileOutputStream(file.toFile())) {
+                    out.write(1);
+                    assertEquals(DATA.length - 10, input.transferTo(out));
+                }
+                byte[] bytes = Files.readAllBytes(file);
+                assertEquals(1, bytes[0]);
+                return Arrays.copyOfRange(bytes, 1, bytes.length);
+            });
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testTransferToDataOutput() throws IOException {
+        testTransferTo(input -> {
+            ByteBufferOutputStream out = new ByteBufferOutputStream();
+            assertEquals(DATA.length - 10, input.transferTo(out));
+            return out.toByteArray();
+        });
+
+        testTransferTo(input -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (LittleEndianDataOutput out = LittleEndianDataOutput.of(Channels.newChannel((OutputStream) bytes))) {
+                out.writeByte((byte) 1);
+                assertEquals(DATA.length - 10, input.transferTo(out));
+                assertEquals(DATA.length - 9, out.getTotalBytes());
+            }
+            byte[] result = bytes.toByteArray();
+            assertEquals(1, result[0]);
+            return Arrays.copyOfRange(result, 1, result.length);
+        });
+    }
+
+    @Test
+    void testReadNBytes() throws IOException {
+        ByteBufferInputStream input = new ByteBufferInputStream(direct());
+        assertArrayEquals(Arrays.copyOf(DATA, 100), input.readNBytes(100));
+        assertArrayEquals(Arrays.copyOfRange(DATA, 100, DATA.length), input.readNBytes(Integer.MAX_VALUE));
+        assertEquals(0, input.readNBytes(10).length);
+    }
+
+    @Test
+    void testChannelRead() throws IOException {
+        ByteBufferChannel channel = new ByteBufferChannel(direct());
+        ByteBuffer small = ByteBuffer.allocate(100);
+        assertEquals(100, channel.read(small));
+        assertArrayEquals(Arrays.copyOf(DATA, 100), small.array());
+
+        ByteBuffer large = ByteBuffer.allocate(DATA.length);
+        assertEquals(DATA.length - 100, channel.read(large));
+        assertArrayEquals(Arrays.copyOfRange(DATA, 100, DATA.length), Arrays.copyOf(large.array(), large.position()));
+        assertEquals(-1, channel.read(large));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.launcher;
+
+import org.glavo.japp.io.LittleEndianDataOutput;
+import org.glavo.japp.packer.JAppResourceInfo;
+import org.glavo.japp.packer.JAppResourcesWriter;
+import org.glavo.japp.packer.JAppWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JAppExtractorTest {
+
+    private static byte[] bytes(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void createFile(Path file) throws IOException {
+        try (LittleEndianDataOutput output = LittleEndianDataOutput.of(Files.newOutputStream(file));
+             JAppWriter writer = new JAppWriter(output)) {
+            try (JAppResourcesWriter resourcesWriter = writer.createResourcesWriter("foo.jar", false)) {
+                resourcesWriter.writeResource(new JAppResourceInfo("a.txt"), bytes("a"));
+                resourcesWriter.writeResource(new JAppResourceInfo("b.txt"), bytes("b"));
+                resourcesWriter.writeResource(11, new JAppResourceInfo("b.txt"), bytes("b11"));
+                resourcesWriter.writeResource(17, new JAppResourceInfo("b.txt"), bytes("b17"));
+            }
+
+            try (JAppResourcesWriter resourcesWriter = writer.createResourcesWriter("bar", true)) {
+                resourcesWriter.writeResource(new JAppResourceInfo("bar/Bar.class"), new byte[100]);
+            }
+        }
+    }
+
+    private static String read(JarFile jar, String name) throws IOException {
+        ZipEntry entry = jar.getEntry(name);
+        assertNotNull(entry, name);
+        assertEquals(ZipEntry.STORED, entry.getMethod());
+        return new String(jar.getInputStream(entry).readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testExtract() throws IOException {
+        Path dir = Files.createTempDirectory("japp");
+        try {
+            Path file = dir.resolve("test.japp");
+            Path cache = dir.resolve("cache");
+            createFile(file);
+
+            JAppLauncherMetadata config = JAppLauncherMetadata.readFile(file);
+            JAppResourceGroupReference.Local classPath = (JAppResourceGroupReference.Local) config.getGroup().getClassPath().get(0);
+            JAppResourceGroupReference.Local modulePath = (JAppResourceGroupReference.Local) config.getGroup().getModulePath().get(0);
+
+            Path classPathJar;
+            Path modulePathJar;
+            try (JAppExtractor extractor = new JAppExtractor(cache, file, config, 11)) {
+                classPathJar = extractor.add(classPath, false);
+                modulePathJar = extractor.add(modulePath, true);
+                assertFalse(Files.exists(classPathJar));
+                extractor.extractAll();
+            }
+
+            try (JarFile jar = new JarFile(classPathJar.toFile())) {
+                assertEquals("a", read(jar, "a.txt"));
+                assertEquals("b11", read(jar, "b.txt"));
+                assertNull(jar.getManifest());
+            }
+
+            try (JarFile jar = new JarFile(modulePathJar.toFile())) {
+                assertEquals(100, jar.getEntry("bar/Bar.class").getSize());
+                assertEquals("bar", jar.getManifest().getMainAttributes().getValue("Automatic-Module-Name"));
+            }
+
+            // Extracted groups are reused, other releases get their own jar
+            Files.setLastModifiedTime(classPathJar, FileTime.fromMillis(0));
+            try (JAppExtractor extractor = new JAppExtractor(cache, file, config, 11)) {
+                assertEquals(classPathJar, extractor.add(classPath, false));
+                extractor.extractAll();
+            }
+            assertEquals(0, Files.getLastModifiedTime(classPathJar).toMillis());
+
+            try (JAppExtractor extractor = new JAppExtractor(cache, file, config, 21)) {
+                Path jar = extractor.add(classPath, false);
+                assertNotEquals(classPathJar, jar);
+                extractor.extractAll();
+
+                try (JarFile jarFile = new JarFile(jar.toFile())) {
+                    assertEquals("b17", read(jarFile, "b.txt"));
+                }
+            }
+        } finally {
+            try (Stream<Path> stream = Files.walk(dir)) {
+                stream.sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.launcher;
+
+import org.glavo.japp.io.LittleEndianDataOutput;
+import org.glavo.japp.packer.JAppResourceInfo;
+import org.glavo.japp.packer.JAppResourcesWriter;
+import org.glavo.japp.packer.JAppWriter;
+import org.glavo.japp.platform.JavaRuntime;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JAppSharedArchiveTest {
+
+    private static JavaRuntime java(String version) {
+        return new JavaRuntime(Paths.get("/opt/java/bin/java"), Runtime.Version.parse(version), null, null, null);
+    }
+
+    private static byte[] createFile(String content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (LittleEndianDataOutput output = LittleEndianDataOutput.of(out);
+             JAppWriter writer = new JAppWriter(output)) {
+            try (JAppResourcesWriter resourcesWriter = writer.createResourcesWriter("test", false)) {
+                resourcesWriter.writeResource(new JAppResourceInfo("a.txt"), content.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void testJvmOptions() {
+        Path archive = Paths.get("archive");
+
+        assertEquals(Collections.emptyList(), JAppSharedArchive.getJvmOptions(java("11.0.2"), archive));
+        assertTrue(JAppSharedArchive.getJvmOptions(java("17.0.9"), archive).contains("-XX:ArchiveClassesAtExit=archive"));
+        assertTrue(JAppSharedArchive.getJvmOptions(java("21"), archive).contains("-XX:+AutoCreateSharedArchive"));
+        assertTrue(JAppSharedArchive.getJvmOptions(java("25"), archive).contains("-XX:AOTCacheOutput=archive"));
+
+        assertTrue(JAppSharedArchive.isConfigured(Arrays.asList("-Xmx1g", "-Xshare:off")));
+        assertTrue(JAppSharedArchive.isConfigured(Collections.singletonList("-XX:SharedArchiveFile=foo.jsa")));
+        assertFalse(JAppSharedArchive.isConfigured(Collections.singletonList("-Xmx1g")));
+    }
+
+    @Test
+    void testPrepare() throws IOException {
+        Path dir = Files.createTempDirectory("japp");
+        try {
+            Path file = dir.resolve("test.japp");
+            Path cache = dir.resolve("cds");
+            Files.write(file, createFile("foo"));
+            JAppLauncherMetadata config = JAppLauncherMetadata.readFile(file);
+
+            List<String> jvmOptions = Collections.singletonList("-Xmx1g");
+            String name = JAppSharedArchive.archiveName(config, file, java("17"), jvmOptions);
+            assertEquals(name, JAppSharedArchive.archiveName(config, file, java("17"), jvmOptions));
+            assertNotEquals(name, JAppSharedArchive.archiveName(config, file, java("17.0.1"), jvmOptions));
+            assertNotEquals(name, JAppSharedArchive.archiveName(config, file, java("17"), Collections.emptyList()));
+
+            Path archive = cache.resolve(name);
+            assertTrue(JAppSharedArchive.prepare(cache, config, file, java("17"), jvmOptions)
+                    .contains("-XX:ArchiveClassesAtExit=" + archive));
+
+            Files.write(archive, new byte[0]);
+            Path stale = cache.resolve("stale.jsa");
+            Files.write(stale, new byte[0]);
+            Files.setLastModifiedTime(stale, FileTime.fromMillis(0));
+            Files.setLastModifiedTime(archive, FileTime.fromMillis(0));
+
+            assertTrue(JAppSharedArchive.prepare(cache, config, file, java("17"), jvmOptions)
+                    .contains("-XX:SharedArchiveFile=" + archive));
+            assertTrue(Files.exists(archive));
+            assertFalse(Files.exists(stale));
+
+            // A different file gets a different archive
+            Files.write(file, createFile("bar"));
+            assertNotEquals(name, JAppSharedArchive.archiveName(JAppLauncherMetadata.readFile(file), file, java("17"), jvmOptions));
+
+            assertEquals(Collections.emptyList(),
+                    JAppSharedArchive.prepare(cache, config, file, java("17"), Collections.singletonList("-Xshare:off")));
+        } finally {
+            try (Stream<Path> stream = Files.walk(dir)) {
+                stream.sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
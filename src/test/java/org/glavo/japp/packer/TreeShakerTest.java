@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.packer;
+
+import org.glavo.japp.packer.compressor.classfile.ClassFileReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class TreeShakerTest {
+
+    public static final class Main {
+        public static void main(String[] args) throws Exception {
+            new Direct();
+            Class.forName("org.glavo.japp.packer.TreeShakerTest$Reflective");
+            java.util.ServiceLoader.load(Service.class);
+        }
+    }
+
+    public static final class Direct {
+        Field field;
+    }
+
+    public static final class Field {
+    }
+
+    public static final class Reflective {
+    }
+
+    public interface Service {
+    }
+
+    public static final class Provider implements Service {
+    }
+
+    public static final class Unused {
+        Direct direct;
+    }
+
+    public static final class KeptByRule {
+    }
+
+    private static String resourceName(Class<?> clazz) {
+        return clazz.getName().replace('.', '/') + ".class";
+    }
+
+    private static void addClass(TreeShaker treeShaker, Class<?> clazz) throws IOException {
+        String name = resourceName(clazz);
+        try (InputStream input = TreeShakerTest.class.getClassLoader().getResourceAsStream(name)) {
+            assertNotNull(input, name);
+            treeShaker.addResource(name, input.readAllBytes());
+        }
+    }
+
+    private static boolean isKept(TreeShaker treeShaker, Class<?> clazz) {
+        String name = resourceName(clazz);
+        return treeShaker.isKept("test", name, 0);
+    }
+
+    @Test
+    public void test() throws IOException {
+        TreeShaker treeShaker = new TreeShaker();
+        treeShaker.addRoot(Main.class.getName());
+        treeShaker.addKeepRule("org.glavo.japp.packer.TreeShakerTest$KeptBy*");
+
+        Class<?>[] classes = {
+                Main.class, Direct.class, Field.class, Reflective.class, Service.class, Provider.class,
+                Unused.class, KeptByRule.class
+        };
+        for (Class<?> clazz : classes) {
+            addClass(treeShaker, clazz);
+        }
+        treeShaker.addResource("META-INF/services/" + Service.class.getName(),
+                ("# comment\n" + Provider.class.getName() + "\n").getBytes(StandardCharsets.UTF_8));
+        treeShaker.addResource("data.txt", new byte[0]);
+
+        treeShaker.shake();
+
+        assertTrue(isKept(treeShaker, Main.class));
+        assertTrue(isKept(treeShaker, Direct.class));
+        assertTrue(isKept(treeShaker, Field.class));
+        assertTrue(isKept(treeShaker, Reflective.class));
+        assertTrue(isKept(treeShaker, Service.class));
+        assertTrue(isKept(treeShaker, Provider.class));
+        assertTrue(isKept(treeShaker, KeptByRule.class));
+        assertFalse(isKept(treeShaker, Unused.class));
+        assertTrue(treeShaker.isKept("test", "data.txt", 0));
+        assertTrue(treeShaker.isKept("test", "META-INF/services/" + Service.class.getName(), 0));
+
+        assertEquals(1, treeShaker.getRemovedClasses().get("test").size());
+        assertTrue(treeShaker.getRemovedClasses().get("test").contains(Unused.class.getName()));
+    }
+
+    @Test
+    public void testKeepRules() throws IOException {
+        Class<?>[] classes = {TreeShaker.class, ClassFileReader.class, Main.class, Unused.class};
+
+        TreeShaker treeShaker = new TreeShaker();
+        treeShaker.addKeepRule("org.glavo.*");
+        for (Class<?> clazz : classes) {
+            addClass(treeShaker, clazz);
+        }
+        treeShaker.shake();
+        for (Class<?> clazz : classes) {
+            assertFalse(isKept(treeShaker, clazz));
+        }
+
+        treeShaker = new TreeShaker();
+        treeShaker.addKeepRule("org.glavo.**.classfile.*");
+        treeShaker.addKeepRule("org.glavo.japp.packer.TreeShakerTest$Unused");
+        for (Class<?> clazz : classes) {
+            addClass(treeShaker, clazz);
+        }
+        treeShaker.addResource("org/glavo/Malformed.class", new byte[]{1, 2, 3});
+        treeShaker.shake();
+        assertFalse(isKept(treeShaker, TreeShaker.class));
+        assertTrue(isKept(treeShaker, ClassFileReader.class));
+        assertFalse(isKept(treeShaker, Main.class));
+        assertTrue(isKept(treeShaker, Unused.class));
+        assertTrue(treeShaker.isKept("test", "org/glavo/Malformed.class", 0));
+
+        assertThrows(IllegalArgumentException.class, () -> new TreeShaker().addKeepRule(" "));
+    }
+}
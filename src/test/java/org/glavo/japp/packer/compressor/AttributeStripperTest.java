@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.packer.compressor;
+
+import org.glavo.japp.packer.compressor.classfile.AttributeStripper;
+import org.glavo.japp.packer.compressor.classfile.ClassFileReader;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class AttributeStripperTest {
+
+    public static final class Sample {
+        public static StackTraceElement getCaller() {
+            int local = 42;
+            return new Throwable().getStackTrace()[local - 42];
+        }
+    }
+
+    private static byte[] readClass(Class<?> clazz) throws Exception {
+        String name = clazz.getName().replace('.', '/') + ".class";
+        try (InputStream input = clazz.getClassLoader().getResourceAsStream(name)) {
+            return input.readAllBytes();
+        }
+    }
+
+    @Test
+    public void testStripDebugAttributes() throws Throwable {
+        byte[] original = readClass(Sample.class);
+
+        AttributeStripper stripper = new AttributeStripper(AttributeStripper.DEBUG_ATTRIBUTES);
+        byte[] stripped = stripper.strip(original);
+        Assertions.assertTrue(stripped.length < original.length);
+        Assertions.assertSame(stripped, stripper.strip(stripped));
+
+        ClassLoader loader = new ClassLoader(AttributeStripperTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                if (name.equals(Sample.class.getName())) {
+                    return defineClass(name, stripped, 0, stripped.length);
+                }
+                throw new ClassNotFoundException(name);
+            }
+
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (name.equals(Sample.class.getName())) {
+                    synchronized (getClassLoadingLock(name)) {
+                        Class<?> c = findLoadedClass(name);
+                        return c != null ? c : findClass(name);
+                    }
+                }
+                return super.loadClass(name, resolve);
+            }
+        };
+
+        Method method = loader.loadClass(Sample.class.getName()).getMethod("getCaller");
+        StackTraceElement element = (StackTraceElement) method.invoke(null);
+        Assertions.assertEquals("getCaller", element.getMethodName());
+        Assertions.assertTrue(element.getLineNumber() < 0);
+        Assertions.assertTrue(Sample.getCaller().getLineNumber() > 0);
+
+        // SourceFile is kept
+        Assertions.assertNotNull(element.getFileName());
+
+        String report = stripper.getReport();
+        Assertions.assertTrue(report.contains("LineNumberTable"), report);
+    }
+
+    @Test
+    public void testStripAll() throws Throwable {
+        Path jar = Paths.get(Test.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+
+        AttributeStripper stripper = new AttributeStripper(AttributeStripper.STRIPPABLE_ATTRIBUTES);
+        long originalSize = 0;
+        long strippedSize = 0;
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+            for (ZipEntry entry : Collections.list(enumeration)) {
+                if (entry.getName().endsWith(".class")) {
+                    byte[] bytes = zipFile.getInputStream(entry).readAllBytes();
+                    byte[] stripped = stripper.strip(bytes);
+
+                    // Still a valid class file
+                    new ClassFileReader(ByteBuffer.wrap(stripped));
+                    Assertions.assertSame(stripped, stripper.strip(stripped), entry.getName());
+
+                    originalSize += bytes.length;
+                    strippedSize += stripped.length;
+                }
+            }
+        }
+
+        Assertions.assertTrue(strippedSize < originalSize);
+    }
+
+    @Test
+    public void testTruncatedClass() throws Throwable {
+        byte[] original = readClass(Sample.class);
+        AttributeStripper stripper = new AttributeStripper(AttributeStripper.DEBUG_ATTRIBUTES);
+
+        // Truncated in the constant pool and in the methods
+        for (int length : new int[]{16, original.length - 16}) {
+            byte[] truncated = Arrays.copyOf(original, length);
+            Assertions.assertThrows(IOException.class, () -> stripper.strip(truncated), "length: " + length);
+        }
+    }
+
+    @Test
+    public void testUnsupportedAttribute() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new AttributeStripper(Collections.singleton("Code")));
+    }
+}
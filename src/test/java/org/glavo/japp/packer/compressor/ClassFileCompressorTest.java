@@ -16,15 +16,18 @@
 package org.glavo.japp.packer.compressor;
 
 import org.glavo.japp.boot.decompressor.DecompressContext;
+import org.glavo.japp.boot.decompressor.ZstdDecompressorPool;
 import org.glavo.japp.boot.decompressor.classfile.ByteArrayPool;
 import org.glavo.japp.boot.decompressor.classfile.ClassFileDecompressor;
 import org.glavo.japp.boot.decompressor.zstd.ZstdFrameDecompressor;
 import org.glavo.japp.packer.compressor.classfile.ByteArrayPoolBuilder;
+import org.glavo.japp.packer.compressor.classfile.ClassFileCompressor;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DynamicTest;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestFactory;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -34,32 +37,61 @@ import java.util.zip.ZipFile;
 
 public class ClassFileCompressorTest {
 
-    private static DynamicTest createTest(String name, byte[] bytes) {
-        return DynamicTest.dynamicTest("Compress " + name, () -> {
+    private static CompressContext createContext(ByteArrayPoolBuilder poolBuilder, boolean constantPoolColumns) {
+        return new CompressContext() {
+            @Override
+            public ByteArrayPoolBuilder getPool() {
+                return poolBuilder;
+            }
+
+            @Override
+            public boolean isConstantPoolColumns() {
+                return constantPoolColumns;
+            }
+        };
+    }
+
+    private static DynamicTest createTest(String name, byte[] bytes, boolean constantPoolColumns) {
+        return DynamicTest.dynamicTest("Compress " + name + (constantPoolColumns ? " with columns" : ""), () -> {
             ByteArrayPoolBuilder poolBuilder = new ByteArrayPoolBuilder();
-            CompressContext context = () -> poolBuilder;
+            CompressContext context = createContext(poolBuilder, constantPoolColumns);
             CompressResult result = Compressors.CLASSFILE.compress(context, bytes);
 
+            DecompressContext decompressContext = new DecompressContext() {
+                private final ByteArrayPool pool = poolBuilder.toPool();
+                private final ZstdFrameDecompressor decompressor = new ZstdFrameDecompressor();
+
+                @Override
+                public ByteArrayPool getPool() {
+                    return pool;
+                }
+
+                @Override
+                public void decompressZstd(ByteBuffer input, ByteBuffer output) {
+                    decompressor.decompress(input, output);
+                }
+            };
+
             byte[] output = new byte[bytes.length];
-            ClassFileDecompressor.decompress(
-                    new DecompressContext() {
-                        private final ByteArrayPool pool = poolBuilder.toPool();
-                        private final ZstdFrameDecompressor decompressor = new ZstdFrameDecompressor();
-
-                        @Override
-                        public ByteArrayPool getPool() {
-                            return pool;
-                        }
-
-                        @Override
-                        public void decompressZstd(ByteBuffer input, ByteBuffer output) {
-                            decompressor.decompress(input, output);
-                        }
-                    },
-                    result.getCompressed(),
-                    output
-            );
+            ClassFileDecompressor.decompress(decompressContext, result.getCompressed(), output);
             Assertions.assertArrayEquals(bytes, output);
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(result.getLength());
+            direct.put(result.getCompressed()).flip();
+            Arrays.fill(output, (byte) 0);
+            ClassFileDecompressor.decompress(decompressContext, direct, output);
+            Assertions.assertArrayEquals(bytes, output);
+            Assertions.assertFalse(direct.hasRemaining());
+
+            // The stream can be recovered from the compressed class file alone
+            byte[] compressed = Arrays.copyOfRange(result.getCompressedData(), result.getOffset(), result.getOffset() + result.getLength());
+            Assertions.assertArrayEquals(ClassFileCompressor.getTail(bytes, constantPoolColumns),
+                    ClassFileCompressor.decompressTail(compressed, bytes.length, new ZstdDecompressorPool()));
+
+            // Truncated in the constant pool
+            byte[] truncated = Arrays.copyOf(result.getCompressedData(), 16);
+            Assertions.assertThrows(IOException.class,
+                    () -> ClassFileDecompressor.decompress(decompressContext, ByteBuffer.wrap(truncated), new byte[bytes.length]));
         });
     }
 
@@ -77,7 +109,8 @@ public class ClassFileCompressorTest {
                 if (name.endsWith(".class")) {
                     byte[] bytes = zipFile.getInputStream(element).readAllBytes();
 
-                    tests.add(createTest(name, bytes));
+                    tests.add(createTest(name, bytes, false));
+                    tests.add(createTest(name, bytes, true));
                     entries.put(name, bytes);
                 }
             }
@@ -120,6 +153,54 @@ public class ClassFileCompressorTest {
             }));
         }));
 
+        for (boolean constantPoolColumns : new boolean[]{false, true}) {
+            tests.add(DynamicTest.dynamicTest("Compress ALL with renumbered pool" + (constantPoolColumns ? " and columns" : ""), () -> {
+                ByteArrayPoolBuilder poolBuilder = new ByteArrayPoolBuilder();
+                CompressContext context = createContext(poolBuilder, constantPoolColumns);
+
+                Map<String, byte[]> allCompressed = new HashMap<>();
+                long totalSize = 0;
+                for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                    CompressResult result = Compressors.CLASSFILE.compress(context, entry.getValue());
+                    allCompressed.put(entry.getKey(), Arrays.copyOfRange(result.getCompressedData(), result.getOffset(), result.getOffset() + result.getLength()));
+                    totalSize += result.getLength();
+                }
+
+                int[] mapping = poolBuilder.renumber();
+                long renumberedSize = 0;
+                for (Map.Entry<String, byte[]> entry : allCompressed.entrySet()) {
+                    entry.setValue(ClassFileCompressor.remapPoolIndices(entry.getValue(), mapping));
+                    renumberedSize += entry.getValue().length;
+                }
+                Assertions.assertTrue(renumberedSize <= totalSize, renumberedSize + " > " + totalSize);
+
+                ByteArrayPool pool = poolBuilder.toPool();
+                Assertions.assertAll(entries.keySet().stream().map(key -> () -> {
+                    byte[] expected = entries.get(key);
+                    byte[] output = new byte[expected.length];
+                    ClassFileDecompressor.decompress(
+                            new DecompressContext() {
+                                private final ZstdFrameDecompressor decompressor = new ZstdFrameDecompressor();
+
+                                @Override
+                                public ByteArrayPool getPool() {
+                                    return pool;
+                                }
+
+                                @Override
+                                public void decompressZstd(ByteBuffer input, ByteBuffer output) {
+                                    decompressor.decompress(input, output);
+                                }
+                            },
+                            ByteBuffer.wrap(allCompressed.get(key)),
+                            output
+                    );
+
+                    Assertions.assertArrayEquals(expected, output);
+                }));
+            }));
+        }
+
         return tests;
     }
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2024 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glavo.japp.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SizeUtilsTest {
+
+    @Test
+    void testParseSize() {
+        assertEquals(100, SizeUtils.parseSize("100"));
+        assertEquals(4096, SizeUtils.parseSize("4k"));
+        assertEquals(64L * 1024 * 1024, SizeUtils.parseSize("64M"));
+        assertEquals(2L * 1024 * 1024 * 1024, SizeUtils.parseSize("2g"));
+        assertThrows(IllegalArgumentException.class, () -> SizeUtils.parseSize(""));
+        assertThrows(IllegalArgumentException.class, () -> SizeUtils.parseSize("abc"));
+        assertThrows(IllegalArgumentException.class, () -> SizeUtils.parseSize("99999999999g"));
+    }
+}
@@ -47,5 +47,21 @@ public class XxHash64Test {
 
         assertEquals(expected, XxHash64.hashByteBufferWithoutUpdate(ByteBuffer.wrap(data)));
         assertEquals(expected, XxHash64.hashByteBufferWithoutUpdate(nativeBuffer));
+
+        ByteBuffer offsetBuffer = ByteBuffer.allocateDirect(length + 3);
+        offsetBuffer.position(3);
+        offsetBuffer.put(data);
+        offsetBuffer.position(3);
+        assertEquals(expected, XxHash64.hashByteBufferWithoutUpdate(offsetBuffer));
+
+        Random random = new Random(length);
+        XxHash64.Hasher hasher = new XxHash64.Hasher();
+        int offset = 0;
+        while (offset < length) {
+            int n = Math.min(length - offset, random.nextInt(48));
+            hasher.update(data, offset, n);
+            offset += n;
+        }
+        assertEquals(expected, hasher.getValue());
     }
 }